@@ -0,0 +1,96 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request at a time through a {@link MainVerticle} listening on localhost, on an in memory database and with
+ * tracing off, from a keep-alive client in the same JVM. The time covers the client, the loopback and the server's
+ * HTTP codec as well as the router and the handler, so compare the routes with each other rather than with the
+ * other benchmarks. The GC profiler's {@code gc.alloc.rate.norm} only counts the benchmark thread, what the event
+ * loops allocate shows in {@code gc.churn}.
+ *
+ * @author kameshs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class RouterDispatchBenchmark {
+
+    /**
+     * A route with no handler work to speak of, a cached mantra, an asset from memory and the full list.
+     */
+    @Param({"/api/mantras/_cache", "/api/mantras/1", "/assets/index.html", "/api/mantras"})
+    public String path;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private int port;
+
+    @Setup
+    public void setup() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        vertx = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+                .put("http.port", port)
+                .put("url", "jdbc:h2:mem:jmh")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver")
+                .put("tracing.sample.rate", 0.0)), ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(ar.result());
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        deployed.get(30, TimeUnit.SECONDS);
+        client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true).setMaxPoolSize(1));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get(30, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Buffer dispatch() throws Exception {
+        CompletableFuture<Buffer> body = new CompletableFuture<>();
+        client.getNow(port, "localhost", path, response -> {
+            if (response.statusCode() != 200) {
+                body.completeExceptionally(new IOException(path + " answered " + response.statusCode()));
+            } else {
+                response.bodyHandler(body::complete);
+            }
+        });
+        return body.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,84 @@
+package org.workspace7.vertx.auth;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.auth.shiro.ShiroAuth;
+import org.apache.shiro.realm.text.IniRealm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link MantraAuth} adds to a request, from its {@code Authorization} header to the caller, over the users of
+ * {@code test-shiro.ini}: Basic credentials the realm checks every time, the same found in the
+ * {@link CredentialCache}, and a session token. The realm runs on a worker, so its numbers include the hop there and
+ * back, which is part of what the cache saves.
+ *
+ * @author kameshs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MantraAuthBenchmark {
+
+    @Param({"realm", "cached", "token"})
+    public String mode;
+
+    private Vertx vertx;
+    private MantraAuth auth;
+    private String authorization;
+
+    @Setup
+    public void setup() {
+        vertx = Vertx.vertx();
+        TokenSigner signer = new TokenSigner("a secret of the benchmark".getBytes(StandardCharsets.UTF_8));
+        auth = new MantraAuth(ShiroAuth.create(vertx, new IniRealm("classpath:test-shiro.ini")),
+                new LinkedHashSet<>(Arrays.asList("super-user", "administrator")),
+                "realm".equals(mode) ? null : new CredentialCache(1000, 60000), signer, 900000, "mantras");
+        if ("token".equals(mode)) {
+            authorization = "Bearer " + signer.sign(new Caller("krishna",
+                    new LinkedHashSet<>(Arrays.asList("super-user"))), Long.MAX_VALUE);
+        } else {
+            authorization = "Basic " + Base64.getEncoder()
+                    .encodeToString("krishna:krishna".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get(30, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Caller authenticate() throws Exception {
+        CompletableFuture<Caller> caller = new CompletableFuture<>();
+        auth.authenticate(authorization, ar -> {
+            if (ar.succeeded()) {
+                caller.complete(ar.result());
+            } else {
+                caller.completeExceptionally(ar.cause());
+            }
+        });
+        return caller.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,135 @@
+package org.workspace7.vertx.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.workspace7.vertx.Mantra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The ways a {@link Mantra} goes to and from JSON: the pretty printed {@link Json} encoding the API started out
+ * with, the compact one, {@link MantraJson}, and mapping the rows of a query result.
+ *
+ * @author kameshs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MantraCodecBenchmark {
+
+    private static final List<String> COLUMNS = Arrays.asList("ID", "MANTRA", "VERSION");
+
+    /**
+     * A short mantra like the seeded ones and a long one with some text that needs escaping.
+     */
+    @Param({"41", "512"})
+    public int length;
+
+    /**
+     * Rows in a query result.
+     */
+    @Param({"100"})
+    public int rows;
+
+    private Mantra mantra;
+    private String pretty;
+    private String compact;
+    private Buffer buffer;
+    private JsonObject row;
+    private List<JsonArray> results;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder("Hare Rama Hare Rama Rama Rama Hare Hare!");
+        while (text.length() < length) {
+            text.append(text.length() % 64 == 0 ? "\n\"Hare Krishna\"" : " Hare Krishna");
+        }
+        text.setLength(length);
+        mantra = new Mantra(42, text.toString(), 7);
+        pretty = Json.encodePrettily(mantra);
+        compact = Json.encode(mantra);
+        buffer = MantraJson.encode(mantra);
+        row = new JsonObject().put("ID", 42).put("MANTRA", text.toString()).put("VERSION", 7L);
+        results = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            results.add(new JsonArray().add(i).add(text.toString()).add(7L));
+        }
+    }
+
+    @Benchmark
+    public String encodePrettily() {
+        return Json.encodePrettily(mantra);
+    }
+
+    @Benchmark
+    public String encodeCompact() {
+        return Json.encode(mantra);
+    }
+
+    @Benchmark
+    public Buffer encodeMantraJson() {
+        return MantraJson.encode(mantra);
+    }
+
+    @Benchmark
+    public Mantra decodePretty() {
+        return Json.decodeValue(pretty, Mantra.class);
+    }
+
+    @Benchmark
+    public Mantra decodeCompact() {
+        return Json.decodeValue(compact, Mantra.class);
+    }
+
+    @Benchmark
+    public Mantra decodeMantraJson() {
+        return MantraJson.decode(buffer);
+    }
+
+    @Benchmark
+    public Mantra mapRow() {
+        return new Mantra(row);
+    }
+
+    /**
+     * What a select does with its result: every row becomes a {@link JsonObject} keyed by column before it becomes a
+     * mantra.
+     */
+    @Benchmark
+    public List<Mantra> mapResultSetRows() {
+        return new ResultSet(COLUMNS, results, null).getRows().stream().map(Mantra::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The same result read by position, without the intermediate objects.
+     */
+    @Benchmark
+    public void mapResultSetColumns(Blackhole blackhole) {
+        for (JsonArray result : new ResultSet(COLUMNS, results, null).getResults()) {
+            blackhole.consume(new Mantra(result.getInteger(0), result.getString(1), result.getLong(2)));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.workspace7.vertx.tracing;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.impl.HeadersAdaptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The carriers the tracer reads span contexts from and writes them to. Request headers are the Netty backed
+ * {@link MultiMap} an HTTP server request has, filled with what browsers and proxies typically send, with or without
+ * an incoming trace context.
+ *
+ * @author kameshs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TracingAdaptersBenchmark {
+
+    private static final String[][] BROWSER_HEADERS = {
+            {"Host", "mantras.example.com"},
+            {"User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:55.0) Gecko/20100101 Firefox/55.0"},
+            {"Accept", "application/json, text/plain, */*"},
+            {"Accept-Language", "en-US,en;q=0.5"},
+            {"Accept-Encoding", "gzip, deflate, br"},
+            {"Referer", "https://mantras.example.com/assets/index.html"},
+            {"Connection", "keep-alive"},
+            {"Cookie", "_ga=GA1.2.1234567890.1500000000; _gid=GA1.2.987654321.1500000000"},
+            {"Cache-Control", "no-cache"},
+            {"Pragma", "no-cache"},
+            {"X-Forwarded-For", "203.0.113.7, 198.51.100.23"},
+            {"X-Forwarded-Proto", "https"},
+            {"X-Forwarded-Host", "mantras.example.com"},
+            {"X-Forwarded-Port", "443"},
+            {"X-Real-IP", "203.0.113.7"},
+            {"X-Request-Id", "5f0c6d2e-8a1b-4c3d-9e7f-0a1b2c3d4e5f"},
+            {"Forwarded", "for=203.0.113.7;proto=https;by=198.51.100.23"},
+            {"Via", "1.1 router.example.com"},
+            {"DNT", "1"},
+            {"Upgrade-Insecure-Requests", "1"},
+    };
+
+    private static final String[][] TRACE_HEADERS = {
+            {"HWKAPMTRACEID", "7b8d4e1c-3f2a-4b6e-9c1d-2e3f4a5b6c7d"},
+            {"HWKAPMID", "7b8d4e1c-3f2a-4b6e-9c1d-2e3f4a5b6c7d:0:1"},
+            {"HWKAPMTXN", "GET /api/mantras"},
+    };
+
+    /**
+     * A bare API client, a browser, and a browser behind a couple of proxies.
+     */
+    @Param({"4", "10", "20"})
+    public int headers;
+
+    @Param({"false", "true"})
+    public boolean traced;
+
+    private MultiMap requestHeaders;
+
+    @Setup
+    public void setup() {
+        requestHeaders = new HeadersAdaptor(new DefaultHttpHeaders());
+        for (int i = 0; i < headers; i++) {
+            requestHeaders.add(BROWSER_HEADERS[i][0], BROWSER_HEADERS[i][1]);
+        }
+        if (traced) {
+            for (String[] header : TRACE_HEADERS) {
+                requestHeaders.add(header[0], header[1]);
+            }
+        }
+    }
+
+    /**
+     * Walks the headers the way the tracer's text map extraction does, picking out its own.
+     */
+    @Benchmark
+    public int extract() {
+        int found = 0;
+        for (Map.Entry<String, String> header : new HttpHeadersExtractAdapter(requestHeaders)) {
+            if (header.getKey().regionMatches(true, 0, "HWKAPM", 0, 6)) {
+                found += header.getValue().length();
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public DeliveryOptions inject() {
+        DeliveryOptions options = new DeliveryOptions();
+        VertxMessageInjectAdapter adapter = new VertxMessageInjectAdapter(options);
+        for (String[] header : TRACE_HEADERS) {
+            adapter.put(header[0], header[1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,53 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Launcher;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The fat jar launcher, deploys one {@link MainVerticle} per available core unless told otherwise.
+ * <p>
+ * The instance count comes from {@code -instances} when it is given on the command line, then from the
+ * {@code instances} config entry and finally defaults to {@link Runtime#availableProcessors()}. All the instances
+ * listen on the same {@code http.port} and Vert.x balances the connections between their event loops.
+ *
+ * @author kameshs
+ */
+public class ChantLauncher extends Launcher {
+
+    private boolean instancesGiven;
+
+    public static void main(String[] args) {
+        new ChantLauncher().dispatch(args);
+    }
+
+    @Override
+    public void dispatch(String[] args) {
+        //the launcher defaults -instances to 1, which tells nothing of whether it was given
+        instancesGiven = instancesGiven(args);
+        super.dispatch(args);
+    }
+
+    @Override
+    public void beforeDeployingVerticle(DeploymentOptions deploymentOptions) {
+        super.beforeDeployingVerticle(deploymentOptions);
+        if (!instancesGiven) {
+            JsonObject config = deploymentOptions.getConfig();
+            int cores = Runtime.getRuntime().availableProcessors();
+            deploymentOptions.setInstances(config == null ? cores : config.getInteger("instances", cores));
+        }
+    }
+
+    /**
+     * @return whether the arguments hold {@code -instances}, in any of the forms the launcher accepts
+     */
+    static boolean instancesGiven(String[] args) {
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg.startsWith("-") ? arg.substring(1) : null;
+            if (option != null && (option.equals("instances") || option.startsWith("instances="))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,40 +1,75 @@
 package org.workspace7.vertx;
 
 import io.opentracing.Span;
-import io.opentracing.SpanContext;
-import io.opentracing.Tracer;
-import io.opentracing.propagation.Format;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.jdbc.JDBCClient;
-import io.vertx.ext.sql.ResultSet;
-import io.vertx.ext.sql.SQLConnection;
-import io.vertx.ext.sql.UpdateResult;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
-import io.vertx.ext.web.handler.StaticHandler;
-import org.hawkular.apm.client.opentracing.APMTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.workspace7.vertx.tracing.HttpHeadersExtractAdapter;
-import org.workspace7.vertx.tracing.VertxMessageInjectAdapter;
-
+import org.workspace7.vertx.assets.AssetCache;
+import org.workspace7.vertx.assets.AssetHandler;
+import org.workspace7.vertx.auth.MantraAuth;
+import org.workspace7.vertx.changes.ChangeFeed;
+import org.workspace7.vertx.changes.ChangeLog;
+import org.workspace7.vertx.cache.CacheInvalidator;
+import org.workspace7.vertx.cache.LruCache;
+import org.workspace7.vertx.cache.SingleFlight;
+import org.workspace7.vertx.codec.MantraCodec;
+import org.workspace7.vertx.codec.MantraJson;
+import org.workspace7.vertx.codec.MantraListCodec;
+import org.workspace7.vertx.http.ConcurrencyLimiter;
+import org.workspace7.vertx.http.ResponseCompressor;
+import org.workspace7.vertx.http.ServerProfile;
+import org.workspace7.vertx.metrics.MetricsRegistry;
+import org.workspace7.vertx.metrics.RouteMetrics;
+import org.workspace7.vertx.metrics.Timer;
+import org.workspace7.vertx.shard.ShardClient;
+import org.workspace7.vertx.shard.ShardRouter;
+import org.workspace7.vertx.tracing.Tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 public class MainVerticle extends AbstractVerticle {
 
     private static final Logger _logger = LoggerFactory.getLogger(MainVerticle.class);
-    private JDBCClient jdbcClient;
-    private Tracer tracer = new APMTracer();
+    private Tracing tracing;
+    private LruCache<Integer, Mantra> mantraCache;
+    private CacheInvalidator cacheInvalidator;
+    private ServerProfile serverProfile;
+    private MetricsRegistry metrics;
+    private final Map<String, Timer> repositoryTimers = new HashMap<>();
+    private final List<String> limitedRoutes = new ArrayList<>();
+    //bumped on every invalidation so that a select racing with a write never caches what it read
+    private long invalidationEpoch;
+    //bumped on every write seen, so that a read started before it is never joined after it
+    private long writes;
+    private SingleFlight<String, Object> reads;
+    private ChangeFeed changeFeed;
+    private ShardClient shards;
+    private AssetCache assets;
+    private AssetHandler assetHandler;
 
     @Override
     public void start(Future<Void> startFuture) {
@@ -43,20 +78,85 @@ public class MainVerticle extends AbstractVerticle {
 
         _logger.debug("Config: {}", appConfig);
 
-        jdbcClient = JDBCClient.createShared(vertx, config(), "My-Mantras-Collection");
+        MantraCodec.register(vertx);
+        metrics = MetricsRegistry.shared(vertx, appConfig);
+        tracing = Tracing.shared(vertx, appConfig);
+        tracing.registerMetrics(metrics);
+
+        if (appConfig.getBoolean("singleflight.enabled", true)) {
+            SingleFlight.Stats readStats = SingleFlight.Stats.shared(vertx);
+            reads = new SingleFlight<>(readStats);
+            metrics.counter("mantras_repository_reads_total", "Reads asked of the repository",
+                    readStats::calls);
+            metrics.counter("mantras_repository_reads_coalesced_total",
+                    "Reads that waited for an identical one already sent instead of sending their own",
+                    readStats::coalesced);
+        }
 
-        startBackend(
-                (connection) -> createChants(connection,
-                        (nothing) -> startWebApp(
-                                (http) -> completeStartup(http, startFuture)
-                        ), startFuture
-                ), startFuture);
+        if (appConfig.getBoolean("changes.enabled", true)) {
+            ChangeLog changeLog = ChangeLog.shared(vertx, appConfig);
+            changeFeed = new ChangeFeed(vertx, changeLog, appConfig);
+            metrics.gauge("mantras_changes_subscribers", "Subscribers to the change feed", changeLog::subscribers);
+            metrics.counter("mantras_changes_evicted_total", "Change feed subscribers disconnected for falling behind",
+                    changeLog::evictions);
+            metrics.gauge("mantras_changes_sequence", "Sequence number of the latest change", changeLog::latest);
+        }
+
+        if (appConfig.getBoolean("shard.enabled", false)) {
+            ShardRouter router = ShardRouter.shared(vertx, appConfig);
+            shards = new ShardClient(router);
+            metrics.gauge("mantras_shard_nodes", "Nodes holding a shard of the mantras",
+                    () -> router.ring().nodes().size());
+            metrics.counter("mantras_shard_handed_over_total", "Mantras this node handed over to other shards",
+                    router::handedOver);
+        }
+
+        int cacheSize = appConfig.getInteger("cache.max.size", 1000);
+        if (cacheSize > 0) {
+            mantraCache = new LruCache<>(cacheSize, appConfig.getLong("cache.ttl.ms", 60000L));
+            vertx.setPeriodic(appConfig.getLong("cache.purge.interval.ms", 30000L),
+                    timerId -> mantraCache.purgeExpired());
+            cacheInvalidator = new CacheInvalidator(vertx,
+                    appConfig.getLong("cache.invalidation.coalesce.ms", 5L),
+                    appConfig.getInteger("cache.invalidation.max.batch", 512),
+                    id -> {
+                        writes++;
+                        invalidationEpoch++;
+                        mantraCache.invalidate(id);
+                    });
+        }
+
+        startRepository(
+                (repository) -> {
+                    if (repository.failed()) {
+                        _logger.error("Error starting repository ", repository.cause());
+                        startFuture.fail(repository.cause());
+                    } else if (appConfig.getBoolean("startup.lazy", false)) {
+                        //the first request for an asset loads them
+                        startWebApp((http) -> completeStartup(http, startFuture));
+                    } else {
+                        AssetCache.shared(vertx, appConfig, assets -> {
+                            if (assets.failed()) {
+                                _logger.error("Error loading assets ", assets.cause());
+                                startFuture.fail(assets.cause());
+                            } else {
+                                useAssets(assets.result());
+                                startWebApp((http) -> completeStartup(http, startFuture));
+                            }
+                        });
+                    }
+                });
 
     }
 
     @Override
     public void stop(Future<Void> stopFuture) throws Exception {
-        jdbcClient.close();
+        if (cacheInvalidator != null) {
+            cacheInvalidator.close();
+        }
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
         stopFuture.complete();
     }
 
@@ -69,63 +169,49 @@ public class MainVerticle extends AbstractVerticle {
         }
     }
 
-    private void startBackend(Handler<AsyncResult<SQLConnection>> next, Future<Void> future) {
-        jdbcClient.getConnection(ar -> {
-            if (ar.failed()) {
-                _logger.error("Error starting backend ", ar.cause());
-                future.fail(ar.cause());
-            } else {
-                next.handle(Future.succeededFuture(ar.result()));
+    /**
+     * Deploys the {@link MantraRepository} workers unless another instance of this verticle already did.
+     */
+    private void startRepository(Handler<AsyncResult<Void>> next) {
+        vertx.sharedData().getLock("mantras.repository", lock -> {
+            if (lock.failed()) {
+                next.handle(Future.failedFuture(lock.cause()));
+                return;
             }
-        });
-    }
-
-    private void createChants(AsyncResult<SQLConnection> result, Handler<AsyncResult<Void>> next, Future<Void> future) {
 
-        if (result.failed()) {
-            _logger.error("Error before creating chants ", result.cause());
-            future.fail(result.cause());
-        } else {
-            SQLConnection sqlConnection = result.result();
-            sqlConnection.execute(
-                    "CREATE TABLE IF NOT EXISTS MANTRAS (id INTEGER IDENTITY, mantra varchar(200))",
-                    ar -> {
-                        if (ar.failed()) {
-                            _logger.error("Error before creating chants  tables", ar.cause());
-                            future.fail(ar.cause());
-                            sqlConnection.close();
-                        } else {
-                            sqlConnection.query("SELECT * FROM MANTRAS",
-                                    select -> {
-                                        if (select.failed()) {
-                                            future.fail(select.cause());
-                                            sqlConnection.close();
-                                            return;
-                                        }
-                                        if (select.result().getNumRows() == 0) {
-                                            insert(new Mantra("Srimathe Ramanujaya Namaha!"), sqlConnection,
-                                                    (m1) -> insert(new Mantra("Hare Rama Hare Rama Rama Rama Hare Hare!"), sqlConnection,
-                                                            (m2) -> insert(new Mantra("Hare Krishna Hare Krishna Krishna Krishna Hare Hare!"), sqlConnection,
-                                                                    (s) -> {
-                                                                        next.handle(Future.succeededFuture());
-                                                                        sqlConnection.close();
-                                                                    })));
-
-                                        } else {
-                                            next.handle(Future.succeededFuture());
-                                            sqlConnection.close();
-                                        }
-                                    });
-                        }
-
-                    }
-            );
+            LocalMap<String, String> deployments = vertx.sharedData().getLocalMap("mantras");
+            if (deployments.get("repository") != null) {
+                lock.result().release();
+                next.handle(Future.succeededFuture());
+                return;
+            }
 
-        }
+            DeploymentOptions options = new DeploymentOptions()
+                    .setConfig(config())
+                    .setWorker(config().getBoolean("repository.worker", true))
+                    .setInstances(config().getInteger("repository.instances", 1));
+            vertx.deployVerticle(MantraRepository.class.getName(), options, deployment -> {
+                if (deployment.succeeded()) {
+                    deployments.put("repository", deployment.result());
+                    next.handle(Future.succeededFuture());
+                } else {
+                    next.handle(Future.failedFuture(deployment.cause()));
+                }
+                lock.result().release();
+            });
+        });
     }
 
     private void startWebApp(Handler<AsyncResult<HttpServer>> next) {
 
+        try {
+            serverProfile = ServerProfile.fromConfig(config());
+        } catch (IllegalArgumentException e) {
+            next.handle(Future.failedFuture(e));
+            return;
+        }
+        _logger.info("Starting HTTP server with profile {}", serverProfile.name());
+
         Router router = Router.router(vertx);
 
         //routes
@@ -139,89 +225,206 @@ public class MainVerticle extends AbstractVerticle {
         });
 
         //static routes
-        router.route("/assets/*").handler(StaticHandler.create("assets"));
-
-
-//        //Authentication and Authorization
-//        BasicAuthHandler basicAuthHandler = BasicAuthHandler.create(authProvider);
-//
-//        router.route("/admin/*").handler(basicAuthHandler);
+        router.get("/assets/_manifest.json").handler(withAssets((assets, routingContext) -> {
+            JsonObject manifest = new JsonObject();
+            assets.manifest().forEach((name, hashed) -> manifest.put(name, "/assets/" + hashed));
+            routingContext.response()
+                    .putHeader("content-type", "application/json;charset=utf-8")
+                    .putHeader("cache-control", "no-cache")
+                    .end(manifest.encode());
+        }));
+        Handler<RoutingContext> assetRoute = withAssets((assets, routingContext) ->
+                assetHandler.handle(routingContext));
+        router.get("/assets/*").handler(assetRoute);
+        router.head("/assets/*").handler(assetRoute);
+
+
+        //Authentication and Authorization
+        MantraAuth auth = null;
+        if (config().getBoolean("auth.enabled", false)) {
+            try {
+                auth = MantraAuth.shared(vertx, config());
+            } catch (IllegalArgumentException e) {
+                next.handle(Future.failedFuture(e));
+                return;
+            }
+            metrics.counter("mantras_auth_cache_hits_total", "Basic credentials let in without asking the realm",
+                    auth::cacheHits);
+            metrics.counter("mantras_auth_realm_calls_total", "Basic credentials checked by the realm",
+                    auth::realmCalls);
+            metrics.counter("mantras_auth_tokens_verified_total", "Session tokens let in", auth::tokensVerified);
+            metrics.counter("mantras_auth_rejected_total", "Requests turned away with a 401 or a 403",
+                    auth::rejected);
+            if (auth.issuesTokens()) {
+                router.post("/api/auth/token").handler(auth::issueToken);
+            }
+        }
 
         //REST API
 
 
-        router.get("/api/mantras").handler(this::getAll);
+        router.get("/metrics").handler(this::metrics);
+        if (changeFeed != null) {
+            //long lived, so neither timed nor limited
+            router.get("/api/mantras/_changes").handler(changeFeed::subscribe);
+        }
+        router.get("/api/mantras").handler(limited("getAll", this::getAll));
 
         //This is required
         router.route("/api/mantras*").handler(BodyHandler.create());
-        router.post("/api/mantras").handler(this::addOne);
-        router.get("/api/mantras/:id").handler(this::getOne);
-        router.put("/api/mantras/:id").handler(this::updateOne);
-        router.delete("/api/mantras/:id").handler(this::deleteOne);
+        if (auth != null) {
+            //after the body handler, which has to see the request before anything waits on the realm
+            router.post("/api/mantras*").handler(auth::authenticate);
+            router.put("/api/mantras*").handler(auth::authenticate);
+            router.delete("/api/mantras*").handler(auth::authenticate);
+            for (String admin : Arrays.asList("_auth", "_cache", "_pool", "_limits", "_shards")) {
+                router.get("/api/mantras/" + admin).handler(auth::authenticate);
+            }
+        }
+        router.post("/api/mantras").handler(limited("addOne", this::addOne));
+        router.get("/api/mantras/_auth").handler(this::authStats);
+        router.get("/api/mantras/_cache").handler(this::cacheStats);
+        router.get("/api/mantras/_pool").handler(this::poolStats);
+        router.get("/api/mantras/_limits").handler(this::limitStats);
+        router.get("/api/mantras/_shards").handler(this::shardStats);
+        router.get("/api/mantras/_search").handler(limited("search", this::search));
+        router.post("/api/mantras/_bulk").handler(limited("addAll", this::addAll));
+        router.put("/api/mantras/_bulk").handler(limited("updateAll", this::updateAll));
+        router.delete("/api/mantras/_bulk").handler(limited("deleteAll", this::deleteAll));
+        router.get("/api/mantras/:id").handler(limited("getOne", this::getOne));
+        router.put("/api/mantras/:id").handler(limited("updateOne", this::updateOne));
+        router.delete("/api/mantras/:id").handler(limited("deleteOne", this::deleteOne));
 
         vertx
-                .createHttpServer()
+                .createHttpServer(serverProfile.options().setPort(config().getInteger("http.port", 8080)))
                 .requestHandler(router::accept)
-                .listen(config().getInteger("http.port", 8080), next);
+                .listen(next);
 
     }
 
-    //CRUD Operations
-    private void insert(Mantra mantra, SQLConnection sqlConnection, Handler<AsyncResult<Mantra>> next) {
-        final String sql = "INSERT INTO MANTRAS(mantra) VALUES(?)";
-        sqlConnection.updateWithParams(sql,
-                new JsonArray().add(mantra.getMantra()),
-                (ar) -> {
-                    if (ar.failed()) {
-                        next.handle(Future.failedFuture(ar.cause()));
-                        sqlConnection.close();
-                        return;
-                    }
-
-                    UpdateResult result = ar.result();
-                    Mantra mantra1 = new Mantra(result.getKeys().getInteger(0), mantra.getMantra());
-                    next.handle(Future.succeededFuture(mantra1));
-                }
-        );
+    private void useAssets(AssetCache loaded) {
+        assets = loaded;
+        assetHandler = new AssetHandler(loaded, "/assets/", config().getLong("assets.max.age.seconds", 31536000L));
     }
 
-    private void select(String id, SQLConnection sqlConnection, Handler<AsyncResult<Mantra>> resultHandler) {
-        final String sql = "SELECT * FROM MANTRAS where id=?";
-        sqlConnection.queryWithParams(sql,
-                new JsonArray().add(id),
-                (ar) -> {
-                    if (ar.failed()) {
-                        resultHandler.handle(Future.failedFuture("Mantra Not Found"));
-                    } else {
-                        ResultSet result = ar.result();
-                        if (result.getNumRows() >= 1) {
-                            resultHandler.handle(Future.succeededFuture(new Mantra(result.getRows().get(0))));
-                        } else {
-                            resultHandler.handle(Future.failedFuture("Mantra Not Found"));
-                        }
+    /**
+     * Hands the request the {@link AssetCache}, loading it first when {@code startup.lazy} left that to the first
+     * request for an asset.
+     */
+    private Handler<RoutingContext> withAssets(BiConsumer<AssetCache, RoutingContext> handler) {
+        return routingContext -> {
+            if (assets != null) {
+                handler.accept(assets, routingContext);
+                return;
+            }
+            AssetCache.shared(vertx, config(), loaded -> {
+                if (loaded.failed()) {
+                    _logger.error("Error loading assets ", loaded.cause());
+                    routingContext.fail(loaded.cause());
+                } else {
+                    if (assets == null) {
+                        useAssets(loaded.result());
                     }
+                    handler.accept(assets, routingContext);
                 }
-        );
+            });
+        };
     }
 
-    private void update(Mantra mantra, SQLConnection sqlConnection, Handler<AsyncResult<Mantra>> resultHandler) {
-        final String sql = "UPDATE MANTRAS set MANTRA = ? where ID=?";
-        sqlConnection.updateWithParams(sql,
-                new JsonArray().add(mantra.getMantra()).add(mantra.getId()),
-                update -> {
-                    if (update.failed()) {
-                        resultHandler.handle(Future.failedFuture("Unable to update mantra"));
-                        return;
-                    }
+    private Handler<RoutingContext> timed(String route, Handler<RoutingContext> handler) {
+        return new RouteMetrics(metrics, route).timed(handler);
+    }
 
-                    UpdateResult result = update.result();
-                    if (result.getUpdated() == 0) {
-                        resultHandler.handle(Future.failedFuture("Mantra not found"));
-                    } else {
-                        resultHandler.handle(Future.succeededFuture(mantra));
-                    }
-                }
-        );
+    /**
+     * Times the route and, unless {@code limit.enabled} is false, caps its requests in flight with the route's
+     * {@link ConcurrencyLimiter}. Turned away requests are timed too, as 503s.
+     */
+    private Handler<RoutingContext> limited(String route, Handler<RoutingContext> handler) {
+        if (!config().getBoolean("limit.enabled", true)) {
+            return timed(route, handler);
+        }
+        limitedRoutes.add(route);
+        return timed(route, ConcurrencyLimiter.shared(vertx, config(), route)
+                .limited(handler, config().getLong("limit.retry.after.seconds", 1L)));
+    }
+
+    /**
+     * Sends the action to the {@link MantraRepository}, or when sharded to the shards the {@link ShardClient} picks.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void request(String action, Object body, String codecName, Span span,
+                             Handler<AsyncResult<T>> replyHandler) {
+        if (shards == null) {
+            send(MantraRepository.ADDRESS, action, body, codecName, span, replyHandler);
+        } else {
+            shards.request(action, body,
+                    (address, shardAction, shardBody, shardCodec, reply) ->
+                            send(address, shardAction, shardBody, shardCodec, span, reply),
+                    reply -> replyHandler.handle((AsyncResult<T>) reply));
+        }
+    }
+
+    /**
+     * Sends the action to the repository at the address, carrying the span context in the message headers. The
+     * request fails as unavailable after {@code repository.request.timeout.ms}, which the repository is told as a
+     * {@link MantraRepository#DEADLINE} so that it does not start on requests nobody waits for anymore.
+     */
+    private <T> void send(String address, String action, Object body, String codecName, Span span,
+                          Handler<AsyncResult<T>> replyHandler) {
+        long timeout = config().getLong("repository.request.timeout.ms", 10000L);
+        DeliveryOptions options = new DeliveryOptions()
+                .addHeader(MantraRepository.ACTION, action)
+                .addHeader(MantraRepository.DEADLINE, Long.toString(System.currentTimeMillis() + timeout))
+                .setSendTimeout(timeout);
+        if (codecName != null) {
+            options.setCodecName(codecName);
+        }
+
+        tracing.inject(span, options);
+
+        Timer timer = repositoryTimers.computeIfAbsent(action, a -> metrics.timer("mantras_repository_request_seconds",
+                "Time from sending a request to the repository to its reply", "action", a));
+        long start = System.nanoTime();
+        vertx.eventBus().<T>send(address, body, options, reply -> {
+            timer.recordSince(start);
+            if (reply.succeeded()) {
+                replyHandler.handle(Future.succeededFuture(reply.result().body()));
+            } else {
+                replyHandler.handle(Future.failedFuture(reply.cause()));
+            }
+        });
+    }
+
+    /**
+     * Requests a read from the {@link MantraRepository}, unless the same read is already on its way, in which case
+     * it waits for that one and gets the same reply. Reads sent before a write this verticle saw are not joined.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void read(String action, Object body, Span span, Handler<AsyncResult<T>> replyHandler) {
+        if (reads == null) {
+            request(action, body, null, span, replyHandler);
+            return;
+        }
+        boolean coalesced = reads.execute(action + ":" + body + "@" + writes,
+                load -> request(action, body, null, span, load),
+                reply -> replyHandler.handle((AsyncResult<T>) reply));
+        if (coalesced && span != null) {
+            span.setTag("coalesced", true);
+        }
+    }
+
+    /**
+     * @return the failure code the repository replied with, 503 when it could not be reached at all
+     */
+    private static int failureCode(Throwable cause) {
+        if (cause instanceof ReplyException) {
+            ReplyException replyException = (ReplyException) cause;
+            if (replyException.failureType() == ReplyFailure.RECIPIENT_FAILURE) {
+                return replyException.failureCode();
+            }
+            return 503;
+        }
+        return 500;
     }
 
     private void getOne(RoutingContext routingContext) {
@@ -229,42 +432,38 @@ public class MainVerticle extends AbstractVerticle {
 
         String id = routingContext.request().getParam("id");
 
-        SpanContext spanContext = tracer.extract(Format.Builtin.TEXT_MAP,
-                new HttpHeadersExtractAdapter(routingContext.request().headers()));
-
-        Span getOneSpan = tracer.buildSpan("GET")
-                .asChildOf(spanContext)
+        Span getOneSpan = tracing.buildSpan("GET", routingContext.request().headers())
                 .withTag("http.url", "/api/mantras")
                 .withTag("service", "ChantManager")
                 .withTag("transaction", "Get a Mantra")
                 .start();
 
-        Span mantrasFromDB = tracer.buildSpan("MantrasFromDB")
-                .asChildOf(getOneSpan)
+        Span mantrasFromDB = tracing.buildSpan("MantrasFromDB", getOneSpan)
                 .start();
 
-        tracer.inject(mantrasFromDB.context(), Format.Builtin.TEXT_MAP,
-                new VertxMessageInjectAdapter(new JsonObject().put("id", id)));
-
-
-        if (id != null) {
-            jdbcClient.getConnection(ar -> {
-                SQLConnection sqlConnection = ar.result();
-                select(id, sqlConnection, (mantra) -> {
-                    mantrasFromDB.finish();
-                    if (mantra.succeeded()) {
-                        routingContext.response()
-                                .putHeader("content-type", "application/json;charset=utf-8")
-                                .end(Json.encodePrettily(mantra.result()));
-                        getOneSpan.finish();
-                    } else {
-                        sendError(404, "Unable to get mantra with id:" + id,
-                                routingContext.response(), getOneSpan);
-                    }
-                });
+        Integer mantraId = parseId(id);
+        Mantra cached = mantraId == null || mantraCache == null ? null : mantraCache.get(mantraId);
+        if (cached != null) {
+            mantrasFromDB.setTag("cache", "hit");
+            mantrasFromDB.finish();
+            endConditional(routingContext, cached);
+            getOneSpan.finish();
+        } else if (mantraId != null) {
+            final long epoch = invalidationEpoch;
+            this.<Mantra>read(MantraRepository.SELECT, mantraId, mantrasFromDB, (mantra) -> {
+                mantrasFromDB.finish();
+                if (mantra.succeeded()) {
+                    cacheRead(mantra.result(), epoch);
+                    endConditional(routingContext, mantra.result());
+                    getOneSpan.finish();
+                } else {
+                    sendError(failureCode(mantra.cause()) == 503 ? 503 : 404, "Unable to get mantra with id:" + id,
+                            routingContext.response(), getOneSpan);
+                }
             });
         } else {
-            routingContext.response().setStatusCode(404).end();
+            mantrasFromDB.finish();
+            sendError(404, "Unable to get mantra with id:" + id, routingContext.response(), getOneSpan);
         }
     }
 
@@ -272,171 +471,619 @@ public class MainVerticle extends AbstractVerticle {
 
         String id = routingContext.request().getParam("id");
 
-        SpanContext spanContext = tracer.extract(Format.Builtin.TEXT_MAP,
-                new HttpHeadersExtractAdapter(routingContext.request().headers()));
-
-        Span deleteMantra = tracer.buildSpan("DELETE")
-                .asChildOf(spanContext)
+        Span deleteMantra = tracing.buildSpan("DELETE", routingContext.request().headers())
                 .withTag("http.url", "/api/mantras")
                 .withTag("service", "ChantManager")
                 .withTag("transaction", "Delete Mantra")
                 .start();
 
-        Span addMantraToDB = tracer.buildSpan("DeleteMantraFromDB")
-                .asChildOf(deleteMantra)
+        Span deleteMantraFromDB = tracing.buildSpan("DeleteMantraFromDB", deleteMantra)
                 .start();
 
-        tracer.inject(addMantraToDB.context(), Format.Builtin.TEXT_MAP,
-                new VertxMessageInjectAdapter(new JsonObject().put("id", id)));
-
-        jdbcClient.getConnection(ar -> {
-
-            SQLConnection sqlConnection = ar.result();
+        Integer mantraId = parseId(id);
+        if (mantraId == null) {
+            deleteMantraFromDB.finish();
+            sendError(404, "Unable to delete mantra with id:" + id,
+                    routingContext.response(), deleteMantra);
+            return;
+        }
 
-            if (id == null) {
-                addMantraToDB.finish();
-                sendError(404, "Unable to delete mantra with id:" + id,
-                        routingContext.response(), deleteMantra);
+        request(MantraRepository.DELETE, mantraId, null, deleteMantraFromDB, (result) -> {
+            deleteMantraFromDB.finish();
+            if (result.succeeded()) {
+                invalidate(mantraId);
+                routingContext.response()
+                        .putHeader("content-type", "text/plain")
+                        .setStatusCode(204).end();
             } else {
-                sqlConnection.execute("DELETE FROM MANTRAS WHERE id='" + id + "'",
-                        (result) -> {
-
-                            if (result.succeeded()) {
-                                routingContext.response()
-                                        .putHeader("content-type", "text/plain")
-                                        .setStatusCode(204).end();
-                            } else {
-                                sendError(404, result.cause().getMessage(), routingContext.response(), deleteMantra);
-                            }
-                        });
-                addMantraToDB.finish();
+                sendError(failureCode(result.cause()) == 503 ? 503 : 404, result.cause().getMessage(),
+                        routingContext.response(), deleteMantra);
             }
-
-            sqlConnection.close();
-
         });
     }
 
 
     private void addOne(RoutingContext routingContext) {
 
-        SpanContext spanContext = tracer.extract(Format.Builtin.TEXT_MAP,
-                new HttpHeadersExtractAdapter(routingContext.request().headers()));
-
-        Span addNewMantraSpan = tracer.buildSpan("POST")
-                .asChildOf(spanContext)
+        Span addNewMantraSpan = tracing.buildSpan("POST", routingContext.request().headers())
                 .withTag("http.url", "/api/mantras")
                 .withTag("service", "ChantManager")
                 .withTag("transaction", "Add Mantra")
                 .start();
 
-        Span addMantraToDB = tracer.buildSpan("AddMantraToDB")
-                .asChildOf(addNewMantraSpan)
+        Span addMantraToDB = tracing.buildSpan("AddMantraToDB", addNewMantraSpan)
                 .start();
 
-        tracer.inject(addMantraToDB.context(), Format.Builtin.TEXT_MAP,
-                new VertxMessageInjectAdapter(routingContext.getBodyAsJson()));
-
-        final Mantra mantra = Json.decodeValue(routingContext.getBodyAsString(), Mantra.class);
-        jdbcClient.getConnection(ar -> {
-            SQLConnection sqlConnection = ar.result();
-            insert(mantra, sqlConnection, (inserted) -> {
-                addMantraToDB.finish();
-
-                if (inserted.failed()) {
-                    sendError(404, "Unable to add mantra",
-                            routingContext.response(), addNewMantraSpan);
-                } else {
+        final Mantra mantra = MantraJson.decode(routingContext.getBody());
+        this.<Mantra>request(MantraRepository.INSERT, mantra, null, addMantraToDB, (inserted) -> {
+            addMantraToDB.finish();
 
-                    routingContext.response()
-                            .setStatusCode(201)
-                            .putHeader("content-type", "application/json;charset=utf-8")
-                            .end(Json.encodePrettily(inserted.result()));
-                    addNewMantraSpan.finish();
-                }
-                sqlConnection.close();
-            });
+            if (inserted.failed()) {
+                sendError(failureCode(inserted.cause()) == 503 ? 503 : 404, "Unable to add mantra",
+                        routingContext.response(), addNewMantraSpan);
+            } else {
+                refresh(inserted.result());
+                routingContext.response().setStatusCode(201);
+                endJson(routingContext, inserted.result());
+                addNewMantraSpan.finish();
+            }
         });
     }
 
     private void updateOne(RoutingContext routingContext) {
-        final Mantra updatedMantra = Json.decodeValue(routingContext.getBodyAsString(), Mantra.class);
+        final Mantra updatedMantra = MantraJson.decode(routingContext.getBody());
 
-        SpanContext spanContext = tracer.extract(Format.Builtin.TEXT_MAP,
-                new HttpHeadersExtractAdapter(routingContext.request().headers()));
-
-        Span updateSpan = tracer.buildSpan("PUT")
-                .asChildOf(spanContext)
+        Span updateSpan = tracing.buildSpan("PUT", routingContext.request().headers())
                 .withTag("http.url", "/api/mantras")
                 .withTag("service", "ChantManager")
                 .withTag("transaction", "Update Mantra")
                 .start();
 
-        Span mantrasFromDB = tracer.buildSpan("MantrasFromDB")
-                .asChildOf(updateSpan)
+        Span mantrasFromDB = tracing.buildSpan("MantrasFromDB", updateSpan)
                 .start();
 
-        tracer.inject(mantrasFromDB.context(), Format.Builtin.TEXT_MAP,
-                new VertxMessageInjectAdapter(routingContext.getBodyAsJson()));
-
-        jdbcClient.getConnection(ar -> {
-            SQLConnection sqlConnection = ar.result();
-            update(updatedMantra, sqlConnection,
-                    (u) -> {
-                        mantrasFromDB.finish();
-                        if (u.failed()) {
-                            sendError(404, u.cause().getMessage(), routingContext.response(), updateSpan);
-                        } else {
-                            routingContext.response()
-                                    .putHeader("content-type", "application/json;charset=utf-8")
-                                    .end(Json.encodePrettily(u.result()));
-                            updateSpan.finish();
-                        }
-
-                    });
-            sqlConnection.close();
+        this.<Mantra>request(MantraRepository.UPDATE, updatedMantra, null, mantrasFromDB, (u) -> {
+            mantrasFromDB.finish();
+            if (u.failed()) {
+                invalidate(updatedMantra.getId());
+                sendError(failureCode(u.cause()) == 503 ? 503 : 404, u.cause().getMessage(),
+                        routingContext.response(), updateSpan);
+            } else {
+                refresh(u.result());
+                endJson(routingContext, u.result());
+                updateSpan.finish();
+            }
         });
     }
 
     private void getAll(RoutingContext routingContext) {
 
-        SpanContext spanContext = tracer.extract(Format.Builtin.TEXT_MAP,
-                new HttpHeadersExtractAdapter(routingContext.request().headers()));
-
-        Span getAllSpan = tracer.buildSpan("GET")
-                .asChildOf(spanContext)
+        Span getAllSpan = tracing.buildSpan("GET", routingContext.request().headers())
                 .withTag("http.url", "/api/mantras")
                 .withTag("service", "ChantManager")
                 .withTag("transaction", "List all Mantras")
                 .start();
 
-        Span getMantrasFromDBSpan = tracer.buildSpan("MantrasFromDB")
-                .asChildOf(getAllSpan)
+        Span getMantrasFromDBSpan = tracing.buildSpan("MantrasFromDB", getAllSpan)
                 .start();
 
-        tracer.inject(getMantrasFromDBSpan.context(), Format.Builtin.TEXT_MAP,
-                new VertxMessageInjectAdapter(new JsonObject()));
+        String after = routingContext.request().getParam("after");
+        String limit = routingContext.request().getParam("limit");
+        //without paging parameters the whole table is streamed chunk by chunk
+        final boolean streaming = after == null && limit == null;
+
+        final int afterId;
+        final int pageSize;
+        try {
+            afterId = after == null ? -1 : Integer.parseInt(after);
+            pageSize = limit == null ? config().getInteger("mantras.page.size", 100)
+                    : Math.min(Integer.parseInt(limit), config().getInteger("mantras.page.max", 1000));
+        } catch (NumberFormatException e) {
+            getMantrasFromDBSpan.finish();
+            sendError(400, "Invalid paging parameters", routingContext.response(), getAllSpan);
+            return;
+        }
+
+        if (pageSize <= 0) {
+            getMantrasFromDBSpan.finish();
+            sendError(400, "Invalid paging parameters", routingContext.response(), getAllSpan);
+            return;
+        }
+
+        this.<String>read(MantraRepository.FINGERPRINT, null, getMantrasFromDBSpan, fingerprint -> {
+
+            if (fingerprint.failed()) {
+                getMantrasFromDBSpan.finish();
+                sendError(failureCode(fingerprint.cause()) == 503 ? 503 : 500, fingerprint.cause().getMessage(),
+                        routingContext.response(), getAllSpan);
+                return;
+            }
+
+            String etag = "\"" + fingerprint.result() + "\"";
+            if (notModified(routingContext, etag)) {
+                getMantrasFromDBSpan.finish();
+                routingContext.response().putHeader("etag", etag).setStatusCode(304).end();
+                getAllSpan.finish();
+                return;
+            }
+            routingContext.response().putHeader("etag", etag);
+
+            if (streaming) {
+                HttpServerResponse response = routingContext.response()
+                        .setChunked(true)
+                        .putHeader("content-type", "application/json;charset=utf-8");
+                ResponseCompressor body = serverProfile.compressor(routingContext);
+                AtomicBoolean done = new AtomicBoolean();
+                //while parked on a full write queue no page comes back to notice the client has gone
+                response.closeHandler(v -> abandonStream(done, "client closed connection", response, body,
+                        getMantrasFromDBSpan, getAllSpan));
+                response.exceptionHandler(e -> abandonStream(done, String.valueOf(e.getMessage()), response, body,
+                        getMantrasFromDBSpan, getAllSpan));
+                boolean pretty = pretty(routingContext);
+                body.write(Buffer.buffer(pretty ? "[ " : "["));
+                RouteMetrics route = RouteMetrics.of(routingContext);
+                streamAll(-1, true, pretty, done, response, body, route == null ? null : route.serialization(),
+                        getMantrasFromDBSpan, getAllSpan);
+                return;
+            }
 
-        jdbcClient.getConnection(ar -> {
-            SQLConnection sqlConnection = ar.result();
-            sqlConnection.query("SELECT * FROM MANTRAS", result -> {
+            page(afterId, pageSize, getMantrasFromDBSpan, result -> {
 
                 getMantrasFromDBSpan.finish();
 
                 if (result.succeeded()) {
-                    List<Mantra> mantras = result.result().getRows().stream().map(Mantra::new).collect(Collectors.toList());
-                    routingContext.response()
-                            .putHeader("content-type", "application/json;charset=utf-8")
-                            .end(Json.encodePrettily(mantras));
+                    List<Mantra> mantras = result.result();
+                    HttpServerResponse response = routingContext.response()
+                            .putHeader("content-type", "application/json;charset=utf-8");
+                    if (mantras.size() == pageSize) {
+                        response.putHeader("link", "</api/mantras?after=" + mantras.get(pageSize - 1).getId()
+                                + "&limit=" + pageSize + ">; rel=\"next\"");
+                    }
+                    endJson(routingContext, mantras);
                     getAllSpan.finish();
                 } else {
-                    sendError(500, result.cause().getMessage(), routingContext.response(), getAllSpan);
+                    sendError(failureCode(result.cause()) == 503 ? 503 : 500, result.cause().getMessage(),
+                            routingContext.response(), getAllSpan);
                 }
-                sqlConnection.close();
             });
         });
     }
 
+    /**
+     * Answers {@code q} from the repository's search index, best match first. The last term of the query also
+     * matches as a prefix unless {@code prefix=false}.
+     */
+    private void search(RoutingContext routingContext) {
+
+        Span searchSpan = tracing.buildSpan("GET", routingContext.request().headers())
+                .withTag("http.url", "/api/mantras/_search")
+                .withTag("service", "ChantManager")
+                .withTag("transaction", "Search Mantras")
+                .start();
+
+        String query = routingContext.request().getParam("q");
+        String limit = routingContext.request().getParam("limit");
+        if (query == null || query.trim().isEmpty()) {
+            sendError(400, "Missing search query q", routingContext.response(), searchSpan);
+            return;
+        }
+
+        final int maxResults;
+        try {
+            maxResults = limit == null ? config().getInteger("search.limit", 10)
+                    : Math.min(Integer.parseInt(limit), config().getInteger("search.limit.max", 100));
+        } catch (NumberFormatException e) {
+            sendError(400, "Invalid search limit", routingContext.response(), searchSpan);
+            return;
+        }
+        if (maxResults <= 0) {
+            sendError(400, "Invalid search limit", routingContext.response(), searchSpan);
+            return;
+        }
+
+        Span searchIndexSpan = tracing.buildSpan("MantrasFromIndex", searchSpan)
+                .start();
+
+        JsonObject search = new JsonObject()
+                .put("q", query)
+                .put("limit", maxResults)
+                .put("prefix", !"false".equals(routingContext.request().getParam("prefix")));
+        this.<List<Mantra>>read(MantraRepository.SEARCH, search, searchIndexSpan, result -> {
+            searchIndexSpan.finish();
+            if (result.succeeded()) {
+                endJson(routingContext, result.result());
+                searchSpan.finish();
+            } else {
+                sendError(failureCode(result.cause()) == 503 ? 503 : 500, result.cause().getMessage(),
+                        routingContext.response(), searchSpan);
+            }
+        });
+    }
+
+    private void page(int after, int limit, Span span, Handler<AsyncResult<List<Mantra>>> resultHandler) {
+        read(MantraRepository.PAGE, new JsonObject().put("after", after).put("limit", limit), span, resultHandler);
+    }
+
+    /**
+     * Writes the mantras with id greater than {@code after} to the chunked response, one keyset page at a time.
+     * Nothing is held between chunks and the next chunk is only read once the response write queue has drained,
+     * so neither the connection pool nor the heap is held by a slow client.
+     * <p>
+     * {@code done} is set by whichever of the end, a failure or the client going away comes first, which then
+     * finishes the spans and the body. With {@code pretty} the chunks add up to what {@link Json#encodePrettily}
+     * gives for the whole list.
+     */
+    private void streamAll(int after, boolean first, boolean pretty, AtomicBoolean done, HttpServerResponse response,
+                           ResponseCompressor body, Timer serialization, Span dbSpan, Span span) {
+        final int chunkSize = config().getInteger("mantras.stream.chunk", 500);
+        page(after, chunkSize, dbSpan, result -> {
+            if (done.get()) {
+                return;
+            }
+            if (result.failed()) {
+                abortStream(done, result.cause(), response, body, dbSpan, span);
+                return;
+            }
+            if (response.closed()) {
+                abandonStream(done, "client closed connection", response, body, dbSpan, span);
+                return;
+            }
+
+            List<Mantra> mantras = result.result();
+            boolean firstRow = first;
+            if (!mantras.isEmpty()) {
+                long start = System.nanoTime();
+                Buffer chunk;
+                if (pretty) {
+                    chunk = Buffer.buffer();
+                    for (Mantra mantra : mantras) {
+                        chunk.appendString(firstRow ? "" : ", ").appendString(Json.encodePrettily(mantra));
+                        firstRow = false;
+                    }
+                } else {
+                    int size = 0;
+                    for (Mantra mantra : mantras) {
+                        size += MantraJson.sizeOf(mantra) + 1;
+                    }
+                    chunk = Buffer.buffer(size);
+                    for (Mantra mantra : mantras) {
+                        if (!firstRow) {
+                            chunk.appendByte((byte) ',');
+                        }
+                        MantraJson.write(chunk, mantra);
+                        firstRow = false;
+                    }
+                }
+                if (serialization != null) {
+                    serialization.recordSince(start);
+                }
+                body.write(chunk);
+            }
+
+            if (mantras.size() < chunkSize) {
+                done.set(true);
+                dbSpan.finish();
+                body.end(Buffer.buffer(pretty && !firstRow ? " ]" : "]"));
+                span.finish();
+                return;
+            }
+
+            final int lastId = mantras.get(mantras.size() - 1).getId();
+            final boolean nextFirst = firstRow;
+            if (response.writeQueueFull()) {
+                response.drainHandler(v -> {
+                    response.drainHandler(null);
+                    streamAll(lastId, nextFirst, pretty, done, response, body, serialization, dbSpan, span);
+                });
+            } else {
+                streamAll(lastId, nextFirst, pretty, done, response, body, serialization, dbSpan, span);
+            }
+        });
+    }
+
+    /**
+     * Gives up on a stream whose client has gone away, nothing more can be written to it.
+     */
+    private void abandonStream(AtomicBoolean done, String fault, HttpServerResponse response,
+                               ResponseCompressor body, Span dbSpan, Span span) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        response.drainHandler(null);
+        body.abort();
+        dbSpan.finish();
+        span.setTag("fault", fault);
+        span.finish();
+    }
+
+    private void abortStream(AtomicBoolean done, Throwable cause, HttpServerResponse response,
+                             ResponseCompressor body, Span dbSpan, Span span) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        body.abort();
+        _logger.error("Error streaming mantras ", cause);
+        dbSpan.finish();
+        //the status line has already gone out, closing is the only way to tell the client the array is incomplete
+        if (!response.closed()) {
+            response.close();
+        }
+        span.setTag("fault", cause.getMessage() == null ? "500" : cause.getMessage());
+        span.finish();
+    }
+
+
+    private void addAll(RoutingContext routingContext) {
+
+        Span addAllSpan = tracing.buildSpan("POST", routingContext.request().headers())
+                .withTag("http.url", "/api/mantras/_bulk")
+                .withTag("service", "ChantManager")
+                .withTag("transaction", "Add Mantras in bulk")
+                .start();
+
+        final List<Mantra> mantras;
+        try {
+            mantras = bulkMantras(routingContext.getBodyAsJsonArray(), false);
+        } catch (DecodeException | ClassCastException | NullPointerException e) {
+            sendError(400, "Expected a JSON array of mantras", routingContext.response(), addAllSpan);
+            return;
+        }
+
+        Span addAllToDB = tracing.buildSpan("AddMantrasToDB", addAllSpan)
+                .withTag("rows", mantras.size())
+                .start();
+
+        this.<List<Mantra>>request(MantraRepository.INSERT_ALL, mantras, MantraListCodec.NAME, addAllToDB, inserted -> {
+            addAllToDB.finish();
+            writes++;
+            if (inserted.failed()) {
+                sendError(failureCode(inserted.cause()) == 503 ? 503 : 500, "Unable to add mantras",
+                        routingContext.response(), addAllSpan);
+            } else {
+                routingContext.response().setStatusCode(201);
+                endJson(routingContext, inserted.result());
+                addAllSpan.finish();
+            }
+        });
+    }
+
+    private void updateAll(RoutingContext routingContext) {
+
+        Span updateAllSpan = tracing.buildSpan("PUT", routingContext.request().headers())
+                .withTag("http.url", "/api/mantras/_bulk")
+                .withTag("service", "ChantManager")
+                .withTag("transaction", "Update Mantras in bulk")
+                .start();
+
+        final List<Mantra> mantras;
+        try {
+            mantras = bulkMantras(routingContext.getBodyAsJsonArray(), true);
+        } catch (DecodeException | ClassCastException | NullPointerException e) {
+            sendError(400, "Expected a JSON array of mantras with ids", routingContext.response(), updateAllSpan);
+            return;
+        }
+
+        Span updateAllInDB = tracing.buildSpan("UpdateMantrasInDB", updateAllSpan)
+                .withTag("rows", mantras.size())
+                .start();
+
+        this.<List<Mantra>>request(MantraRepository.UPDATE_ALL, mantras, MantraListCodec.NAME, updateAllInDB, updated -> {
+            updateAllInDB.finish();
+            mantras.forEach(mantra -> invalidate(mantra.getId()));
+            if (updated.failed()) {
+                sendError(failureCode(updated.cause()), updated.cause().getMessage(),
+                        routingContext.response(), updateAllSpan);
+            } else {
+                endJson(routingContext, updated.result());
+                updateAllSpan.finish();
+            }
+        });
+    }
+
+    private void deleteAll(RoutingContext routingContext) {
+
+        Span deleteAllSpan = tracing.buildSpan("DELETE", routingContext.request().headers())
+                .withTag("http.url", "/api/mantras/_bulk")
+                .withTag("service", "ChantManager")
+                .withTag("transaction", "Delete Mantras in bulk")
+                .start();
+
+        final List<Integer> ids = new ArrayList<>();
+        try {
+            JsonArray body = routingContext.getBodyAsJsonArray();
+            for (int i = 0; i < body.size(); i++) {
+                ids.add(body.getInteger(i));
+            }
+        } catch (DecodeException | ClassCastException | NullPointerException e) {
+            sendError(400, "Expected a JSON array of mantra ids", routingContext.response(), deleteAllSpan);
+            return;
+        }
+
+        Span deleteAllFromDB = tracing.buildSpan("DeleteMantrasFromDB", deleteAllSpan)
+                .withTag("rows", ids.size())
+                .start();
+
+        request(MantraRepository.DELETE_ALL, new JsonArray(ids), null, deleteAllFromDB, deleted -> {
+            deleteAllFromDB.finish();
+            ids.forEach(this::invalidate);
+            if (deleted.failed()) {
+                sendError(failureCode(deleted.cause()), deleted.cause().getMessage(),
+                        routingContext.response(), deleteAllSpan);
+            } else {
+                routingContext.response()
+                        .putHeader("content-type", "text/plain")
+                        .setStatusCode(204).end();
+                deleteAllSpan.finish();
+            }
+        });
+    }
+
+    private List<Mantra> bulkMantras(JsonArray body, boolean withIds) {
+        List<Mantra> mantras = new ArrayList<>(body.size());
+        for (int i = 0; i < body.size(); i++) {
+            JsonObject json = body.getJsonObject(i);
+            mantras.add(new Mantra(withIds ? json.getInteger("id") : -1, json.getString("mantra")));
+        }
+        return mantras;
+    }
+
+    private void metrics(RoutingContext routingContext) {
+        StringBuilder out = new StringBuilder(8192);
+        metrics.writePrometheus(out);
+        routingContext.response()
+                .putHeader("content-type", "text/plain;version=0.0.4;charset=utf-8")
+                .end(out.toString());
+    }
+
+    private void cacheStats(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader("content-type", "application/json;charset=utf-8")
+                .end(encode((mantraCache == null ? new JsonObject().put("enabled", false)
+                        : mantraCache.stats().put("enabled", true)
+                        .put("invalidationsPublished", cacheInvalidator.published())
+                        .put("invalidationsReceived", cacheInvalidator.received()))
+                        .put("singleFlight", reads == null ? new JsonObject().put("enabled", false)
+                                : SingleFlight.Stats.shared(vertx).toJson().put("enabled", true)),
+                        pretty(routingContext)));
+    }
+
+    private void poolStats(RoutingContext routingContext) {
+        this.<JsonObject>request(MantraRepository.POOL, null, null, null, stats -> {
+            if (stats.failed()) {
+                sendError(failureCode(stats.cause()), stats.cause().getMessage(), routingContext.response(), null);
+            } else {
+                routingContext.response()
+                        .putHeader("content-type", "application/json;charset=utf-8")
+                        .end(encode(stats.result(), pretty(routingContext)));
+            }
+        });
+    }
+
+    private void limitStats(RoutingContext routingContext) {
+        JsonObject stats = new JsonObject();
+        limitedRoutes.forEach(route -> stats.put(route, ConcurrencyLimiter.shared(vertx, config(), route).stats()));
+        routingContext.response()
+                .putHeader("content-type", "application/json;charset=utf-8")
+                .end(encode(stats.put("enabled", !limitedRoutes.isEmpty()), pretty(routingContext)));
+    }
+
+    private void authStats(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader("content-type", "application/json;charset=utf-8")
+                .end(encode(config().getBoolean("auth.enabled", false)
+                        ? MantraAuth.shared(vertx, config()).stats().put("enabled", true)
+                        : new JsonObject().put("enabled", false), pretty(routingContext)));
+    }
+
+    private void shardStats(RoutingContext routingContext) {
+        routingContext.response()
+                .putHeader("content-type", "application/json;charset=utf-8")
+                .end(encode(shards == null ? new JsonObject().put("enabled", false)
+                        : ShardRouter.shared(vertx, config()).stats().put("enabled", true), pretty(routingContext)));
+    }
+
+    private static boolean pretty(RoutingContext routingContext) {
+        return "true".equals(routingContext.request().getParam("pretty"));
+    }
+
+    private static String encode(JsonObject json, boolean pretty) {
+        return pretty ? json.encodePrettily() : json.encode();
+    }
+
+    private static String etag(Mantra mantra) {
+        return "\"" + mantra.getId() + "-" + mantra.getVersion() + "\"";
+    }
+
+    /**
+     * Weak comparison, as {@code If-None-Match} calls for, where {@code *} matches any current representation.
+     */
+    private static boolean notModified(RoutingContext routingContext, String etag) {
+        String ifNoneMatch = routingContext.request().getHeader("if-none-match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void endConditional(RoutingContext routingContext, Mantra mantra) {
+        if (notModified(routingContext, etag(mantra))) {
+            routingContext.response().putHeader("etag", etag(mantra)).setStatusCode(304).end();
+        } else {
+            endJson(routingContext, mantra);
+        }
+    }
+
+    private void endJson(RoutingContext routingContext, Mantra mantra) {
+        routingContext.response()
+                .putHeader("content-type", "application/json;charset=utf-8")
+                .putHeader("etag", etag(mantra));
+        long start = System.nanoTime();
+        Buffer body = pretty(routingContext) ? Buffer.buffer(Json.encodePrettily(mantra)) : MantraJson.encode(mantra);
+        serialized(routingContext, start);
+        serverProfile.end(routingContext, body);
+    }
+
+    private void endJson(RoutingContext routingContext, List<Mantra> mantras) {
+        routingContext.response().putHeader("content-type", "application/json;charset=utf-8");
+        long start = System.nanoTime();
+        Buffer body = pretty(routingContext) ? Buffer.buffer(Json.encodePrettily(mantras)) : MantraJson.encode(mantras);
+        serialized(routingContext, start);
+        serverProfile.end(routingContext, body);
+    }
+
+    private static void serialized(RoutingContext routingContext, long start) {
+        RouteMetrics route = RouteMetrics.of(routingContext);
+        if (route != null) {
+            route.serialization().recordSince(start);
+        }
+    }
+
+    private static Integer parseId(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void cacheRead(Mantra mantra, long epoch) {
+        if (mantraCache != null && epoch == invalidationEpoch) {
+            mantraCache.put(mantra.getId(), mantra);
+        }
+    }
+
+    /**
+     * Caches the written mantra locally and tells every other cache holder to drop its copy.
+     */
+    private void refresh(Mantra mantra) {
+        writes++;
+        if (mantraCache != null) {
+            invalidationEpoch++;
+            mantraCache.put(mantra.getId(), mantra);
+            cacheInvalidator.invalidate(mantra.getId());
+        }
+    }
+
+    private void invalidate(int id) {
+        writes++;
+        if (mantraCache != null) {
+            invalidationEpoch++;
+            mantraCache.invalidate(id);
+            cacheInvalidator.invalidate(id);
+        }
+    }
 
     private void sendError(int statusCode, String message, HttpServerResponse response, Span span) {
         response.setStatusCode(statusCode).end(message);
@@ -445,4 +1092,4 @@ public class MainVerticle extends AbstractVerticle {
             span.finish();
         }
     }
-}
\ No newline at end of file
+}
@@ -15,29 +15,46 @@ public class Mantra {
 
     private String mantra;
 
+    private final long version;
+
     public Mantra(String mantra) {
         this.id = COUNTER.getAndIncrement();
         this.mantra = mantra;
+        this.version = 0;
     }
 
     public Mantra(int id, String mantra) {
+        this(id, mantra, 0);
+    }
+
+    public Mantra(int id, String mantra, long version) {
         this.id = id;
         this.mantra = mantra;
+        this.version = version;
     }
 
     public Mantra() {
         this.id = -1;
+        this.version = 0;
     }
 
     public Mantra(JsonObject json) {
         this.id = json.getInteger("ID");
         this.mantra = json.getString("MANTRA");
+        this.version = json.getLong("VERSION", 0L);
     }
 
     public int getId() {
         return id;
     }
 
+    /**
+     * @return the row version, bumped by every update
+     */
+    public long getVersion() {
+        return version;
+    }
+
     public String getMantra() {
         return mantra;
     }
@@ -0,0 +1,244 @@
+package org.workspace7.vertx;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocking JDBC batch statements for the bulk endpoints, to be run off the event loop.
+ * <p>
+ * The async {@code SQLConnection.batchWithParams} only reports update counts, inserts need the generated keys
+ * so the batches are executed on the underlying {@link Connection} instead.
+ *
+ * @author kameshs
+ */
+public final class MantraBatch {
+
+    private MantraBatch() {
+    }
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Thrown when a bulk update names mantras that do not exist, the whole batch is rolled back.
+     */
+    public static class MantrasNotFoundException extends SQLException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Integer> ids;
+
+        public MantrasNotFoundException(List<Integer> ids) {
+            super("Mantras not found: " + ids);
+            this.ids = ids;
+        }
+
+        public List<Integer> getIds() {
+            return ids;
+        }
+    }
+
+    /**
+     * Runs the work as a single transaction, rolling back if it throws.
+     */
+    public static <T> T inTransaction(Connection connection, Work<T> work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            T result = work.apply(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    public static List<Mantra> insertAll(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        List<Mantra> inserted = new ArrayList<>(mantras.size());
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO MANTRAS(mantra) VALUES(?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int from = 0; from < mantras.size(); from += batchSize) {
+                List<Mantra> chunk = mantras.subList(from, Math.min(from + batchSize, mantras.size()));
+                for (Mantra mantra : chunk) {
+                    statement.setString(1, mantra.getMantra());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    int row = 0;
+                    while (keys.next() && row < chunk.size()) {
+                        inserted.add(new Mantra(keys.getInt(1), chunk.get(row++).getMantra()));
+                    }
+                    if (row != chunk.size()) {
+                        throw new SQLException("Expected " + chunk.size() + " generated keys but got " + row);
+                    }
+                }
+            }
+        }
+        return inserted;
+    }
+
+    public static List<Mantra> updateAll(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        int[] updated = updateCounts(connection, mantras, batchSize);
+        List<Integer> missing = new ArrayList<>();
+        for (int row = 0; row < updated.length; row++) {
+            if (updated[row] == 0) {
+                missing.add(mantras.get(row).getId());
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new MantrasNotFoundException(missing);
+        }
+        return withVersions(connection, mantras, batchSize);
+    }
+
+    /**
+     * @return the mantras carrying the row version their update produced, read on the given connection so that
+     * within the updating transaction it is the version this transaction wrote
+     */
+    public static List<Mantra> withVersions(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        Map<Integer, Long> versions = versions(connection, mantras, batchSize);
+        //a mantra updated more than once in the batch got one version per update, the last one is in the table
+        Mantra[] versioned = new Mantra[mantras.size()];
+        for (int row = mantras.size() - 1; row >= 0; row--) {
+            Mantra mantra = mantras.get(row);
+            Long version = versions.get(mantra.getId());
+            if (version == null) {
+                versioned[row] = mantra;
+            } else {
+                versioned[row] = new Mantra(mantra.getId(), mantra.getMantra(), version);
+                versions.put(mantra.getId(), version - 1);
+            }
+        }
+        return Arrays.asList(versioned);
+    }
+
+    /**
+     * Updates the mantras, bumping the version of each row.
+     *
+     * @return the number of rows updated for each mantra, in order
+     */
+    public static int[] updateCounts(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        int[] counts = new int[mantras.size()];
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE MANTRAS set MANTRA = ?, VERSION = VERSION + 1 where ID=?")) {
+            for (int from = 0; from < mantras.size(); from += batchSize) {
+                List<Mantra> chunk = mantras.subList(from, Math.min(from + batchSize, mantras.size()));
+                for (Mantra mantra : chunk) {
+                    statement.setString(1, mantra.getMantra());
+                    statement.setInt(2, mantra.getId());
+                    statement.addBatch();
+                }
+                int[] updated = statement.executeBatch();
+                System.arraycopy(updated, 0, counts, from, updated.length);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Stores the mantras under their own ids and versions, leaving alone the rows that have a newer version.
+     *
+     * @return the mantras stored
+     */
+    public static List<Mantra> putAll(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        Map<Integer, Long> current = versions(connection, mantras, batchSize);
+        List<Mantra> updates = new ArrayList<>();
+        List<Mantra> inserts = new ArrayList<>();
+        for (Mantra mantra : mantras) {
+            Long version = current.get(mantra.getId());
+            if (version == null) {
+                inserts.add(mantra);
+                current.put(mantra.getId(), mantra.getVersion());
+            } else if (version <= mantra.getVersion()) {
+                updates.add(mantra);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO MANTRAS(id, mantra, version) VALUES(?, ?, ?)")) {
+            for (int from = 0; from < inserts.size(); from += batchSize) {
+                for (Mantra mantra : inserts.subList(from, Math.min(from + batchSize, inserts.size()))) {
+                    statement.setInt(1, mantra.getId());
+                    statement.setString(2, mantra.getMantra());
+                    statement.setLong(3, mantra.getVersion());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE MANTRAS set MANTRA = ?, VERSION = ? where ID = ?")) {
+            for (int from = 0; from < updates.size(); from += batchSize) {
+                for (Mantra mantra : updates.subList(from, Math.min(from + batchSize, updates.size()))) {
+                    statement.setString(1, mantra.getMantra());
+                    statement.setLong(2, mantra.getVersion());
+                    statement.setInt(3, mantra.getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        List<Mantra> stored = new ArrayList<>(inserts);
+        stored.addAll(updates);
+        return stored;
+    }
+
+    /**
+     * @return the version of each of the mantras that has a row, by id
+     */
+    private static Map<Integer, Long> versions(Connection connection, List<Mantra> mantras, int batchSize)
+            throws SQLException {
+        Map<Integer, Long> versions = new HashMap<>(mantras.size() * 2);
+        for (int from = 0; from < mantras.size(); from += batchSize) {
+            List<Mantra> chunk = mantras.subList(from, Math.min(from + batchSize, mantras.size()));
+            StringBuilder sql = new StringBuilder("SELECT id, version FROM MANTRAS WHERE id IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql.append(')').toString())) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setInt(i + 1, chunk.get(i).getId());
+                }
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        versions.put(rows.getInt(1), rows.getLong(2));
+                    }
+                }
+            }
+        }
+        return versions;
+    }
+
+    public static int deleteAll(Connection connection, List<Integer> ids, int batchSize) throws SQLException {
+        int deleted = 0;
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM MANTRAS WHERE id=?")) {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                for (Integer id : ids.subList(from, Math.min(from + batchSize, ids.size()))) {
+                    statement.setInt(1, id);
+                    statement.addBatch();
+                }
+                for (int count : statement.executeBatch()) {
+                    deleted += Math.max(count, 0);
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,652 @@
+package org.workspace7.vertx;
+
+import io.opentracing.Span;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.workspace7.vertx.changes.ChangeFeed;
+import org.workspace7.vertx.codec.MantraCodec;
+import org.workspace7.vertx.codec.MantraListCodec;
+import org.workspace7.vertx.pool.ConnectionPool;
+import org.workspace7.vertx.search.MantraSearchIndex;
+import org.workspace7.vertx.shard.ShardRing;
+import org.workspace7.vertx.shard.ShardRouter;
+import org.workspace7.vertx.store.MantraStore;
+import org.workspace7.vertx.tracing.Tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the mantras, kept in the {@link MantraStore} of {@code store.engine}, every read and write reaches them over
+ * the event bus at {@link #ADDRESS} with the operation in the {@link #ACTION} header.
+ * <p>
+ * Mantras travel with the {@link MantraCodec} and lists of them with the {@link MantraListCodec}. Failures are
+ * replied with the HTTP like codes 404 for unknown mantras, 503 when the store could not take the request in
+ * time and 500 for storage errors. The tracing context
+ * injected into the message headers by the caller is the parent of the database spans.
+ * <p>
+ * Every write that succeeds is also applied to the node's {@link MantraSearchIndex}, which is read from the table
+ * once at startup and answers {@link #SEARCH} without touching the store, and unless {@code changes.enabled} is
+ * false published to the {@link ChangeFeed}s of every node. Clustered nodes sharing one store also apply the changes
+ * the other nodes publish to their index, which are then published even with {@code changes.enabled} false.
+ * <p>
+ * With {@code shard.enabled} every node's repository is a shard holding the mantras its {@link ShardRouter} says it
+ * owns, taking requests from the whole cluster at its shard address too. Inserts then come with the id the cluster
+ * allocated, and whenever the ring changes the shard hands the mantras it no longer owns over to their owners, as
+ * it does with all of them when it is stopped. Every node needs a store of its own then, a log file or a database,
+ * a table shared by the nodes would lose the mantras the hand overs delete.
+ *
+ * @author kameshs
+ */
+public class MantraRepository extends AbstractVerticle {
+
+    public static final String ADDRESS = "mantras.repository";
+    public static final String ACTION = "action";
+    /**
+     * Optional header, the wall clock time in milliseconds after which the sender no longer waits for the reply.
+     * Requests received past it are failed with 503 without reaching the store.
+     */
+    public static final String DEADLINE = "deadline";
+
+    /**
+     * Body: the {@link Integer} id, reply: the {@link Mantra}
+     */
+    public static final String SELECT = "select";
+    /**
+     * Body: a {@link JsonObject} with {@code after} and {@code limit}, reply: the page as a list of mantras
+     */
+    public static final String PAGE = "page";
+    /**
+     * Body: the {@link Mantra}, reply: the {@link Mantra} with its generated id
+     */
+    public static final String INSERT = "insert";
+    /**
+     * Body: the {@link Mantra}, reply: the {@link Mantra}
+     */
+    public static final String UPDATE = "update";
+    /**
+     * Body: the {@link Integer} id, reply: nothing
+     */
+    public static final String DELETE = "delete";
+    /**
+     * Body: a list of mantras, reply: the mantras with their generated ids
+     */
+    public static final String INSERT_ALL = "insert-all";
+    /**
+     * Body: a list of mantras, reply: the mantras
+     */
+    public static final String UPDATE_ALL = "update-all";
+    /**
+     * Body: a {@link JsonArray} of ids, reply: the {@link Integer} number of deleted mantras
+     */
+    public static final String DELETE_ALL = "delete-all";
+    /**
+     * Body: nothing, reply: a {@link String} that changes whenever any mantra is added, updated or deleted
+     */
+    public static final String FINGERPRINT = "fingerprint";
+    /**
+     * Body: nothing, reply: the statistics of the store as a {@link JsonObject}, those of the connection pool for
+     * the {@code jdbc} engine
+     */
+    public static final String POOL = "pool";
+    /**
+     * Body: a {@link JsonObject} with {@code q}, {@code limit} and {@code prefix}, reply: the best matches as a list
+     * of mantras, best first
+     */
+    public static final String SEARCH = "search";
+    /**
+     * Body: a list of mantras with their ids and versions, stored as they are unless the shard has newer versions,
+     * reply: the {@link Integer} number stored. For the mantras a shard hands over to their new owner, which are not
+     * changes.
+     */
+    public static final String PUT_ALL = "put-all";
+
+    private static final Logger _logger = LoggerFactory.getLogger(MantraRepository.class);
+    private MantraStore store;
+    private Tracing tracing;
+    private MantraSearchIndex searchIndex;
+    //whether the node's index has to hear the writes of the other nodes, which share the store
+    private boolean followsOtherNodes;
+    private final String writer = UUID.randomUUID().toString();
+    private long writes;
+    private ShardRouter shards;
+    //the ring being handed over for, when this instance runs the node's membership
+    private ShardRing handingOver;
+    private boolean membership;
+    private long rebalanceTimer = -1;
+
+    @Override
+    public void start(Future<Void> startFuture) {
+
+        JsonObject appConfig = config();
+
+        MantraCodec.register(vertx);
+        tracing = Tracing.shared(vertx, appConfig);
+        searchIndex = MantraSearchIndex.shared(vertx);
+        store = MantraStore.create(vertx, appConfig);
+        if (appConfig.getBoolean("shard.enabled", false)) {
+            shards = ShardRouter.shared(vertx, appConfig);
+        }
+        //a shard's index only covers its own store, which only it writes to
+        followsOtherNodes = vertx.isClustered() && shards == null;
+        vertx.sharedData().getLocalMap("mantras.writers").put(writer, true);
+        if (followsOtherNodes && vertx.sharedData().getLocalMap("mantras")
+                .putIfAbsent("index.follower", writer) == null) {
+            //before the index is read, so that no write made meanwhile is missed
+            vertx.eventBus().consumer(ChangeFeed.ADDRESS, this::followWrite);
+        }
+
+        //every instance runs the schema step but only one at a time, so seeding happens once
+        vertx.sharedData().getLock("mantras.schema", lock -> {
+            if (lock.failed()) {
+                _logger.error("Error acquiring schema lock ", lock.cause());
+                startFuture.fail(lock.cause());
+                return;
+            }
+
+            Future<Void> schemaFuture = Future.future();
+            schemaFuture.setHandler(schema -> {
+                lock.result().release();
+                if (schema.failed()) {
+                    startFuture.fail(schema.cause());
+                } else {
+                    //repositories serve their own node unless told to take requests from the whole cluster
+                    MessageConsumer<Object> consumer = appConfig.getBoolean("repository.local", true)
+                            ? vertx.eventBus().localConsumer(ADDRESS, this::onMessage)
+                            : vertx.eventBus().consumer(ADDRESS, this::onMessage);
+                    consumer.completionHandler(shards == null ? startFuture.completer() : registered -> {
+                        if (registered.failed()) {
+                            startFuture.fail(registered.cause());
+                        } else {
+                            joinShards(startFuture);
+                        }
+                    });
+                }
+            });
+
+            store.open(opened -> {
+                if (opened.failed()) {
+                    _logger.error("Error starting backend ", opened.cause());
+                    schemaFuture.fail(opened.cause());
+                } else {
+                    createChants(schemaFuture);
+                }
+            });
+        });
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) throws Exception {
+        vertx.sharedData().getLocalMap("mantras").remove("repository");
+        vertx.sharedData().getLocalMap("mantras").removeIfPresent("index.follower", writer);
+        vertx.sharedData().getLocalMap("mantras.writers").remove(writer);
+        if (!membership) {
+            store.close();
+            stopFuture.complete();
+            return;
+        }
+        //the mantras of a node leaving on purpose go to the remaining shards instead of going with it
+        vertx.cancelTimer(rebalanceTimer);
+        shards.leave();
+        handOver(shards.ring(), -1, handedOver -> {
+            if (handedOver.failed()) {
+                _logger.warn("Shard {} left without handing all its mantras over: {}", shards.node(),
+                        handedOver.cause().getMessage());
+            }
+            store.close();
+            stopFuture.complete();
+        });
+    }
+
+    /**
+     * Takes requests from the whole cluster at the node's shard address and, unless another instance of the node
+     * already does, runs the node's part in the membership. That instance lets the node be heard for one heartbeat
+     * before it completes, so that the node starts out knowing the others.
+     */
+    private void joinShards(Future<Void> startFuture) {
+        vertx.eventBus().consumer(ShardRouter.address(shards.node()), this::onMessage).completionHandler(shard -> {
+            if (shard.failed()) {
+                startFuture.fail(shard.cause());
+                return;
+            }
+            membership = shards.join(ring -> handOver(ring, -1, null));
+            if (!membership) {
+                startFuture.complete();
+                return;
+            }
+            long interval = config().getLong("shard.rebalance.interval.ms", 60000L);
+            if (interval > 0) {
+                //catches the mantras handed over under a ring that was not the latest everywhere
+                rebalanceTimer = vertx.setPeriodic(interval, timerId -> handOver(shards.ring(), -1, null));
+            }
+            vertx.setTimer(config().getLong("shard.heartbeat.ms", 1000L), timerId -> startFuture.complete());
+        });
+    }
+
+    private void createChants(Future<Void> future) {
+        store.page(-1, 1, first -> {
+            if (first.failed()) {
+                _logger.error("Error before creating chants ", first.cause());
+                future.fail(first.cause());
+            } else if (first.result().isEmpty()) {
+                seed(seeded -> {
+                    if (seeded.failed()) {
+                        _logger.error("Error creating chants ", seeded.cause());
+                        future.fail(seeded.cause());
+                    } else {
+                        loadSearchIndex(-1, future.completer());
+                    }
+                });
+            } else {
+                loadSearchIndex(-1, future.completer());
+            }
+        });
+    }
+
+    /**
+     * Inserts the chants every collection starts with, once per cluster when sharded: by the shard that claims
+     * their ids, from which the ring hands them over to their owners.
+     */
+    private void seed(Handler<AsyncResult<Void>> next) {
+        List<String> chants = Arrays.asList("Srimathe Ramanujaya Namaha!",
+                "Hare Rama Hare Rama Rama Rama Hare Hare!",
+                "Hare Krishna Hare Krishna Krishna Krishna Hare Hare!");
+        if (shards == null) {
+            store.insertAll(chants.stream().map(Mantra::new).collect(Collectors.toList()),
+                    seeded -> next.handle(seeded.map((Void) null)));
+            return;
+        }
+        shards.claimFirst(chants.size(), claimed -> {
+            if (claimed.failed() || !claimed.result()) {
+                next.handle(claimed.map((Void) null));
+                return;
+            }
+            List<Mantra> mantras = new ArrayList<>(chants.size());
+            for (int i = 0; i < chants.size(); i++) {
+                mantras.add(new Mantra(i + 1, chants.get(i)));
+            }
+            store.putAll(mantras, seeded -> next.handle(seeded.map((Void) null)));
+        });
+    }
+
+    /**
+     * Reads the store into the search index a page at a time, unless another instance on this node already did.
+     */
+    private void loadSearchIndex(int after, Handler<AsyncResult<Void>> next) {
+        if (searchIndex.loaded()) {
+            next.handle(Future.succeededFuture());
+            return;
+        }
+        int pageSize = config().getInteger("search.load.page.size", 1000);
+        store.page(after, pageSize, (mantras) -> {
+            if (mantras.failed()) {
+                _logger.error("Error loading the search index ", mantras.cause());
+                next.handle(Future.failedFuture(mantras.cause()));
+            } else if (mantras.result().size() < pageSize) {
+                searchIndex.putAll(mantras.result());
+                searchIndex.markLoaded();
+                _logger.info("Indexed {} mantras for search", searchIndex.size());
+                if (shards == null) {
+                    next.handle(Future.succeededFuture());
+                } else {
+                    List<Mantra> last = mantras.result();
+                    shards.reserve(last.isEmpty() ? after : last.get(last.size() - 1).getId(), next);
+                }
+            } else {
+                searchIndex.putAll(mantras.result());
+                loadSearchIndex(mantras.result().get(pageSize - 1).getId(), next);
+            }
+        });
+    }
+
+    private void onMessage(Message<Object> message) {
+
+        String action = message.headers().get(ACTION);
+
+        if (action == null) {
+            message.fail(400, "Missing " + ACTION + " header");
+            return;
+        }
+
+        String deadline = message.headers().get(DEADLINE);
+        if (deadline != null && Long.parseLong(deadline) < System.currentTimeMillis()) {
+            message.fail(503, "Request expired before it could be served");
+            return;
+        }
+
+        Span span = tracing.continueSpan(action, message.headers())
+                .withTag("service", "MantraRepository")
+                .start();
+
+        switch (action) {
+            case SELECT:
+                selectOne(message, span);
+                break;
+            case PAGE:
+                selectPage(message, span);
+                break;
+            case INSERT:
+                insertOne(message, span);
+                break;
+            case UPDATE:
+                updateOne(message, span);
+                break;
+            case DELETE:
+                deleteOne(message, span);
+                break;
+            case INSERT_ALL:
+                insertAll(message, span);
+                break;
+            case UPDATE_ALL:
+                updateAll(message, span);
+                break;
+            case DELETE_ALL:
+                deleteAll(message, span);
+                break;
+            case FINGERPRINT:
+                fingerprint(message, span);
+                break;
+            case POOL:
+                span.finish();
+                message.reply(store.stats());
+                break;
+            case SEARCH:
+                search(message, span);
+                break;
+            case PUT_ALL:
+                putAll(message, span);
+                break;
+            default:
+                span.finish();
+                message.fail(400, "Unknown action " + action);
+        }
+    }
+
+    private void selectOne(Message<Object> message, Span span) {
+        store.select((Integer) message.body(), replier(message, span, 404, message::reply));
+    }
+
+    private void selectPage(Message<Object> message, Span span) {
+        JsonObject query = (JsonObject) message.body();
+        store.page(query.getInteger("after", -1), query.getInteger("limit"), replier(message, span, 500,
+                (mantras) -> message.reply(mantras, new DeliveryOptions().setCodecName(MantraListCodec.NAME))));
+    }
+
+    private void search(Message<Object> message, Span span) {
+        JsonObject query = (JsonObject) message.body();
+        List<Mantra> mantras = searchIndex.search(query.getString("q"), query.getInteger("limit", 10),
+                query.getBoolean("prefix", true));
+        span.setTag("rows", mantras.size());
+        span.finish();
+        message.reply(mantras, new DeliveryOptions().setCodecName(MantraListCodec.NAME));
+    }
+
+    private void insertOne(Message<Object> message, Span span) {
+        Mantra mantra = (Mantra) message.body();
+        Handler<AsyncResult<Mantra>> replier = replier(message, span, 500, (inserted) -> {
+            searchIndex.put(inserted);
+            publish(change("insert", inserted));
+            message.reply(inserted);
+        });
+        //a shard is sent the mantra with the id the cluster allocated
+        if (shards == null) {
+            store.insert(mantra, replier);
+        } else {
+            store.putAll(Collections.singletonList(mantra), put -> replier.handle(put.map(mantra)));
+        }
+    }
+
+    private void updateOne(Message<Object> message, Span span) {
+        store.update((Mantra) message.body(), replier(message, span, 404, (updated) -> {
+            searchIndex.put(updated);
+            publish(change("update", updated));
+            message.reply(updated);
+        }));
+    }
+
+    private void deleteOne(Message<Object> message, Span span) {
+        Integer id = (Integer) message.body();
+        store.delete(id, replier(message, span, 500, (nothing) -> {
+            searchIndex.remove(id);
+            publish(deletion(id));
+            message.reply(null);
+        }));
+    }
+
+    private void fingerprint(Message<Object> message, Span span) {
+        store.fingerprint(replier(message, span, 500, message::reply));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void insertAll(Message<Object> message, Span span) {
+        List<Mantra> mantras = (List<Mantra>) message.body();
+        span.setTag("rows", mantras.size());
+        Handler<AsyncResult<List<Mantra>>> replier = replier(message, span, 500, (inserted) -> {
+            searchIndex.putAll(inserted);
+            publish(inserted.stream().map(mantra -> change("insert", mantra)).toArray(JsonObject[]::new));
+            message.reply(inserted, new DeliveryOptions().setCodecName(MantraListCodec.NAME));
+        });
+        if (shards == null) {
+            store.insertAll(mantras, replier);
+        } else {
+            store.putAll(mantras, put -> replier.handle(put.map(mantras)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putAll(Message<Object> message, Span span) {
+        List<Mantra> mantras = (List<Mantra>) message.body();
+        span.setTag("rows", mantras.size());
+        store.putAll(mantras, replier(message, span, 500, (stored) -> {
+            searchIndex.putAll(stored);
+            message.reply(stored.size());
+        }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void updateAll(Message<Object> message, Span span) {
+        List<Mantra> mantras = (List<Mantra>) message.body();
+        span.setTag("rows", mantras.size());
+        store.updateAll(mantras, replier(message, span, 500, (updated) -> {
+            searchIndex.putAll(updated);
+            publish(updated.stream().map(mantra -> change("update", mantra)).toArray(JsonObject[]::new));
+            message.reply(updated, new DeliveryOptions().setCodecName(MantraListCodec.NAME));
+        }));
+    }
+
+    private void deleteAll(Message<Object> message, Span span) {
+        @SuppressWarnings("unchecked")
+        List<Integer> ids = ((JsonArray) message.body()).getList();
+        span.setTag("rows", ids.size());
+        store.deleteAll(ids, replier(message, span, 500, (deleted) -> {
+            searchIndex.removeAll(ids);
+            publish(ids.stream().map(MantraRepository::deletion).toArray(JsonObject[]::new));
+            message.reply(deleted);
+        }));
+    }
+
+    /**
+     * Hands the mantras this shard does not own on the ring over to their owners, a page at a time, deleting them
+     * here once the owner has them. It stops, successfully, as soon as the ring is no longer the latest, the hand
+     * over of the latest one takes over from there. Writes reaching this shard for a mantra between the owner
+     * storing it and this shard deleting it are lost, they only come from nodes that do not know the ring yet.
+     *
+     * @param done told when this hand over stops, may be null
+     */
+    private void handOver(ShardRing ring, int after, Handler<AsyncResult<Void>> done) {
+        if (ring != shards.ring() || (after == -1 && ring == handingOver)) {
+            if (done != null) {
+                done.handle(Future.succeededFuture());
+            }
+            return;
+        }
+        handingOver = ring;
+        int pageSize = config().getInteger("shard.handover.page.size", 500);
+        Handler<AsyncResult<Void>> finish = result -> {
+            if (handingOver == ring) {
+                handingOver = null;
+            }
+            if (result.failed()) {
+                _logger.warn("Error handing mantras over from {} ", shards.node(), result.cause());
+            }
+            if (done != null) {
+                done.handle(result);
+            }
+        };
+        if (ring.nodes().isEmpty() || ring.nodes().equals(Collections.singleton(shards.node()))) {
+            //a ring of this node alone owns everything here, an empty one nothing can go to
+            finish.handle(Future.succeededFuture());
+            return;
+        }
+        store.page(after, pageSize, page -> {
+            if (page.failed()) {
+                finish.handle(Future.failedFuture(page.cause()));
+                return;
+            }
+            List<Mantra> mantras = page.result();
+            Map<String, List<Mantra>> leaving = new LinkedHashMap<>();
+            for (Mantra mantra : mantras) {
+                String owner = ring.owner(mantra.getId());
+                if (!owner.equals(shards.node())) {
+                    leaving.computeIfAbsent(owner, node -> new ArrayList<>()).add(mantra);
+                }
+            }
+            handOver(leaving, handed -> {
+                if (handed.failed()) {
+                    finish.handle(handed);
+                } else if (mantras.size() < pageSize) {
+                    finish.handle(Future.succeededFuture());
+                } else {
+                    handOver(ring, mantras.get(mantras.size() - 1).getId(), done);
+                }
+            });
+        });
+    }
+
+    /**
+     * Sends each owner its mantras and, once all of them have them, deletes them here.
+     */
+    private void handOver(Map<String, List<Mantra>> leaving, Handler<AsyncResult<Void>> next) {
+        if (leaving.isEmpty()) {
+            next.handle(Future.succeededFuture());
+            return;
+        }
+        DeliveryOptions options = new DeliveryOptions()
+                .addHeader(ACTION, PUT_ALL)
+                .setCodecName(MantraListCodec.NAME)
+                .setSendTimeout(config().getLong("repository.request.timeout.ms", 10000L));
+        int[] pending = {leaving.size()};
+        leaving.forEach((owner, mantras) -> vertx.eventBus().send(ShardRouter.address(owner), mantras, options,
+                reply -> {
+                    if (pending[0] <= 0) {
+                        return;
+                    }
+                    if (reply.failed()) {
+                        pending[0] = 0;
+                        next.handle(Future.failedFuture(reply.cause()));
+                    } else if (--pending[0] == 0) {
+                        List<Integer> ids = leaving.values().stream().flatMap(List::stream).map(Mantra::getId)
+                                .collect(Collectors.toList());
+                        store.deleteAll(ids, deleted -> {
+                            if (deleted.succeeded()) {
+                                searchIndex.removeAll(ids);
+                                shards.recordHandover(ids.size());
+                                _logger.info("Shard {} handed {} mantras over to {}", shards.node(), ids.size(),
+                                        leaving.keySet());
+                            }
+                            next.handle(deleted.map((Void) null));
+                        });
+                    }
+                }));
+    }
+
+    /**
+     * Applies to the node's search index a write another node made to the store they share. The node's own writes
+     * are already in it.
+     */
+    private void followWrite(Message<JsonObject> message) {
+        JsonObject write = message.body();
+        if (vertx.sharedData().getLocalMap("mantras.writers").get(write.getString("writer")) != null) {
+            return;
+        }
+        for (Object item : write.getJsonArray("changes")) {
+            JsonObject change = (JsonObject) item;
+            if ("delete".equals(change.getString("type"))) {
+                searchIndex.remove(change.getInteger("id"));
+            } else {
+                searchIndex.put(new Mantra(change.getInteger("id"), change.getString("mantra"),
+                        change.getLong("version", 0L)));
+            }
+        }
+    }
+
+    /**
+     * Publishes the changes of a write to every {@link ChangeFeed}, numbered so that the feeds of a node can tell
+     * whether they already have them, and to the search indexes of the other nodes sharing the store.
+     */
+    private void publish(JsonObject... changes) {
+        if (changes.length == 0 || !(followsOtherNodes || config().getBoolean("changes.enabled", true))) {
+            return;
+        }
+        vertx.eventBus().publish(ChangeFeed.ADDRESS, new JsonObject()
+                .put("writer", writer)
+                .put("write", ++writes)
+                .put("changes", new JsonArray(Arrays.asList(changes))));
+    }
+
+    private static JsonObject change(String type, Mantra mantra) {
+        return new JsonObject()
+                .put("type", type)
+                .put("id", mantra.getId())
+                .put("mantra", mantra.getMantra())
+                .put("version", mantra.getVersion());
+    }
+
+    private static JsonObject deletion(Integer id) {
+        return new JsonObject().put("type", "delete").put("id", id);
+    }
+
+    /**
+     * Finishes the span and replies with the result, or fails the message with the code of the failure.
+     *
+     * @param otherwise the code of failures that are neither about unknown mantras nor about the store being busy
+     */
+    private static <T> Handler<AsyncResult<T>> replier(Message<Object> message, Span span, int otherwise,
+                                                       Handler<T> replier) {
+        return (result) -> {
+            if (result.failed()) {
+                span.setTag("fault", String.valueOf(result.cause().getMessage()));
+            }
+            span.finish();
+            if (result.succeeded()) {
+                replier.handle(result.result());
+            } else {
+                message.fail(failureCode(result.cause(), otherwise), result.cause().getMessage());
+            }
+        };
+    }
+
+    private static int failureCode(Throwable cause, int otherwise) {
+        //the caller is better off told to come back later than kept waiting behind the store
+        if (cause instanceof MantraStore.UnavailableException
+                || cause instanceof ConnectionPool.AcquireTimeoutException) {
+            return 503;
+        }
+        return cause instanceof MantraBatch.MantrasNotFoundException ? 404 : otherwise;
+    }
+}
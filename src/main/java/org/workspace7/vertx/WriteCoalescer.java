@@ -0,0 +1,155 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Group commit for single mantra writes.
+ * <p>
+ * Inserts and updates arriving within {@code maxDelayMillis} of the first pending one, up to {@code maxBatch} of
+ * them, are written with one connection and committed as one transaction. Each caller still gets its own
+ * result. When the shared transaction fails the writes are retried one transaction each, so that only the
+ * offending write reports the error.
+ * <p>
+ * Instances are not thread safe and must be used from the owning verticle's event loop.
+ *
+ * @author kameshs
+ */
+public class WriteCoalescer {
+
+    private final Vertx vertx;
+    private final JDBCClient jdbcClient;
+    private final long maxDelayMillis;
+    private final int maxBatch;
+
+    private List<Write> pending = new ArrayList<>();
+    private long flushTimer = -1;
+
+    public WriteCoalescer(Vertx vertx, JDBCClient jdbcClient, long maxDelayMillis, int maxBatch) {
+        this.vertx = vertx;
+        this.jdbcClient = jdbcClient;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBatch = maxBatch;
+    }
+
+    public void insert(Mantra mantra, Handler<AsyncResult<Mantra>> resultHandler) {
+        enqueue(new Write(true, mantra, resultHandler));
+    }
+
+    public void update(Mantra mantra, Handler<AsyncResult<Mantra>> resultHandler) {
+        enqueue(new Write(false, mantra, resultHandler));
+    }
+
+    private void enqueue(Write write) {
+        pending.add(write);
+        if (pending.size() >= maxBatch) {
+            flush();
+        } else if (flushTimer == -1) {
+            flushTimer = vertx.setTimer(maxDelayMillis, timerId -> {
+                flushTimer = -1;
+                flush();
+            });
+        }
+    }
+
+    private void flush() {
+        if (flushTimer != -1) {
+            vertx.cancelTimer(flushTimer);
+            flushTimer = -1;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Write> batch = pending;
+        pending = new ArrayList<>();
+
+        jdbcClient.getConnection(ar -> {
+            if (ar.failed()) {
+                batch.forEach(write -> write.resultHandler.handle(Future.failedFuture(ar.cause())));
+                return;
+            }
+            SQLConnection sqlConnection = ar.result();
+            vertx.<List<AsyncResult<Mantra>>>executeBlocking(future -> {
+                Connection connection = sqlConnection.unwrap();
+                try {
+                    future.complete(MantraBatch.inTransaction(connection, c -> writeAll(c, batch)));
+                } catch (SQLException e) {
+                    future.complete(writeEach(connection, batch));
+                }
+            }, false, results -> {
+                sqlConnection.close();
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).resultHandler.handle(results.succeeded() ? results.result().get(i)
+                            : Future.failedFuture(results.cause()));
+                }
+            });
+        });
+    }
+
+    private static List<AsyncResult<Mantra>> writeAll(Connection connection, List<Write> batch)
+            throws SQLException {
+        List<Mantra> inserts = new ArrayList<>();
+        List<Mantra> updates = new ArrayList<>();
+        for (Write write : batch) {
+            (write.insert ? inserts : updates).add(write.mantra);
+        }
+
+        List<Mantra> inserted = inserts.isEmpty() ? Collections.emptyList()
+                : MantraBatch.insertAll(connection, inserts, inserts.size());
+        int[] updated = updates.isEmpty() ? new int[0]
+                : MantraBatch.updateCounts(connection, updates, updates.size());
+
+        List<Mantra> versioned = updates.isEmpty() ? Collections.emptyList()
+                : MantraBatch.withVersions(connection, updates, updates.size());
+
+        List<AsyncResult<Mantra>> results = new ArrayList<>(batch.size());
+        int insertRow = 0;
+        int updateRow = 0;
+        for (Write write : batch) {
+            if (write.insert) {
+                results.add(Future.succeededFuture(inserted.get(insertRow++)));
+            } else if (updated[updateRow] == 0) {
+                updateRow++;
+                results.add(Future.failedFuture("Mantra not found"));
+            } else {
+                results.add(Future.succeededFuture(versioned.get(updateRow++)));
+            }
+        }
+        return results;
+    }
+
+    private static List<AsyncResult<Mantra>> writeEach(Connection connection, List<Write> batch) {
+        List<AsyncResult<Mantra>> results = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            try {
+                results.add(MantraBatch.inTransaction(connection,
+                        c -> writeAll(c, Collections.singletonList(write)).get(0)));
+            } catch (SQLException e) {
+                results.add(Future.failedFuture(e));
+            }
+        }
+        return results;
+    }
+
+    private static final class Write {
+        private final boolean insert;
+        private final Mantra mantra;
+        private final Handler<AsyncResult<Mantra>> resultHandler;
+
+        private Write(boolean insert, Mantra mantra, Handler<AsyncResult<Mantra>> resultHandler) {
+            this.insert = insert;
+            this.mantra = mantra;
+            this.resultHandler = resultHandler;
+        }
+    }
+}
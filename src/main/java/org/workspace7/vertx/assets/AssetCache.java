@@ -0,0 +1,371 @@
+package org.workspace7.vertx.assets;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.impl.MimeMapping;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The webroot, read once at startup. Every file is served under its own name and under a name carrying a hash of its
+ * content, e.g. {@code index.3f2a9c1b7e.html}, which never changes and so can be cached for good.
+ * <p>
+ * A gzip variant is made of every file it makes smaller. Brotli variants are only served when the webroot ships them
+ * precompressed next to the file, e.g. {@code app.js.br}, there is no brotli encoder on the classpath. Variants smaller
+ * than {@code assets.sendfile.min.size} are held in memory, larger ones are spooled to a temporary directory and sent
+ * with {@code sendfile}.
+ * <p>
+ * Instances are immutable and shared by every verticle of a Vert.x instance, see {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class AssetCache implements Shareable {
+
+    public static final String GZIP = "gzip";
+    public static final String BROTLI = "br";
+
+    private static final Logger _logger = LoggerFactory.getLogger(AssetCache.class);
+
+    private static final Map<String, String> PRECOMPRESSED = new LinkedHashMap<>();
+
+    static {
+        PRECOMPRESSED.put(".br", BROTLI);
+        PRECOMPRESSED.put(".gz", GZIP);
+    }
+
+    private final Map<String, Asset> byPath;
+    private final Map<String, String> manifest;
+
+    private AssetCache(Map<String, Asset> byPath, Map<String, String> manifest) {
+        this.byPath = Collections.unmodifiableMap(byPath);
+        this.manifest = Collections.unmodifiableMap(manifest);
+    }
+
+    /**
+     * Loads the webroot at most once per Vert.x instance, later calls get the same cache.
+     */
+    public static void shared(Vertx vertx, JsonObject config, Handler<AsyncResult<AssetCache>> resultHandler) {
+        vertx.sharedData().getLock("mantras.assets", lock -> {
+            if (lock.failed()) {
+                resultHandler.handle(Future.failedFuture(lock.cause()));
+                return;
+            }
+
+            LocalMap<String, AssetCache> caches = vertx.sharedData().getLocalMap("mantras.assets");
+            AssetCache cache = caches.get("webroot");
+            if (cache != null) {
+                lock.result().release();
+                resultHandler.handle(Future.succeededFuture(cache));
+                return;
+            }
+
+            String webroot = config.getString("assets.webroot", "org/workspace7/vertx/webroot");
+            vertx.<AssetCache>executeBlocking(future -> future.complete(fromClasspath(webroot, config)), false,
+                    loaded -> {
+                        if (loaded.succeeded()) {
+                            caches.put("webroot", loaded.result());
+                            _logger.info("Loaded {} assets from {}", loaded.result().manifest.size(), webroot);
+                        }
+                        lock.result().release();
+                        resultHandler.handle(loaded);
+                    });
+        });
+    }
+
+    static AssetCache fromClasspath(String webroot, JsonObject config) {
+        URL url = AssetCache.class.getClassLoader().getResource(webroot);
+        if (url == null) {
+            throw new IllegalArgumentException("No webroot " + webroot + " on the classpath");
+        }
+        try {
+            URI uri = url.toURI();
+            if (!"jar".equals(uri.getScheme())) {
+                return load(Paths.get(uri), config);
+            }
+            try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                return load(jar.getPath("/" + webroot), config);
+            } catch (FileSystemAlreadyExistsException e) {
+                return load(Paths.get(uri), config);
+            }
+        } catch (URISyntaxException | IOException e) {
+            throw new IllegalStateException("Unable to read the webroot " + webroot, e);
+        }
+    }
+
+    /**
+     * Reads every file under {@code root}, blocking.
+     */
+    public static AssetCache load(Path root, JsonObject config) throws IOException {
+        int sendFileMinSize = config.getInteger("assets.sendfile.min.size", 64 * 1024);
+        Path spool = null;
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        Map<String, Path> byName = new LinkedHashMap<>();
+        for (Path file : files) {
+            byName.put(relative(root, file), file);
+        }
+        //a precompressed file is a variant of the file it is named after, if that is there
+        Map<String, Path> precompressed = new HashMap<>();
+        for (Map.Entry<String, Path> file : byName.entrySet()) {
+            for (String suffix : PRECOMPRESSED.keySet()) {
+                String name = file.getKey();
+                if (name.endsWith(suffix) && byName.containsKey(name.substring(0, name.length() - suffix.length()))) {
+                    precompressed.put(name, file.getValue());
+                }
+            }
+        }
+
+        Map<String, Asset> byPath = new HashMap<>();
+        Map<String, String> manifest = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> entry : byName.entrySet()) {
+            String name = entry.getKey();
+            Path file = entry.getValue();
+            if (precompressed.containsKey(name)) {
+                continue;
+            }
+            byte[] content = Files.readAllBytes(file);
+            String hash = hash(content);
+
+            Map<String, Variant> variants = new LinkedHashMap<>();
+            for (Map.Entry<String, String> suffix : PRECOMPRESSED.entrySet()) {
+                Path shipped = precompressed.get(name + suffix.getKey());
+                if (shipped != null) {
+                    spool = variant(variants, suffix.getValue(), hash, Files.readAllBytes(shipped), sendFileMinSize,
+                            spool);
+                }
+            }
+            if (!variants.containsKey(GZIP)) {
+                byte[] gzipped = gzip(content);
+                //not worth a variant when it saves less than a tenth, e.g. images
+                if (gzipped.length < content.length - content.length / 10) {
+                    spool = variant(variants, GZIP, hash, gzipped, sendFileMinSize, spool);
+                }
+            }
+            spool = variant(variants, null, hash, content, sendFileMinSize, spool);
+
+            String hashed = hashedName(name, hash);
+            Asset asset = new Asset(contentType(name), hash, variants, false);
+            byPath.put(name, asset);
+            byPath.put(hashed, asset.immutable());
+            manifest.put(name, hashed);
+        }
+        return new AssetCache(byPath, manifest);
+    }
+
+    /**
+     * @param path the path below the webroot, without a leading {@code /}
+     * @return the asset or null
+     */
+    public Asset get(String path) {
+        return byPath.get(path);
+    }
+
+    /**
+     * @return every plain name mapped to its content hashed name
+     */
+    public Map<String, String> manifest() {
+        return manifest;
+    }
+
+    private static Path variant(Map<String, Variant> variants, String encoding, String hash, byte[] bytes,
+                                int sendFileMinSize, Path spool) throws IOException {
+        if (bytes.length < sendFileMinSize) {
+            variants.put(encoding, new Variant(encoding, Buffer.buffer(bytes), null, bytes.length));
+            return spool;
+        }
+        if (spool == null) {
+            spool = Files.createTempDirectory("mantras-assets");
+            spool.toFile().deleteOnExit();
+        }
+        Path file = spool.resolve(hash + (encoding == null ? "" : "." + encoding));
+        Files.write(file, bytes);
+        file.toFile().deleteOnExit();
+        variants.put(encoding, new Variant(encoding, null, file.toString(), bytes.length));
+        return spool;
+    }
+
+    private static String relative(Path root, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : root.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part.toString());
+        }
+        return name.toString();
+    }
+
+    static String hashedName(String name, String hash) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            return name + "." + hash;
+        }
+        return name.substring(0, dot) + "." + hash + name.substring(dot);
+    }
+
+    private static String contentType(String name) {
+        String type = MimeMapping.getMimeTypeForFilename(name);
+        if (type == null) {
+            return "application/octet-stream";
+        }
+        if (type.startsWith("text/") || type.endsWith("javascript") || type.endsWith("json")
+                || type.endsWith("xml")) {
+            return type + ";charset=UTF-8";
+        }
+        return type;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 5; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * One file of the webroot with its encoded variants.
+     */
+    public static class Asset {
+
+        private final String contentType;
+        private final String hash;
+        private final Map<String, Variant> variants;
+        private final boolean immutable;
+
+        private Asset(String contentType, String hash, Map<String, Variant> variants, boolean immutable) {
+            this.contentType = contentType;
+            this.hash = hash;
+            this.variants = variants;
+            this.immutable = immutable;
+        }
+
+        private Asset immutable() {
+            return new Asset(contentType, hash, variants, true);
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        /**
+         * @return true when requested by its content hashed name
+         */
+        public boolean isImmutable() {
+            return immutable;
+        }
+
+        /**
+         * @return whether there is more than the identity variant, i.e. the response varies by accept-encoding
+         */
+        public boolean encoded() {
+            return variants.size() > 1;
+        }
+
+        /**
+         * @param encoding {@link #BROTLI}, {@link #GZIP} or null for the identity variant
+         * @return the variant or null when there is none in that encoding
+         */
+        public Variant variant(String encoding) {
+            return variants.get(encoding);
+        }
+
+        /**
+         * @return the strong ETag of the variant, distinct per encoding
+         */
+        public String etag(Variant variant) {
+            return "\"" + hash + (variant.encoding == null ? "" : "-" + variant.encoding) + "\"";
+        }
+    }
+
+    /**
+     * The bytes of an asset in one encoding, either in memory or in a spooled file.
+     */
+    public static class Variant {
+
+        private final String encoding;
+        private final Buffer content;
+        private final String file;
+        private final long length;
+
+        private Variant(String encoding, Buffer content, String file, long length) {
+            this.encoding = encoding;
+            this.content = content;
+            this.file = file;
+            this.length = length;
+        }
+
+        public String encoding() {
+            return encoding;
+        }
+
+        /**
+         * @return the bytes or null when the variant is to be sent from {@link #file()}
+         */
+        public Buffer content() {
+            return content;
+        }
+
+        public String file() {
+            return file;
+        }
+
+        public long length() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.workspace7.vertx.assets;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Serves the {@link AssetCache} below a prefix. Content hashed names are cacheable for {@code maxAgeSeconds} and
+ * marked immutable, plain names must be revalidated with their ETag on every use. Paths that are not in the cache are
+ * passed on to the next handler.
+ *
+ * @author kameshs
+ */
+public class AssetHandler implements Handler<RoutingContext> {
+
+    private final AssetCache cache;
+    private final String prefix;
+    private final String immutable;
+
+    /**
+     * @param prefix the route path the handler is mounted on, e.g. {@code /assets/}
+     */
+    public AssetHandler(AssetCache cache, String prefix, long maxAgeSeconds) {
+        this.cache = cache;
+        this.prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        this.immutable = "public, max-age=" + maxAgeSeconds + ", immutable";
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        String path = routingContext.normalisedPath();
+        if (!path.startsWith(prefix)) {
+            routingContext.next();
+            return;
+        }
+        path = path.substring(prefix.length());
+        if (path.isEmpty() || path.endsWith("/")) {
+            path = path + "index.html";
+        }
+
+        AssetCache.Asset asset = cache.get(path);
+        if (asset == null) {
+            routingContext.next();
+            return;
+        }
+
+        AssetCache.Variant variant = null;
+        String accepted = request.getHeader("accept-encoding");
+        if (accepted != null && asset.encoded()) {
+            if (accepts(accepted, AssetCache.BROTLI)) {
+                variant = asset.variant(AssetCache.BROTLI);
+            }
+            if (variant == null && accepts(accepted, AssetCache.GZIP)) {
+                variant = asset.variant(AssetCache.GZIP);
+            }
+        }
+        if (variant == null) {
+            variant = asset.variant(null);
+        }
+
+        String etag = asset.etag(variant);
+        HttpServerResponse response = routingContext.response()
+                .putHeader("etag", etag)
+                .putHeader("cache-control", asset.isImmutable() ? immutable : "no-cache");
+        if (asset.encoded()) {
+            response.putHeader("vary", "accept-encoding");
+        }
+
+        if (notModified(request.getHeader("if-none-match"), etag)) {
+            response.setStatusCode(304).end();
+            return;
+        }
+
+        response.putHeader("content-type", asset.contentType());
+        if (variant.encoding() != null) {
+            response.putHeader("content-encoding", variant.encoding());
+        }
+        if (request.method() == HttpMethod.HEAD) {
+            response.putHeader("content-length", Long.toString(variant.length())).end();
+        } else if (variant.content() != null) {
+            response.end(variant.content());
+        } else {
+            response.sendFile(variant.file());
+        }
+    }
+
+    /**
+     * @return whether the accept-encoding header lists the coding without a zero quality
+     */
+    static boolean accepts(String accepted, String coding) {
+        for (String candidate : accepted.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(coding)) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
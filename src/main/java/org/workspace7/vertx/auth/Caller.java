@@ -0,0 +1,46 @@
+package org.workspace7.vertx.auth;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Who made a request, with the roles of {@code auth.roles} they were found to hold.
+ *
+ * @author kameshs
+ */
+public final class Caller {
+
+    private final String username;
+    private final Set<String> roles;
+
+    public Caller(String username, Set<String> roles) {
+        this.username = username;
+        this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public Set<String> roles() {
+        return roles;
+    }
+
+    /**
+     * @return whether the caller holds any of the roles
+     */
+    public boolean holdsAny(Set<String> wanted) {
+        for (String role : roles) {
+            if (wanted.contains(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return username + roles;
+    }
+}
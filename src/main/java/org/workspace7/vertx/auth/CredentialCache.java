@@ -0,0 +1,78 @@
+package org.workspace7.vertx.auth;
+
+import io.vertx.core.json.JsonObject;
+import org.workspace7.vertx.cache.LruCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Remembers the credentials the realm verified, and the roles it found, for {@code auth.cache.ttl.ms}, so that a
+ * caller sending the same Basic credentials again is let in without a realm lookup and password check. At most
+ * {@code auth.cache.max.size} users are remembered, the least recently seen go first.
+ * <p>
+ * Passwords are never kept, only a SHA-256 of them salted with a random salt of this cache. A password changed or a
+ * role taken away in the realm takes effect once the entry expires.
+ * <p>
+ * Thread safe.
+ *
+ * @author kameshs
+ */
+public class CredentialCache {
+
+    private final LruCache<String, Verified> verified;
+    private final byte[] salt = new byte[16];
+
+    public CredentialCache(int maxSize, long ttlMillis) {
+        this.verified = new LruCache<>(maxSize, ttlMillis);
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * @return the caller when the password is the one verified for the user, {@code null} otherwise
+     */
+    public Caller get(String username, String password) {
+        Verified entry;
+        synchronized (this) {
+            entry = verified.get(username);
+        }
+        return entry != null && MessageDigest.isEqual(entry.digest, digest(password)) ? entry.caller : null;
+    }
+
+    public void put(Caller caller, String password) {
+        Verified entry = new Verified(caller, digest(password));
+        synchronized (this) {
+            verified.put(caller.username(), entry);
+        }
+    }
+
+    public synchronized void purgeExpired() {
+        verified.purgeExpired();
+    }
+
+    public synchronized JsonObject stats() {
+        return verified.stats();
+    }
+
+    private byte[] digest(String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(salt);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Verified {
+        private final Caller caller;
+        private final byte[] digest;
+
+        private Verified(Caller caller, byte[] digest) {
+            this.caller = caller;
+            this.digest = digest;
+        }
+    }
+}
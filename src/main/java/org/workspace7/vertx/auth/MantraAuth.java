@@ -0,0 +1,306 @@
+package org.workspace7.vertx.auth;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.auth.AuthProvider;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.shiro.ShiroAuth;
+import io.vertx.ext.web.RoutingContext;
+import org.apache.shiro.ShiroException;
+import org.apache.shiro.realm.text.IniRealm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards the admin and write routes when {@code auth.enabled}: the caller has to hold one of {@code auth.roles} in
+ * the Shiro realm of {@code auth.ini}. There is no default realm, {@code auth.ini} has to name a Shiro ini file of
+ * the users and their roles, e.g. {@code file:/etc/mantras/shiro.ini}.
+ * <p>
+ * Callers authenticate with Basic credentials, which the realm checks once and the {@link CredentialCache} then
+ * remembers, or with a session token from {@code POST /api/auth/token} that the {@link TokenSigner} verifies without
+ * the realm at all. Unless {@code auth.token.secret} is set, and set the same on every node, tokens are signed with a
+ * secret drawn at random as the node starts and only work on that node until it restarts.
+ * <p>
+ * Thread safe: the verticle instances of a node share one through {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class MantraAuth implements Shareable {
+
+    public static final String CALLER = "mantras.caller";
+
+    private static final Logger _logger = LoggerFactory.getLogger(MantraAuth.class);
+    private static final String BASIC = "Basic ";
+    private static final String BEARER = "Bearer ";
+
+    private final AuthProvider provider;
+    private final Set<String> roles;
+    private final CredentialCache cache;
+    private final TokenSigner signer;
+    private final long tokenTtlMillis;
+    private final String challenge;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder realmCalls = new LongAdder();
+    private final LongAdder tokensVerified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param cache  {@code null} to ask the realm every time
+     * @param signer {@code null} to neither issue nor accept tokens
+     */
+    public MantraAuth(AuthProvider provider, Set<String> roles, CredentialCache cache, TokenSigner signer,
+                      long tokenTtlMillis, String realm) {
+        this.provider = provider;
+        this.roles = new LinkedHashSet<>(roles);
+        this.cache = cache;
+        this.signer = signer;
+        this.tokenTtlMillis = tokenTtlMillis;
+        this.challenge = "Basic realm=\"" + realm + "\"";
+    }
+
+    /**
+     * @return the guard of this Vert.x instance
+     * @throws IllegalArgumentException when {@code auth.ini} is not set, or the realm or the token secret is unusable
+     */
+    public static MantraAuth shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, MantraAuth> auths = vertx.sharedData().getLocalMap("mantras.auth");
+        MantraAuth auth = auths.get("auth");
+        if (auth == null) {
+            MantraAuth created = create(vertx, config);
+            auth = auths.putIfAbsent("auth", created);
+            if (auth == null) {
+                auth = created;
+            }
+        }
+        return auth;
+    }
+
+    private static MantraAuth create(Vertx vertx, JsonObject config) {
+        String ini = config.getString("auth.ini");
+        if (ini == null || ini.trim().isEmpty()) {
+            throw new IllegalArgumentException("auth.enabled needs auth.ini, the Shiro ini file of the users and their"
+                    + " roles, e.g. file:/etc/mantras/shiro.ini");
+        }
+        IniRealm realm;
+        try {
+            realm = new IniRealm(ini);
+        } catch (ShiroException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unable to load the users and roles of auth.ini " + ini, e);
+        }
+        Set<String> roles = new LinkedHashSet<>();
+        config.getJsonArray("auth.roles", new JsonArray().add("super-user").add("administrator"))
+                .forEach(role -> roles.add((String) role));
+
+        int cacheSize = config.getInteger("auth.cache.max.size", 1000);
+        CredentialCache cache = cacheSize > 0
+                ? new CredentialCache(cacheSize, config.getLong("auth.cache.ttl.ms", 60000L)) : null;
+
+        TokenSigner signer = null;
+        if (config.getBoolean("auth.token.enabled", true)) {
+            String secret = config.getString("auth.token.secret");
+            byte[] key;
+            if (secret == null) {
+                _logger.warn("No auth.token.secret, tokens will only be accepted by this node until it restarts");
+                key = new byte[32];
+                new SecureRandom().nextBytes(key);
+            } else {
+                key = secret.getBytes(StandardCharsets.UTF_8);
+            }
+            signer = new TokenSigner(key);
+        }
+        return new MantraAuth(ShiroAuth.create(vertx, realm), roles, cache, signer,
+                config.getLong("auth.token.ttl.seconds", 900L) * 1000, config.getString("auth.realm", "mantras"));
+    }
+
+    public boolean issuesTokens() {
+        return signer != null;
+    }
+
+    /**
+     * Lets the request through to the next handler when the caller holds one of the roles, with the {@link Caller}
+     * put in the context as {@link #CALLER}. Turns it away with a {@code 401} when the caller is not known and a
+     * {@code 403} when they lack the roles.
+     * <p>
+     * Handlers that read the body have to come after the {@code BodyHandler}, which has to come first.
+     */
+    public void authenticate(RoutingContext routingContext) {
+        authenticate(routingContext.request().getHeader("authorization"), caller -> {
+            if (caller.failed()) {
+                reject(routingContext, 401, caller.cause().getMessage());
+            } else if (!caller.result().holdsAny(roles)) {
+                reject(routingContext, 403, "Not allowed for " + caller.result().username());
+            } else {
+                routingContext.put(CALLER, caller.result());
+                routingContext.next();
+            }
+        });
+    }
+
+    /**
+     * Answers Basic credentials with a session token good for {@code auth.token.ttl.seconds}. A token cannot get
+     * another one, so that a stolen token does not live on.
+     */
+    public void issueToken(RoutingContext routingContext) {
+        String authorization = routingContext.request().getHeader("authorization");
+        if (signer == null || !startsWith(authorization, BASIC)) {
+            reject(routingContext, 401, "Basic credentials required");
+            return;
+        }
+        authenticate(authorization, caller -> {
+            if (caller.failed()) {
+                reject(routingContext, 401, caller.cause().getMessage());
+            } else if (!caller.result().holdsAny(roles)) {
+                reject(routingContext, 403, "Not allowed for " + caller.result().username());
+            } else {
+                long expiresAt = System.currentTimeMillis() + tokenTtlMillis;
+                routingContext.response()
+                        .putHeader("content-type", "application/json;charset=utf-8")
+                        .putHeader("cache-control", "no-store")
+                        .end(new JsonObject()
+                                .put("token", signer.sign(caller.result(), expiresAt))
+                                .put("expiresAt", expiresAt)
+                                .encode());
+            }
+        });
+    }
+
+    /**
+     * Finds out who sent the {@code Authorization} header, failing with an {@link AuthenticationException} when
+     * nobody known did.
+     */
+    public void authenticate(String authorization, Handler<AsyncResult<Caller>> handler) {
+        if (signer != null && startsWith(authorization, BEARER)) {
+            Caller caller = signer.verify(authorization.substring(BEARER.length()).trim(), System.currentTimeMillis());
+            if (caller == null) {
+                handler.handle(Future.failedFuture(new AuthenticationException("Invalid or expired token")));
+            } else {
+                tokensVerified.increment();
+                handler.handle(Future.succeededFuture(caller));
+            }
+            return;
+        }
+        if (!startsWith(authorization, BASIC)) {
+            handler.handle(Future.failedFuture(new AuthenticationException("Credentials required")));
+            return;
+        }
+
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(authorization.substring(BASIC.length()).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            handler.handle(Future.failedFuture(new AuthenticationException("Malformed Basic credentials")));
+            return;
+        }
+        int colon = credentials.indexOf(':');
+        if (colon < 0) {
+            handler.handle(Future.failedFuture(new AuthenticationException("Malformed Basic credentials")));
+            return;
+        }
+        String username = credentials.substring(0, colon);
+        String password = credentials.substring(colon + 1);
+
+        Caller cached = cache == null ? null : cache.get(username, password);
+        if (cached != null) {
+            cacheHits.increment();
+            handler.handle(Future.succeededFuture(cached));
+            return;
+        }
+        realmCalls.increment();
+        provider.authenticate(new JsonObject().put("username", username).put("password", password), user -> {
+            if (user.failed()) {
+                handler.handle(Future.failedFuture(new AuthenticationException("Invalid credentials")));
+                return;
+            }
+            rolesOf(user.result(), roles.iterator(), new LinkedHashSet<>(), held -> {
+                Caller caller = new Caller(username, held);
+                if (cache != null) {
+                    cache.put(caller, password);
+                }
+                handler.handle(Future.succeededFuture(caller));
+            });
+        });
+    }
+
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long realmCalls() {
+        return realmCalls.sum();
+    }
+
+    public long tokensVerified() {
+        return tokensVerified.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("roles", new JsonArray(new ArrayList<>(roles)))
+                .put("cache", cache == null ? new JsonObject().put("enabled", false)
+                        : cache.stats().put("enabled", true))
+                .put("tokens", signer != null)
+                .put("cacheHits", cacheHits.sum())
+                .put("realmCalls", realmCalls.sum())
+                .put("tokensVerified", tokensVerified.sum())
+                .put("rejected", rejected.sum());
+    }
+
+    /**
+     * Asks the realm, one at a time, which of the roles the user holds.
+     */
+    private static void rolesOf(User user, Iterator<String> candidates, Set<String> held, Handler<Set<String>> done) {
+        if (!candidates.hasNext()) {
+            done.handle(held);
+            return;
+        }
+        String role = candidates.next();
+        user.isAuthorised(ShiroAuth.DEFAULT_ROLE_PREFIX + role, authorised -> {
+            if (authorised.succeeded() && authorised.result()) {
+                held.add(role);
+            }
+            rolesOf(user, candidates, held, done);
+        });
+    }
+
+    private void reject(RoutingContext routingContext, int statusCode, String message) {
+        rejected.increment();
+        if (statusCode == 401) {
+            routingContext.response().putHeader("www-authenticate", challenge);
+        }
+        routingContext.response().setStatusCode(statusCode).end(message);
+    }
+
+    private static boolean startsWith(String header, String scheme) {
+        return header != null && header.regionMatches(true, 0, scheme, 0, scheme.length());
+    }
+
+    public static class AuthenticationException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public AuthenticationException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.workspace7.vertx.auth;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Signs and verifies session tokens, so that a caller who authenticated once is known again from the token alone
+ * without asking the realm.
+ * <p>
+ * A token is the base64url of {@code {"sub":…,"roles":[…],"exp":…}}, a dot and the base64url of its HMAC-SHA256
+ * under the secret. Anyone holding the secret can mint tokens, and a token cannot be revoked before it expires, so
+ * keep {@code auth.token.ttl.seconds} short.
+ * <p>
+ * Thread safe: every thread gets a {@link Mac} of its own.
+ *
+ * @author kameshs
+ */
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public TokenSigner(byte[] secret) {
+        if (secret == null || secret.length < 16) {
+            throw new IllegalArgumentException("auth.token.secret must be at least 16 bytes long");
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        //fail here rather than on the first request when the JVM has no HMAC-SHA256
+        newMac();
+    }
+
+    public String sign(Caller caller, long expiresAt) {
+        String payload = ENCODER.encodeToString(new JsonObject()
+                .put("sub", caller.username())
+                .put("roles", new JsonArray(new ArrayList<>(caller.roles())))
+                .put("exp", expiresAt)
+                .encode().getBytes(StandardCharsets.UTF_8));
+        return payload + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    /**
+     * @return the caller the token was signed for, or {@code null} when it is malformed, was not signed with the
+     * secret or has expired by {@code now}
+     */
+    public Caller verify(String token, long now) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(mac(payload), DECODER.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            JsonObject claims = new JsonObject(new String(DECODER.decode(payload), StandardCharsets.UTF_8));
+            Long expiresAt = claims.getLong("exp");
+            String username = claims.getString("sub");
+            JsonArray roles = claims.getJsonArray("roles");
+            if (expiresAt == null || expiresAt <= now || username == null || roles == null) {
+                return null;
+            }
+            Set<String> held = new LinkedHashSet<>();
+            roles.forEach(role -> held.add((String) role));
+            return new Caller(username, held);
+        } catch (IllegalArgumentException | DecodeException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    private byte[] mac(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to create " + ALGORITHM, e);
+        }
+    }
+}
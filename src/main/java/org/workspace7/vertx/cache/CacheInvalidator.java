@@ -0,0 +1,101 @@
+package org.workspace7.vertx.cache;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Publishes cache invalidations to every other cache holder over the event bus, which spans all the nodes when
+ * Vert.x runs clustered.
+ * <p>
+ * Ids invalidated within {@code coalesceMillis} of each other are de-duplicated and sent as a single message
+ * whose body is the ids packed as 4 byte integers. Messages sent by this invalidator are ignored when they come
+ * back to it, the owner is expected to have dropped its own entries already.
+ *
+ * @author kameshs
+ */
+public class CacheInvalidator {
+
+    public static final String ADDRESS = "mantras.cache.invalidate";
+
+    private static final String ORIGIN_HEADER = "origin";
+
+    private final Vertx vertx;
+    private final String origin = UUID.randomUUID().toString();
+    private final long coalesceMillis;
+    private final int maxBatch;
+    private final Set<Integer> pending = new HashSet<>();
+    private final MessageConsumer<Buffer> consumer;
+
+    private long flushTimer = -1;
+    private long published;
+    private long received;
+
+    /**
+     * @param onInvalidate called on the caller's context for each id invalidated by another cache holder
+     */
+    public CacheInvalidator(Vertx vertx, long coalesceMillis, int maxBatch, Handler<Integer> onInvalidate) {
+        this.vertx = vertx;
+        this.coalesceMillis = coalesceMillis;
+        this.maxBatch = maxBatch;
+        this.consumer = vertx.eventBus().consumer(ADDRESS, message -> onMessage(message, onInvalidate));
+    }
+
+    public void invalidate(int id) {
+        pending.add(id);
+        if (pending.size() >= maxBatch || coalesceMillis <= 0) {
+            flush();
+        } else if (flushTimer == -1) {
+            flushTimer = vertx.setTimer(coalesceMillis, timerId -> {
+                flushTimer = -1;
+                flush();
+            });
+        }
+    }
+
+    public void flush() {
+        if (flushTimer != -1) {
+            vertx.cancelTimer(flushTimer);
+            flushTimer = -1;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Buffer ids = Buffer.buffer(pending.size() * 4);
+        pending.forEach(ids::appendInt);
+        pending.clear();
+        vertx.eventBus().publish(ADDRESS, ids, new DeliveryOptions().addHeader(ORIGIN_HEADER, origin));
+        published++;
+    }
+
+    public void close() {
+        flush();
+        consumer.unregister();
+    }
+
+    public long published() {
+        return published;
+    }
+
+    public long received() {
+        return received;
+    }
+
+    private void onMessage(Message<Buffer> message, Handler<Integer> onInvalidate) {
+        if (origin.equals(message.headers().get(ORIGIN_HEADER))) {
+            return;
+        }
+        received++;
+        Buffer ids = message.body();
+        for (int pos = 0; pos + 4 <= ids.length(); pos += 4) {
+            onInvalidate.handle(ids.getInt(pos));
+        }
+    }
+}
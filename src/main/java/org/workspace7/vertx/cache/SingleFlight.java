@@ -0,0 +1,104 @@
+package org.workspace7.vertx.cache;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs one load per key at a time: a call for a key that is already being loaded waits for that load instead of
+ * starting another, and every caller is handed the same result.
+ * <p>
+ * Nothing is kept once the load completes, so this only folds together calls that overlap, it is no cache. Keys
+ * should tell apart whatever the caller must not be handed the result of, e.g. a load started before its own write.
+ * <p>
+ * Not thread safe, to be used from one context, with the {@link Stats} shared by all.
+ *
+ * @author kameshs
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, List<Handler<AsyncResult<V>>>> inFlight = new HashMap<>();
+    private final Stats stats;
+
+    public SingleFlight(Stats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * @param load   started with the handler to complete when nobody is loading the key yet
+     * @param waiter called with the result of the load
+     * @return whether the call joined a load that was already running
+     */
+    public boolean execute(K key, Handler<Handler<AsyncResult<V>>> load, Handler<AsyncResult<V>> waiter) {
+        stats.calls.increment();
+        List<Handler<AsyncResult<V>>> waiters = inFlight.get(key);
+        if (waiters != null) {
+            stats.coalesced.increment();
+            waiters.add(waiter);
+            return true;
+        }
+        waiters = new ArrayList<>(2);
+        waiters.add(waiter);
+        inFlight.put(key, waiters);
+        load.handle(result -> inFlight.remove(key).forEach(handler -> handler.handle(result)));
+        return false;
+    }
+
+    /**
+     * @return the number of keys being loaded
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * How many calls there were and how many of them joined a load already running.
+     */
+    public static class Stats implements Shareable {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+
+        /**
+         * @return the stats of every single flight of this Vert.x instance
+         */
+        public static Stats shared(Vertx vertx) {
+            LocalMap<String, Stats> stats = vertx.sharedData().getLocalMap("mantras.singleflight");
+            Stats shared = stats.get("stats");
+            if (shared == null) {
+                Stats created = new Stats();
+                shared = stats.putIfAbsent("stats", created);
+                if (shared == null) {
+                    shared = created;
+                }
+            }
+            return shared;
+        }
+
+        public long calls() {
+            return calls.sum();
+        }
+
+        public long coalesced() {
+            return coalesced.sum();
+        }
+
+        public JsonObject toJson() {
+            long calls = calls();
+            long coalesced = coalesced();
+            return new JsonObject()
+                    .put("calls", calls)
+                    .put("coalesced", coalesced)
+                    .put("ratio", calls == 0 ? 0.0 : (double) coalesced / calls);
+        }
+    }
+}
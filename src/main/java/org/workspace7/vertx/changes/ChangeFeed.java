@@ -0,0 +1,300 @@
+package org.workspace7.vertx.changes;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams the changes to the mantras, as Server-Sent Events or WebSocket text messages, to the subscribers connected
+ * through one verticle instance. Writes are published at {@link #ADDRESS} by the repository that made them, the
+ * node's {@link ChangeLog} numbers them and this feed passes them on.
+ * <p>
+ * Subscribers resume from a sequence number, {@code Last-Event-ID} or {@code since}, and are sent what they missed
+ * when the log still has it, a {@code reset} event telling them to read the mantras afresh otherwise. Either way
+ * they are first sent a {@code hello} with the sequence number they are at.
+ * <p>
+ * A subscriber only holds its connection: what it has not taken yet waits in the connection's write queue, bounded
+ * to {@code changes.buffer.bytes}, and a subscriber whose queue is full is disconnected, free to resume. One timer
+ * sends every subscriber a heartbeat each {@code changes.heartbeat.ms}, which keeps idle connections open and finds
+ * the dead ones.
+ * <p>
+ * Not thread safe, every verticle instance has its own.
+ *
+ * @author kameshs
+ */
+public class ChangeFeed {
+
+    public static final String ADDRESS = "mantras.changes";
+
+    private static final Logger _logger = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final Buffer HEARTBEAT = Buffer.buffer(":\n\n");
+
+    private final Vertx vertx;
+    private final ChangeLog log;
+    private final int bufferBytes;
+    private final MessageConsumer<JsonObject> consumer;
+    private final long heartbeatTimer;
+    private final Set<Subscriber> subscribers = new LinkedHashSet<>();
+    //the latest change passed on to the subscribers
+    private long delivered;
+
+    public ChangeFeed(Vertx vertx, ChangeLog log, JsonObject config) {
+        this.vertx = vertx;
+        this.log = log;
+        this.bufferBytes = config.getInteger("changes.buffer.bytes", 65536);
+        this.delivered = log.latest();
+        this.consumer = vertx.eventBus().consumer(ADDRESS, message -> {
+            JsonObject write = message.body();
+            log.append(write.getString("writer"), write.getLong("write"), write.getJsonArray("changes"));
+            deliver();
+        });
+        this.heartbeatTimer = vertx.setPeriodic(config.getLong("changes.heartbeat.ms", 15000L),
+                timerId -> heartbeat());
+    }
+
+    /**
+     * Subscribes with Server-Sent Events, or with a WebSocket when the request asks for an upgrade.
+     */
+    public void subscribe(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        Long since;
+        try {
+            String lastEventId = request.getHeader("last-event-id");
+            String sinceParam = request.getParam("since");
+            since = lastEventId != null ? Long.valueOf(lastEventId.trim())
+                    : sinceParam != null ? Long.valueOf(sinceParam) : null;
+        } catch (NumberFormatException e) {
+            routingContext.response().setStatusCode(400).end("Invalid sequence number");
+            return;
+        }
+
+        Subscriber subscriber;
+        if ("websocket".equalsIgnoreCase(request.getHeader("upgrade"))) {
+            ServerWebSocket webSocket = request.upgrade();
+            webSocket.setWriteQueueMaxSize(bufferBytes);
+            subscriber = new WebSocketSubscriber(webSocket);
+            webSocket.closeHandler(v -> unsubscribe(subscriber));
+        } else {
+            HttpServerResponse response = routingContext.response()
+                    .setChunked(true)
+                    .setWriteQueueMaxSize(bufferBytes)
+                    .putHeader("content-type", "text/event-stream;charset=utf-8")
+                    .putHeader("cache-control", "no-cache");
+            subscriber = new EventStreamSubscriber(response);
+            response.closeHandler(v -> unsubscribe(subscriber));
+        }
+
+        List<ChangeLog.Change> missed = since == null ? null : log.range(since, delivered);
+        if (missed == null) {
+            subscriber.position = delivered;
+            subscriber.hello(delivered);
+            if (since != null) {
+                subscriber.reset(delivered);
+            }
+        } else {
+            //a subscriber ahead of this feed is only sent what comes after where it is
+            subscriber.position = since;
+            subscriber.hello(since);
+            missed.forEach(subscriber::deliver);
+        }
+        if (subscriber.overflowing()) {
+            evict(subscriber);
+            return;
+        }
+        subscribers.add(subscriber);
+        log.subscriberCount().incrementAndGet();
+    }
+
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    public void close() {
+        consumer.unregister();
+        vertx.cancelTimer(heartbeatTimer);
+        new ArrayList<>(subscribers).forEach(subscriber -> {
+            unsubscribe(subscriber);
+            subscriber.close();
+        });
+    }
+
+    private void deliver() {
+        long latest = log.latest();
+        List<ChangeLog.Change> changes = log.range(delivered, latest);
+        if (changes == null) {
+            //fell further behind than the log goes back, which the subscribers have to hear of
+            _logger.warn("Change feed fell behind from {} to {}", delivered, latest);
+            subscribers.forEach(subscriber -> {
+                subscriber.reset(latest);
+                subscriber.position = latest;
+            });
+        } else if (!changes.isEmpty() && !subscribers.isEmpty()) {
+            List<Subscriber> slow = null;
+            for (Subscriber subscriber : subscribers) {
+                for (ChangeLog.Change change : changes) {
+                    subscriber.deliver(change);
+                }
+                if (subscriber.overflowing()) {
+                    slow = slow == null ? new ArrayList<>() : slow;
+                    slow.add(subscriber);
+                }
+            }
+            if (slow != null) {
+                slow.forEach(this::evict);
+            }
+        }
+        delivered = latest;
+    }
+
+    private void heartbeat() {
+        List<Subscriber> slow = new ArrayList<>();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.overflowing()) {
+                slow.add(subscriber);
+            } else {
+                subscriber.heartbeat(delivered);
+            }
+        }
+        slow.forEach(this::evict);
+    }
+
+    private void evict(Subscriber subscriber) {
+        unsubscribe(subscriber);
+        log.evicted();
+        subscriber.close();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            log.subscriberCount().decrementAndGet();
+        }
+    }
+
+    private abstract static class Subscriber {
+
+        //the sequence number of the latest change sent
+        private long position;
+
+        void deliver(ChangeLog.Change change) {
+            if (change.seq() > position) {
+                send(change);
+                position = change.seq();
+            }
+        }
+
+        abstract WriteStream<?> stream();
+
+        abstract void hello(long seq);
+
+        abstract void send(ChangeLog.Change change);
+
+        abstract void reset(long seq);
+
+        abstract void heartbeat(long seq);
+
+        abstract void close();
+
+        boolean overflowing() {
+            return stream().writeQueueFull();
+        }
+    }
+
+    private static class EventStreamSubscriber extends Subscriber {
+
+        private final HttpServerResponse response;
+
+        private EventStreamSubscriber(HttpServerResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        WriteStream<?> stream() {
+            return response;
+        }
+
+        @Override
+        void hello(long seq) {
+            response.write("retry: 1000\n" + event("hello", seq));
+        }
+
+        @Override
+        void send(ChangeLog.Change change) {
+            response.write(change.event());
+        }
+
+        @Override
+        void reset(long seq) {
+            response.write(event("reset", seq));
+        }
+
+        @Override
+        void heartbeat(long seq) {
+            response.write(HEARTBEAT);
+        }
+
+        @Override
+        void close() {
+            response.close();
+        }
+
+        private static String event(String type, long seq) {
+            return "id: " + seq + "\nevent: " + type + "\ndata: {\"type\":\"" + type + "\",\"seq\":" + seq + "}\n\n";
+        }
+    }
+
+    private static class WebSocketSubscriber extends Subscriber {
+
+        private final ServerWebSocket webSocket;
+
+        private WebSocketSubscriber(ServerWebSocket webSocket) {
+            this.webSocket = webSocket;
+        }
+
+        @Override
+        WriteStream<?> stream() {
+            return webSocket;
+        }
+
+        @Override
+        void hello(long seq) {
+            webSocket.writeFinalTextFrame(message("hello", seq));
+        }
+
+        @Override
+        void send(ChangeLog.Change change) {
+            webSocket.writeFinalTextFrame(change.json());
+        }
+
+        @Override
+        void reset(long seq) {
+            webSocket.writeFinalTextFrame(message("reset", seq));
+        }
+
+        @Override
+        void heartbeat(long seq) {
+            webSocket.writeFinalTextFrame(message("heartbeat", seq));
+        }
+
+        @Override
+        void close() {
+            webSocket.close();
+        }
+
+        private static String message(String type, long seq) {
+            return "{\"type\":\"" + type + "\",\"seq\":" + seq + "}";
+        }
+    }
+}
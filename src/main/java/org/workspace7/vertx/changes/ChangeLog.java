@@ -0,0 +1,148 @@
+package org.workspace7.vertx.changes;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latest {@code changes.history} changes to the mantras seen by this node, numbered in the order they were seen.
+ * The numbers are what subscribers resume from, they belong to the node and start over with it.
+ * <p>
+ * Every {@link ChangeFeed} of the node hears of each write and appends it, only the first append of a write counts.
+ * Each change is encoded once, here, for all the subscribers.
+ * <p>
+ * Thread safe: the verticle instances of a node share one through {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class ChangeLog implements Shareable {
+
+    private final Change[] history;
+    //sequence number of the latest change, 0 before the first
+    private long latest;
+    //the last write number appended for each writer
+    private final Map<String, Long> writes = new HashMap<>();
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder evicted = new LongAdder();
+
+    public ChangeLog(int history) {
+        this.history = new Change[Math.max(1, history)];
+    }
+
+    /**
+     * @return the log of this Vert.x instance
+     */
+    public static ChangeLog shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, ChangeLog> logs = vertx.sharedData().getLocalMap("mantras.changes");
+        ChangeLog log = logs.get("log");
+        if (log == null) {
+            ChangeLog created = new ChangeLog(config.getInteger("changes.history", 1024));
+            log = logs.putIfAbsent("log", created);
+            if (log == null) {
+                log = created;
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Appends the changes of a write, unless they were appended already.
+     *
+     * @param writer the origin of the write
+     * @param write  the number of the write, increasing for each writer
+     * @param changes JSON objects with the {@code type}, {@code id} and, unless deleted, the mantra
+     */
+    public synchronized void append(String writer, long write, JsonArray changes) {
+        Long last = writes.get(writer);
+        if (last != null && last >= write) {
+            return;
+        }
+        writes.put(writer, write);
+        for (int i = 0; i < changes.size(); i++) {
+            latest++;
+            history[(int) (latest % history.length)] = new Change(latest, changes.getJsonObject(i));
+        }
+    }
+
+    public synchronized long latest() {
+        return latest;
+    }
+
+    /**
+     * @return the changes after {@code after} up to and including {@code upTo}, null when those after {@code after}
+     * are no longer all kept or {@code after} is not a change of this node
+     */
+    public synchronized List<Change> range(long after, long upTo) {
+        if (after < 0 || after > latest || latest - after > history.length) {
+            return null;
+        }
+        if (upTo <= after) {
+            return Collections.emptyList();
+        }
+        List<Change> changes = new ArrayList<>((int) (upTo - after));
+        for (long seq = after + 1; seq <= upTo; seq++) {
+            changes.add(history[(int) (seq % history.length)]);
+        }
+        return changes;
+    }
+
+    AtomicInteger subscriberCount() {
+        return subscribers;
+    }
+
+    void evicted() {
+        evicted.increment();
+    }
+
+    public int subscribers() {
+        return subscribers.get();
+    }
+
+    public long evictions() {
+        return evicted.sum();
+    }
+
+    /**
+     * A change with its sequence number, encoded for both Server-Sent Events and WebSocket text frames.
+     */
+    public static class Change {
+
+        private final long seq;
+        private final String json;
+        private final Buffer event;
+
+        Change(long seq, JsonObject change) {
+            this.seq = seq;
+            this.json = change.copy().put("seq", seq).encode();
+            this.event = Buffer.buffer("id: " + seq + "\nevent: " + change.getString("type") + "\ndata: " + json
+                    + "\n\n");
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public String json() {
+            return json;
+        }
+
+        /**
+         * @return the change as a Server-Sent Event, with the sequence number as its id
+         */
+        public Buffer event() {
+            return event;
+        }
+    }
+}
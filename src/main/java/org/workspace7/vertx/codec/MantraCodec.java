@@ -0,0 +1,83 @@
+package org.workspace7.vertx.codec;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import org.workspace7.vertx.Mantra;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event bus codec for {@link Mantra}, local deliveries hand over the instance and clustered ones send the id and
+ * version followed by the length prefixed UTF-8 text.
+ *
+ * @author kameshs
+ */
+public class MantraCodec implements MessageCodec<Mantra, Mantra> {
+
+    public static final String NAME = "mantra";
+
+    /**
+     * Registers this codec as the default one for {@link Mantra} along with the {@link MantraListCodec}, once per
+     * Vert.x instance.
+     */
+    public static synchronized void register(Vertx vertx) {
+        try {
+            vertx.eventBus().registerDefaultCodec(Mantra.class, new MantraCodec());
+            vertx.eventBus().registerCodec(new MantraListCodec());
+        } catch (IllegalStateException e) {
+            //another verticle of this Vert.x instance got there first
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, Mantra mantra) {
+        write(buffer, mantra);
+    }
+
+    @Override
+    public Mantra decodeFromWire(int pos, Buffer buffer) {
+        return read(buffer, new int[]{pos});
+    }
+
+    @Override
+    public Mantra transform(Mantra mantra) {
+        return mantra;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    static void write(Buffer buffer, Mantra mantra) {
+        buffer.appendInt(mantra.getId()).appendLong(mantra.getVersion());
+        if (mantra.getMantra() == null) {
+            buffer.appendInt(-1);
+        } else {
+            byte[] text = mantra.getMantra().getBytes(StandardCharsets.UTF_8);
+            buffer.appendInt(text.length).appendBytes(text);
+        }
+    }
+
+    /**
+     * @param pos the read position, advanced past the mantra
+     */
+    static Mantra read(Buffer buffer, int[] pos) {
+        int id = buffer.getInt(pos[0]);
+        long version = buffer.getLong(pos[0] + 4);
+        int length = buffer.getInt(pos[0] + 12);
+        pos[0] += 16;
+        if (length < 0) {
+            return new Mantra(id, null, version);
+        }
+        String text = buffer.getString(pos[0], pos[0] + length, "UTF-8");
+        pos[0] += length;
+        return new Mantra(id, text, version);
+    }
+}
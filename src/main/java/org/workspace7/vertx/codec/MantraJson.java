@@ -0,0 +1,191 @@
+package org.workspace7.vertx.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import org.workspace7.vertx.Mantra;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compact JSON for {@link Mantra}, written as UTF-8 straight into a {@link Buffer} sized up front and read with the
+ * Jackson streaming parser straight off the request body, so neither direction goes through an intermediate
+ * {@link String} or tree.
+ * <p>
+ * The output is the same document {@link Json#encode(Object)} produces for a mantra.
+ *
+ * @author kameshs
+ */
+public final class MantraJson {
+
+    private static final byte[] ID = "{\"id\":".getBytes();
+    private static final byte[] MANTRA = ",\"mantra\":".getBytes();
+    private static final byte[] VERSION = ",\"version\":".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private MantraJson() {
+    }
+
+    public static Buffer encode(Mantra mantra) {
+        Buffer buffer = Buffer.buffer(sizeOf(mantra));
+        write(buffer, mantra);
+        return buffer;
+    }
+
+    public static Buffer encode(List<Mantra> mantras) {
+        int size = 2;
+        for (Mantra mantra : mantras) {
+            size += sizeOf(mantra) + 1;
+        }
+        Buffer buffer = Buffer.buffer(size).appendByte((byte) '[');
+        for (int i = 0; i < mantras.size(); i++) {
+            if (i > 0) {
+                buffer.appendByte((byte) ',');
+            }
+            write(buffer, mantras.get(i));
+        }
+        return buffer.appendByte((byte) ']');
+    }
+
+    /**
+     * @return a close upper bound of the encoded size, exact for ASCII text that needs no escaping
+     */
+    public static int sizeOf(Mantra mantra) {
+        return 64 + (mantra.getMantra() == null ? 0 : mantra.getMantra().length());
+    }
+
+    public static void write(Buffer buffer, Mantra mantra) {
+        buffer.appendBytes(ID);
+        appendLong(buffer, mantra.getId());
+        buffer.appendBytes(MANTRA);
+        if (mantra.getMantra() == null) {
+            buffer.appendBytes(NULL);
+        } else {
+            appendString(buffer, mantra.getMantra());
+        }
+        buffer.appendBytes(VERSION);
+        appendLong(buffer, mantra.getVersion());
+        buffer.appendByte((byte) '}');
+    }
+
+    /**
+     * Reads a mantra object, fields other than {@code id}, {@code mantra} and {@code version} are skipped.
+     *
+     * @throws DecodeException when the body is not a JSON object
+     */
+    public static Mantra decode(Buffer body) {
+        try (JsonParser parser = parser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new DecodeException("Expected a JSON object");
+            }
+            int id = -1;
+            String text = null;
+            long version = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    id = parser.getIntValue();
+                } else if ("mantra".equals(field) && value == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                } else if ("version".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    version = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new Mantra(id, text, version);
+        } catch (IOException e) {
+            throw new DecodeException("Failed to decode mantra:" + e.getMessage());
+        }
+    }
+
+    private static JsonParser parser(Buffer body) throws IOException {
+        ByteBuf byteBuf = body.getByteBuf();
+        if (byteBuf.hasArray()) {
+            return Json.mapper.getFactory().createParser(byteBuf.array(),
+                    byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+        }
+        return Json.mapper.getFactory().createParser(body.getBytes());
+    }
+
+    private static void appendLong(Buffer buffer, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                buffer.appendString(Long.toString(value));
+                return;
+            }
+            buffer.appendByte((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.appendByte((byte) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static void appendString(Buffer buffer, String text) {
+        buffer.appendByte((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.appendByte((byte) '\\').appendByte((byte) c);
+            } else if (c < 0x20) {
+                appendControl(buffer, c);
+            } else if (c < 0x80) {
+                buffer.appendByte((byte) c);
+            } else if (c < 0x800) {
+                buffer.appendByte((byte) (0xc0 | c >> 6))
+                        .appendByte((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.appendByte((byte) (0xf0 | codePoint >> 18))
+                        .appendByte((byte) (0x80 | codePoint >> 12 & 0x3f))
+                        .appendByte((byte) (0x80 | codePoint >> 6 & 0x3f))
+                        .appendByte((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                //a lone surrogate has no UTF-8 form, same as String.getBytes
+                buffer.appendByte((byte) '?');
+            } else {
+                buffer.appendByte((byte) (0xe0 | c >> 12))
+                        .appendByte((byte) (0x80 | c >> 6 & 0x3f))
+                        .appendByte((byte) (0x80 | c & 0x3f));
+            }
+        }
+        buffer.appendByte((byte) '"');
+    }
+
+    private static void appendControl(Buffer buffer, char c) {
+        buffer.appendByte((byte) '\\');
+        switch (c) {
+            case '\n':
+                buffer.appendByte((byte) 'n');
+                break;
+            case '\r':
+                buffer.appendByte((byte) 'r');
+                break;
+            case '\t':
+                buffer.appendByte((byte) 't');
+                break;
+            case '\b':
+                buffer.appendByte((byte) 'b');
+                break;
+            case '\f':
+                buffer.appendByte((byte) 'f');
+                break;
+            default:
+                buffer.appendByte((byte) 'u').appendByte((byte) '0').appendByte((byte) '0')
+                        .appendByte(HEX[c >> 4]).appendByte(HEX[c & 0xf]);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.workspace7.vertx.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import org.workspace7.vertx.Mantra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event bus codec for lists of {@link Mantra}, select it with
+ * {@code new DeliveryOptions().setCodecName(MantraListCodec.NAME)}.
+ *
+ * @author kameshs
+ */
+public class MantraListCodec implements MessageCodec<List<Mantra>, List<Mantra>> {
+
+    public static final String NAME = "mantras";
+
+    @Override
+    public void encodeToWire(Buffer buffer, List<Mantra> mantras) {
+        buffer.appendInt(mantras.size());
+        mantras.forEach(mantra -> MantraCodec.write(buffer, mantra));
+    }
+
+    @Override
+    public List<Mantra> decodeFromWire(int pos, Buffer buffer) {
+        int size = buffer.getInt(pos);
+        int[] position = {pos + 4};
+        List<Mantra> mantras = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            mantras.add(MantraCodec.read(buffer, position));
+        }
+        return mantras;
+    }
+
+    @Override
+    public List<Mantra> transform(List<Mantra> mantras) {
+        return mantras;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,165 @@
+package org.workspace7.vertx.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Caps the requests of a route that are in flight at once, turning the ones over the cap away straight away with a
+ * {@code 503} and a {@code Retry-After} instead of letting them queue up for the repository.
+ * <p>
+ * The cap adapts, additive increase and multiplicative decrease, to the latency of the requests it lets through.
+ * Every {@code limit.window} requests the average latency of the window is compared with a long term average: when
+ * it is more than {@code limit.latency.tolerance} times longer, or when any request of the window failed with a
+ * {@code 503} or was given up on by the client, the cap is multiplied by {@code limit.backoff}. Otherwise it grows by
+ * one, provided the window used at least half of it. The cap stays within {@code limit.min} and {@code limit.max}.
+ * <p>
+ * Thread safe: the verticle instances of a node share one limiter per route through {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class ConcurrencyLimiter implements Shareable {
+
+    //how much of each window's average latency goes into the long term one
+    private static final double SMOOTHING = 0.1;
+
+    private final int min;
+    private final int max;
+    private final int window;
+    private final double tolerance;
+    private final double backoff;
+
+    private double limit;
+    private int inFlight;
+    private long admitted;
+    private long rejected;
+
+    private int samples;
+    private long latencySum;
+    private boolean dropped;
+    private int peakInFlight;
+    private double longLatency;
+
+    public ConcurrencyLimiter(int initial, int min, int max, int window, double tolerance, double backoff) {
+        if (min < 1 || max < min || initial < min || initial > max) {
+            throw new IllegalArgumentException("Expected 1 <= limit.min <= limit.initial <= limit.max");
+        }
+        this.limit = initial;
+        this.min = min;
+        this.max = max;
+        this.window = Math.max(1, window);
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+    }
+
+    /**
+     * @return the limiter of the route for this Vert.x instance
+     */
+    public static ConcurrencyLimiter shared(Vertx vertx, JsonObject config, String route) {
+        LocalMap<String, ConcurrencyLimiter> limiters = vertx.sharedData().getLocalMap("mantras.limits");
+        ConcurrencyLimiter limiter = limiters.get(route);
+        if (limiter == null) {
+            ConcurrencyLimiter created = new ConcurrencyLimiter(
+                    config.getInteger("limit.initial", 20),
+                    config.getInteger("limit.min", 2),
+                    config.getInteger("limit.max", 200),
+                    config.getInteger("limit.window", 50),
+                    config.getDouble("limit.latency.tolerance", 2.0),
+                    config.getDouble("limit.backoff", 0.9));
+            limiter = limiters.putIfAbsent(route, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Hands the request to the handler if there is room for it, answers it with a {@code 503} otherwise. The room is
+     * given back when the response has ended or the connection closed.
+     */
+    public Handler<RoutingContext> limited(Handler<RoutingContext> handler, long retryAfterSeconds) {
+        String retryAfter = Long.toString(retryAfterSeconds);
+        return routingContext -> {
+            HttpServerResponse response = routingContext.response();
+            if (!tryAcquire()) {
+                response.setStatusCode(503).putHeader("retry-after", retryAfter).end("Too many requests in flight");
+                return;
+            }
+            long start = System.nanoTime();
+            boolean[] released = new boolean[1];
+            response.endHandler(v -> {
+                //called once on end, and once more if the connection closes afterwards
+                if (!released[0]) {
+                    released[0] = true;
+                    release(System.nanoTime() - start, !response.ended() || response.getStatusCode() == 503);
+                }
+            });
+            handler.handle(routingContext);
+        };
+    }
+
+    /**
+     * @return whether the request may go ahead, in which case it has to be {@link #release released}
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        admitted++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+        return true;
+    }
+
+    /**
+     * @param dropped whether the request failed for lack of capacity further down or was given up on
+     */
+    public synchronized void release(long latencyNanos, boolean dropped) {
+        inFlight--;
+        samples++;
+        latencySum += latencyNanos;
+        this.dropped |= dropped;
+        if (samples < window) {
+            return;
+        }
+
+        double latency = (double) latencySum / samples;
+        if (longLatency == 0) {
+            longLatency = latency;
+        }
+        if (this.dropped || latency > longLatency * tolerance) {
+            limit = Math.max(min, limit * backoff);
+        } else if (peakInFlight * 2 >= (int) limit) {
+            limit = Math.min(max, limit + 1);
+        }
+        longLatency += (latency - longLatency) * SMOOTHING;
+
+        samples = 0;
+        latencySum = 0;
+        this.dropped = false;
+        peakInFlight = inFlight;
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("limit", (int) limit)
+                .put("inFlight", inFlight)
+                .put("admitted", admitted)
+                .put("rejected", rejected)
+                .put("latencyMs", longLatency / 1e6);
+    }
+}
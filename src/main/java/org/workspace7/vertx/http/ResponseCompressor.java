@@ -0,0 +1,139 @@
+package org.workspace7.vertx.http;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a response body gzip or deflate encoded, or as is when no encoding was negotiated. Every chunk written is
+ * flushed so the client can decode it as soon as it arrives.
+ *
+ * @author kameshs
+ */
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final HttpServerResponse response;
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] out;
+    private boolean started;
+
+    /**
+     * @param encoding {@link #GZIP}, {@link #DEFLATE} or null to write the body as is
+     */
+    public ResponseCompressor(HttpServerResponse response, String encoding, int level) {
+        this.response = response;
+        if (encoding == null) {
+            this.deflater = null;
+            this.crc = null;
+            this.out = null;
+        } else {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, encoding)
+                    .putHeader("vary", HttpHeaders.ACCEPT_ENCODING);
+            this.deflater = new Deflater(level, GZIP.equals(encoding));
+            this.crc = GZIP.equals(encoding) ? new CRC32() : null;
+            this.out = new byte[8192];
+        }
+    }
+
+    /**
+     * @return {@link #GZIP} or {@link #DEFLATE} when the client accepts either, gzip first, otherwise null
+     */
+    public static String negotiate(HttpServerRequest request) {
+        String accepted = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (accepted == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String candidate : accepted.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            String coding = parts[0].trim();
+            if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) {
+                continue;
+            }
+            if (GZIP.equalsIgnoreCase(coding)) {
+                return GZIP;
+            }
+            deflate |= DEFLATE.equalsIgnoreCase(coding);
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    public void write(Buffer chunk) {
+        if (deflater == null) {
+            response.write(chunk);
+            return;
+        }
+        Buffer compressed = Buffer.buffer(chunk.length() / 2 + 64);
+        header(compressed);
+        input(chunk);
+        int length;
+        do {
+            length = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+            compressed.appendBytes(out, 0, length);
+        } while (length == out.length);
+        response.write(compressed);
+    }
+
+    public void end(Buffer last) {
+        if (deflater == null) {
+            response.end(last);
+            return;
+        }
+        Buffer compressed = Buffer.buffer(last.length() / 2 + 64);
+        header(compressed);
+        input(last);
+        deflater.finish();
+        while (!deflater.finished()) {
+            compressed.appendBytes(out, 0, deflater.deflate(out));
+        }
+        if (crc != null) {
+            appendIntLE(compressed, (int) crc.getValue());
+            appendIntLE(compressed, (int) deflater.getBytesRead());
+        }
+        deflater.end();
+        response.end(compressed);
+    }
+
+    /**
+     * Releases the deflater of a response that will not be ended, e.g. because the client went away.
+     */
+    public void abort() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    private void header(Buffer compressed) {
+        if (!started) {
+            started = true;
+            if (crc != null) {
+                compressed.appendBytes(GZIP_HEADER);
+            }
+        }
+    }
+
+    private void input(Buffer chunk) {
+        byte[] bytes = chunk.getBytes();
+        if (crc != null) {
+            crc.update(bytes);
+        }
+        deflater.setInput(bytes);
+    }
+
+    private static void appendIntLE(Buffer buffer, int value) {
+        buffer.appendByte((byte) value)
+                .appendByte((byte) (value >> 8))
+                .appendByte((byte) (value >> 16))
+                .appendByte((byte) (value >> 24));
+    }
+}
@@ -0,0 +1,91 @@
+package org.workspace7.vertx.http;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The {@link HttpServerOptions} of the API server, picked by name with {@code http.profile} from the
+ * {@code http.profiles} object of the config. Each profile is the JSON form of {@link HttpServerOptions}, e.g.
+ * {@code compressionSupported}, {@code compressionLevel}, {@code tcpNoDelay}, {@code acceptBacklog},
+ * {@code idleTimeout} or the HTTP/2 {@code initialSettings}, plus {@code compressionMinSize}, the body size in bytes
+ * below which responses are sent uncompressed.
+ * <p>
+ * The server's own compressor compresses every response regardless of size, with a {@code compressionMinSize} it is
+ * switched off and the API bodies are compressed by {@link #end(RoutingContext, Buffer)} and
+ * {@link #compressor(RoutingContext)} instead.
+ * <p>
+ * HTTP/2 over clear text, with prior knowledge or by upgrade, is always accepted, the HTTP/2 settings only take
+ * effect for clients that use it.
+ *
+ * @author kameshs
+ */
+public class ServerProfile {
+
+    public static final String DEFAULT = "default";
+
+    private final String name;
+    private final HttpServerOptions options;
+    private final int compressionMinSize;
+
+    private ServerProfile(String name, JsonObject profile) {
+        this.name = name;
+        this.options = new HttpServerOptions(profile);
+        this.compressionMinSize = options.isCompressionSupported() ? profile.getInteger("compressionMinSize", 0) : 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException when {@code http.profile} names a profile that is not configured
+     */
+    public static ServerProfile fromConfig(JsonObject config) {
+        String name = config.getString("http.profile", DEFAULT);
+        JsonObject profiles = config.getJsonObject("http.profiles", new JsonObject());
+        JsonObject profile = profiles.getJsonObject(name);
+        if (profile == null) {
+            if (!DEFAULT.equals(name)) {
+                throw new IllegalArgumentException("Unknown http.profile " + name + ", expected one of "
+                        + profiles.fieldNames());
+            }
+            profile = new JsonObject();
+        }
+        return new ServerProfile(name, profile);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return a copy of the profile options, safe to set the port on
+     */
+    public HttpServerOptions options() {
+        HttpServerOptions copy = new HttpServerOptions(options);
+        if (compressionMinSize > 0) {
+            copy.setCompressionSupported(false);
+        }
+        return copy;
+    }
+
+    /**
+     * Ends the response with the body, compressed when it is at least {@code compressionMinSize} long and the client
+     * accepts gzip or deflate.
+     */
+    public void end(RoutingContext routingContext, Buffer body) {
+        if (compressionMinSize > 0 && body.length() >= compressionMinSize) {
+            compressor(routingContext).end(body);
+        } else {
+            routingContext.response().end(body);
+        }
+    }
+
+    /**
+     * @return the writer for a chunked body, which has no length up front and is compressed whenever the client
+     * accepts it
+     */
+    public ResponseCompressor compressor(RoutingContext routingContext) {
+        return new ResponseCompressor(routingContext.response(),
+                compressionMinSize > 0 ? ResponseCompressor.negotiate(routingContext.request()) : null,
+                options.getCompressionLevel());
+    }
+}
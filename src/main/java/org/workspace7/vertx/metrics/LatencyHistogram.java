@@ -0,0 +1,111 @@
+package org.workspace7.vertx.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of microsecond latencies in log-linear buckets, in the manner of an HdrHistogram: every power of two is split
+ * into {@code 2^SUB_BUCKET_BITS} equal buckets, so any recorded value is reported within 1% of itself. Values from
+ * 1&micro;s to about 19 hours are kept apart, larger ones are counted as the largest.
+ * <p>
+ * Recording is a single atomic increment and safe from any thread. Reading while others record sees a consistent
+ * count per bucket but not necessarily across buckets, which is fine for quantiles.
+ *
+ * @author kameshs
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 36;
+    static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param micros the latency, negative values are counted as zero
+     */
+    public void record(long micros) {
+        counts.incrementAndGet(index(micros));
+    }
+
+    /**
+     * @return the recorded value at the quantile, in microseconds, the highest value of its bucket
+     */
+    public long valueAtQuantile(double quantile) {
+        long[] into = newCounts();
+        return valueAtQuantile(into, addTo(into), quantile);
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Adds the counts of this histogram to {@code into}, which must be {@link #newCounts()} sized.
+     *
+     * @return the number of values added
+     */
+    long addTo(long[] into) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            into[i] += count;
+            total += count;
+        }
+        return total;
+    }
+
+    static long[] newCounts() {
+        return new long[BUCKETS];
+    }
+
+    /**
+     * @return the value at the quantile of the counts, the highest value of its bucket
+     */
+    static long valueAtQuantile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,167 @@
+package org.workspace7.vertx.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@link Timer}s of a Vert.x instance, by metric name and labels, written out in the Prometheus text format as
+ * summaries with windowed quantiles, plus counters and gauges read when written out.
+ *
+ * @author kameshs
+ */
+public class MetricsRegistry implements Shareable {
+
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final long windowSeconds;
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private final Map<String, Value> values = new ConcurrentSkipListMap<>();
+
+    public MetricsRegistry(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * @return the registry every verticle of this Vert.x instance records to
+     */
+    public static MetricsRegistry shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, MetricsRegistry> registries = vertx.sharedData().getLocalMap("mantras.metrics");
+        MetricsRegistry registry = registries.get("registry");
+        if (registry == null) {
+            MetricsRegistry created = new MetricsRegistry(config.getLong("metrics.window.seconds", 60L));
+            registry = registries.putIfAbsent("registry", created);
+            if (registry == null) {
+                registry = created;
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Looks the timer up, creating it on first use. Callers on a hot path should keep the timer rather than look it up
+     * every time.
+     *
+     * @param labels label names and values, alternating
+     */
+    public Timer timer(String name, String help, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name and value pairs");
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(help));
+        return family.series.computeIfAbsent(labels(labels), l -> new Timer(windowSeconds, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Registers a value that only ever goes up, unless one is registered by that name already.
+     */
+    public void counter(String name, String help, LongSupplier value) {
+        values.putIfAbsent(name, new Value(help, "counter", value));
+    }
+
+    /**
+     * Registers a value that goes up and down, unless one is registered by that name already.
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        values.putIfAbsent(name, new Value(help, "gauge", value));
+    }
+
+    /**
+     * Writes every timer as a summary in seconds with the {@link #QUANTILES} over the window, all time sum and count,
+     * plus a {@code _max} gauge.
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> family : families.entrySet()) {
+            String name = family.getKey();
+            out.append("# HELP ").append(name).append(' ').append(family.getValue().help).append('\n')
+                    .append("# TYPE ").append(name).append(" summary\n");
+            StringBuilder max = new StringBuilder();
+            for (Map.Entry<String, Timer> series : family.getValue().series.entrySet()) {
+                String labels = series.getKey();
+                Timer.Snapshot snapshot = series.getValue().snapshot();
+                for (double quantile : QUANTILES) {
+                    out.append(name).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                            .append("quantile=\"").append(quantile).append("\"} ");
+                    seconds(out, snapshot.quantileNanos(quantile)).append('\n');
+                }
+                series(out, name + "_sum", labels);
+                seconds(out, snapshot.sumNanos()).append('\n');
+                series(out, name + "_count", labels).append(snapshot.count()).append('\n');
+                seconds(series(max, name + "_max", labels), snapshot.maxNanos()).append('\n');
+            }
+            out.append("# HELP ").append(name).append("_max The longest ever recorded\n")
+                    .append("# TYPE ").append(name).append("_max gauge\n")
+                    .append(max);
+        }
+        for (Map.Entry<String, Value> value : values.entrySet()) {
+            String name = value.getKey();
+            out.append("# HELP ").append(name).append(' ').append(value.getValue().help).append('\n')
+                    .append("# TYPE ").append(name).append(' ').append(value.getValue().type).append('\n')
+                    .append(name).append(' ').append(value.getValue().value.getAsLong()).append('\n');
+        }
+    }
+
+    private static StringBuilder series(StringBuilder out, String name, String labels) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        return out.append(' ');
+    }
+
+    private static StringBuilder seconds(StringBuilder out, long nanos) {
+        return out.append(nanos / 1e9);
+    }
+
+    private static String labels(String[] labels) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    out.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(ch);
+                }
+            }
+            out.append('"');
+        }
+        return out.toString();
+    }
+
+    private static class Value {
+
+        private final String help;
+        private final String type;
+        private final LongSupplier value;
+
+        private Value(String help, String type, LongSupplier value) {
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private static class Family {
+
+        private final String help;
+        private final Map<String, Timer> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help) {
+            this.help = help;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.workspace7.vertx.metrics;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Times the requests of one route, by response status, from the moment the route handler is called until the
+ * response body has been written, plus the time the route spends serializing its responses.
+ *
+ * @author kameshs
+ */
+public class RouteMetrics {
+
+    public static final String REQUESTS = "mantras_http_requests_seconds";
+    public static final String SERIALIZATION = "mantras_http_serialization_seconds";
+
+    private static final String CONTEXT_KEY = RouteMetrics.class.getName();
+
+    private final MetricsRegistry registry;
+    private final String route;
+    private final AtomicReferenceArray<Timer> byStatus = new AtomicReferenceArray<>(600);
+    private final Timer serialization;
+
+    public RouteMetrics(MetricsRegistry registry, String route) {
+        this.registry = registry;
+        this.route = route;
+        this.serialization = registry.timer(SERIALIZATION, "Time spent encoding response bodies", "route", route);
+    }
+
+    /**
+     * @return the metrics of the route that is handling the request, or null when it is not timed
+     */
+    public static RouteMetrics of(RoutingContext routingContext) {
+        return routingContext.get(CONTEXT_KEY);
+    }
+
+    public Handler<RoutingContext> timed(Handler<RoutingContext> handler) {
+        return routingContext -> {
+            long start = System.nanoTime();
+            routingContext.put(CONTEXT_KEY, this);
+            routingContext.addBodyEndHandler(v -> status(routingContext.response().getStatusCode())
+                    .recordSince(start));
+            handler.handle(routingContext);
+        };
+    }
+
+    public Timer serialization() {
+        return serialization;
+    }
+
+    private Timer status(int status) {
+        int slot = status > 0 && status < byStatus.length() ? status : 0;
+        Timer timer = byStatus.get(slot);
+        if (timer == null) {
+            //a concurrent lookup may create the same timer, the registry hands both the same one
+            timer = registry.timer(REQUESTS, "Time from routing a request to the end of its response",
+                    "route", route, "status", Integer.toString(status));
+            byStatus.set(slot, timer);
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,130 @@
+package org.workspace7.vertx.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Records durations into a {@link LatencyHistogram} per time slice, so that quantiles describe the last
+ * {@code window} rather than the whole uptime, plus an all time count and sum.
+ * <p>
+ * Slices are rotated by whichever recorder first notices that a new one has started, without locking. Values recorded
+ * by others while that slice is being cleared may be lost, a handful per window at most.
+ *
+ * @author kameshs
+ */
+public class Timer {
+
+    private static final int SLICES = 4;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[SLICES];
+    private final AtomicLong[] epochs = new AtomicLong[SLICES];
+    private final long sliceNanos;
+    private final LongSupplier clock;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public Timer(long window, TimeUnit unit) {
+        this(window, unit, System::nanoTime);
+    }
+
+    Timer(long window, TimeUnit unit, LongSupplier clock) {
+        //one slice more than the window covers, the current one being only partly filled
+        this.sliceNanos = Math.max(1, unit.toNanos(window) / (SLICES - 1));
+        this.clock = clock;
+        long epoch = clock.getAsLong() / sliceNanos;
+        for (int i = 0; i < SLICES; i++) {
+            histograms[i] = new LatencyHistogram();
+            epochs[i] = new AtomicLong(epoch - (epoch % SLICES) + i);
+        }
+    }
+
+    public void record(long nanos) {
+        long epoch = clock.getAsLong() / sliceNanos;
+        int slice = (int) (epoch % SLICES);
+        long seen = epochs[slice].get();
+        if (seen != epoch && epochs[slice].compareAndSet(seen, epoch)) {
+            histograms[slice].reset();
+        }
+        histograms[slice].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        count.increment();
+        sumNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Records the time passed since {@code startNanos}, a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long epoch = clock.getAsLong() / sliceNanos;
+        long[] counts = LatencyHistogram.newCounts();
+        long windowCount = 0;
+        for (int i = 0; i < SLICES; i++) {
+            if (epochs[i].get() > epoch - SLICES) {
+                windowCount += histograms[i].addTo(counts);
+            }
+        }
+        return new Snapshot(counts, windowCount, count.sum(), sumNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * The state of a {@link Timer} at one point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long windowCount;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long windowCount, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.windowCount = windowCount;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return the duration at the quantile over the window, in nanoseconds
+         */
+        public long quantileNanos(double quantile) {
+            long micros = LatencyHistogram.valueAtQuantile(counts, windowCount, quantile);
+            return Math.min(TimeUnit.MICROSECONDS.toNanos(micros), maxNanos);
+        }
+
+        /**
+         * @return the number of durations in the window
+         */
+        public long windowCount() {
+            return windowCount;
+        }
+
+        /**
+         * @return the number of durations ever recorded
+         */
+        public long count() {
+            return count;
+        }
+
+        public long sumNanos() {
+            return sumNanos;
+        }
+
+        public long maxNanos() {
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.workspace7.vertx.pool;
+
+import com.mchange.v2.c3p0.C3P0Registry;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.mchange.v2.c3p0.PooledDataSource;
+import com.mchange.v2.resourcepool.TimeoutException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+
+/**
+ * A shared {@link JDBCClient} that gives up on a connection after {@code acquire_timeout} milliseconds instead of
+ * letting the request wait behind the pool, and counts how long acquisitions take.
+ * <p>
+ * The pool is sized with the c3p0 keys of the client config, {@code max_pool_size}, {@code min_pool_size},
+ * {@code initial_pool_size}, {@code max_idle_time}, and the statement cache with {@code max_statements} and
+ * {@code max_statements_per_connection}.
+ * <p>
+ * The data source is only created, and its first connections opened, when the pool is first asked for a
+ * connection, which can take longer than the acquire timeout. So the timeout only applies once the pool has handed
+ * out a connection, {@link #warmUp} does that ahead of the first request.
+ *
+ * @author kameshs
+ */
+public class ConnectionPool implements JDBCClient {
+
+    private static final Logger _logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final Vertx vertx;
+    private final JDBCClient jdbcClient;
+    private final String name;
+    private final long acquireTimeout;
+    private final PoolMetrics metrics;
+
+    private ConnectionPool(Vertx vertx, JDBCClient jdbcClient, String name, long acquireTimeout) {
+        this.vertx = vertx;
+        this.jdbcClient = jdbcClient;
+        this.name = name;
+        this.acquireTimeout = acquireTimeout;
+        LocalMap<String, PoolMetrics> pools = vertx.sharedData().getLocalMap("mantras.pools");
+        PoolMetrics shared = pools.putIfAbsent(name, new PoolMetrics());
+        this.metrics = shared == null ? pools.get(name) : shared;
+    }
+
+    public static ConnectionPool createShared(Vertx vertx, JsonObject config, String name) {
+        JsonObject poolConfig = config.copy().put("pool_name", name);
+        if (!poolConfig.containsKey("provider_class")) {
+            poolConfig.put("provider_class", MantraDataSourceProvider.class.getName());
+        }
+        return new ConnectionPool(vertx, JDBCClient.createShared(vertx, poolConfig, name), name,
+                poolConfig.getLong("acquire_timeout", 0L));
+    }
+
+    /**
+     * Starts the pool, with no deadline, unless it has already handed out a connection. Fails once c3p0 could not
+     * open a connection, which tells a database that is not there from one that is slow to start.
+     */
+    public void warmUp(Handler<AsyncResult<Void>> handler) {
+        if (metrics.warm()) {
+            handler.handle(Future.succeededFuture());
+            return;
+        }
+        getConnection(ar -> {
+            if (ar.succeeded()) {
+                ar.result().close(handler);
+                return;
+            }
+            Throwable acquisitionFailure = lastAcquisitionFailure();
+            if (acquisitionFailure == null && ar.cause().getCause() instanceof TimeoutException) {
+                //c3p0's own checkout timeout, while it is still opening the connections
+                warmUp(handler);
+            } else {
+                handler.handle(Future.failedFuture(acquisitionFailure != null ? acquisitionFailure : ar.cause()));
+            }
+        });
+    }
+
+    /**
+     * Fails with an {@link AcquireTimeoutException} when no connection could be had within the acquire timeout, a
+     * connection that turns up later is handed straight back to the pool. Until the pool is warm there is no
+     * timeout.
+     */
+    @Override
+    public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
+        new Acquisition(handler).start();
+        return this;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        jdbcClient.close(handler);
+    }
+
+    @Override
+    public void close() {
+        jdbcClient.close();
+    }
+
+    /**
+     * @return the acquisition counters along with c3p0's own view of the pool
+     */
+    public JsonObject stats() {
+        JsonObject stats = metrics.toJson()
+                .put("name", name)
+                .put("acquireTimeoutMillis", acquireTimeout);
+        PooledDataSource dataSource = C3P0Registry.pooledDataSourceByName(name);
+        if (dataSource != null) {
+            try {
+                stats.put("inUse", dataSource.getNumBusyConnectionsDefaultUser())
+                        .put("idle", dataSource.getNumIdleConnectionsDefaultUser())
+                        .put("size", dataSource.getNumConnectionsDefaultUser())
+                        .put("threadsAwaitingCheckout", dataSource.getNumThreadsAwaitingCheckoutDefaultUser())
+                        .put("cachedStatements", dataSource.getStatementCacheNumStatementsAllUsers());
+                if (dataSource instanceof ComboPooledDataSource) {
+                    ComboPooledDataSource combo = (ComboPooledDataSource) dataSource;
+                    stats.put("minPoolSize", combo.getMinPoolSize())
+                            .put("maxPoolSize", combo.getMaxPoolSize())
+                            .put("maxStatements", combo.getMaxStatements());
+                }
+            } catch (SQLException e) {
+                _logger.warn("Unable to read pool {} statistics", name, e);
+            }
+        }
+        return stats;
+    }
+
+    private Throwable lastAcquisitionFailure() {
+        PooledDataSource dataSource = C3P0Registry.pooledDataSourceByName(name);
+        try {
+            return dataSource == null ? null : dataSource.getLastAcquisitionFailureDefaultUser();
+        } catch (SQLException e) {
+            return e;
+        }
+    }
+
+    private class Acquisition implements Handler<AsyncResult<SQLConnection>> {
+
+        private final Handler<AsyncResult<SQLConnection>> handler;
+        private final long started = System.nanoTime();
+        private long timer = -1;
+        private boolean done;
+
+        Acquisition(Handler<AsyncResult<SQLConnection>> handler) {
+            this.handler = handler;
+        }
+
+        void start() {
+            metrics.waiting();
+            if (acquireTimeout > 0 && metrics.warm()) {
+                timer = vertx.setTimer(acquireTimeout, timerId -> {
+                    if (!done) {
+                        done = true;
+                        metrics.timedOut(System.nanoTime() - started);
+                        handler.handle(Future.failedFuture(new AcquireTimeoutException(name, acquireTimeout)));
+                    }
+                });
+            }
+            jdbcClient.getConnection(this);
+        }
+
+        @Override
+        public void handle(AsyncResult<SQLConnection> ar) {
+            if (done) {
+                if (ar.succeeded()) {
+                    ar.result().close();
+                }
+                return;
+            }
+            done = true;
+            if (timer != -1) {
+                vertx.cancelTimer(timer);
+            }
+            if (ar.succeeded()) {
+                metrics.warmed();
+                metrics.acquired(System.nanoTime() - started);
+            } else {
+                metrics.failed(System.nanoTime() - started);
+            }
+            handler.handle(ar);
+        }
+    }
+
+    /**
+     * No connection became free within the acquire timeout.
+     */
+    public static class AcquireTimeoutException extends SQLException {
+
+        private static final long serialVersionUID = 1L;
+
+        public AcquireTimeoutException(String pool, long timeoutMillis) {
+            super("No connection from pool " + pool + " within " + timeoutMillis + "ms");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.workspace7.vertx.pool;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.spi.DataSourceProvider;
+import io.vertx.ext.jdbc.spi.impl.C3P0DataSourceProvider;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * The default c3p0 provider plus the settings it does not read, {@code pool_name} names the data source so its
+ * live counters can be looked up and {@code acquire_timeout} bounds how long a thread blocks on checkout.
+ * <p>
+ * The blocking checkout is only a backstop given twice the timeout, {@link ConnectionPool} answers the caller
+ * first and hands back whatever connection the blocked thread ends up with.
+ *
+ * @author kameshs
+ */
+public class MantraDataSourceProvider implements DataSourceProvider {
+
+    private final C3P0DataSourceProvider delegate = new C3P0DataSourceProvider();
+
+    @Override
+    public int maximumPoolSize(DataSource dataSource, JsonObject config) throws SQLException {
+        return delegate.maximumPoolSize(dataSource, config);
+    }
+
+    @Override
+    public DataSource getDataSource(JsonObject config) throws SQLException {
+        ComboPooledDataSource dataSource = (ComboPooledDataSource) delegate.getDataSource(config);
+        String poolName = config.getString("pool_name");
+        if (poolName != null) {
+            dataSource.setDataSourceName(poolName);
+        }
+        Integer acquireTimeout = config.getInteger("acquire_timeout");
+        if (acquireTimeout != null && acquireTimeout > 0) {
+            dataSource.setCheckoutTimeout(acquireTimeout * 2);
+        }
+        return dataSource;
+    }
+
+    @Override
+    public void close(DataSource dataSource) throws SQLException {
+        delegate.close(dataSource);
+    }
+}
@@ -0,0 +1,89 @@
+package org.workspace7.vertx.pool;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Acquisition counters of one named pool, and whether it has handed out its first connection yet, shared by every
+ * {@link ConnectionPool} handle on it.
+ *
+ * @author kameshs
+ */
+class PoolMetrics implements Shareable {
+
+    private static final long[] BUCKETS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000};
+
+    private final AtomicLong waiting = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MILLIS.length + 1);
+    private volatile boolean warm;
+
+    boolean warm() {
+        return warm;
+    }
+
+    void warmed() {
+        warm = true;
+    }
+
+    void waiting() {
+        waiting.incrementAndGet();
+    }
+
+    void acquired(long nanos) {
+        waiting.decrementAndGet();
+        acquired.incrementAndGet();
+        record(nanos);
+    }
+
+    void failed(long nanos) {
+        waiting.decrementAndGet();
+        failed.incrementAndGet();
+        record(nanos);
+    }
+
+    void timedOut(long nanos) {
+        waiting.decrementAndGet();
+        timedOut.incrementAndGet();
+        record(nanos);
+    }
+
+    private void record(long nanos) {
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKETS_MILLIS.length && millis >= BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    JsonObject toJson() {
+        long attempts = acquired.get() + failed.get() + timedOut.get();
+        JsonObject histogram = new JsonObject();
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            histogram.put("lt" + BUCKETS_MILLIS[i], buckets.get(i));
+        }
+        histogram.put("ge" + BUCKETS_MILLIS[BUCKETS_MILLIS.length - 1], buckets.get(BUCKETS_MILLIS.length));
+        return new JsonObject()
+                .put("waiting", waiting.get())
+                .put("acquired", acquired.get())
+                .put("failed", failed.get())
+                .put("timedOut", timedOut.get())
+                .put("acquireMeanMillis", attempts == 0 ? 0.0 : totalNanos.get() / (double) attempts / 1_000_000)
+                .put("acquireMaxMillis", maxNanos.get() / 1_000_000.0)
+                .put("acquireMillis", histogram);
+    }
+}
@@ -0,0 +1,267 @@
+package org.workspace7.vertx.search;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.workspace7.vertx.Mantra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index over the text of the mantras, kept in memory next to the MANTRAS table so that finding a mantra
+ * by its content never scans the table. Terms are the lower cased runs of letters and digits, and the term dictionary
+ * is sorted so that the completions of a prefix are a range of it.
+ * <p>
+ * Every term of a query has to match, the last one also as a prefix when asked to, and the matches are ranked with
+ * BM25. Completions of the prefix count for less the longer they are than the prefix itself.
+ * <p>
+ * Thread safe: the repository instances of a node share one through {@link #shared(Vertx)}.
+ *
+ * @author kameshs
+ */
+public class MantraSearchIndex implements Shareable {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Comparator<Hit> RANK = Comparator.<Hit>comparingDouble(hit -> hit.score)
+            .thenComparing(hit -> -hit.id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    //term to the frequency of the term by mantra id
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private long totalLength;
+    private volatile boolean loaded;
+
+    /**
+     * @return the index every repository of this Vert.x instance maintains
+     */
+    public static MantraSearchIndex shared(Vertx vertx) {
+        LocalMap<String, MantraSearchIndex> indexes = vertx.sharedData().getLocalMap("mantras.search");
+        MantraSearchIndex index = indexes.get("index");
+        if (index == null) {
+            MantraSearchIndex created = new MantraSearchIndex();
+            index = indexes.putIfAbsent("index", created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds the mantra or replaces what was indexed for its id.
+     */
+    public void put(Mantra mantra) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> terms = terms(mantra.getMantra());
+        terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+
+        lock.writeLock().lock();
+        try {
+            unindex(mantra.getId());
+            documents.put(mantra.getId(), new Document(mantra, frequencies.keySet().toArray(new String[0]),
+                    terms.size()));
+            totalLength += terms.size();
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(mantra.getId(), frequency));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(List<Mantra> mantras) {
+        mantras.forEach(this::put);
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(List<Integer> ids) {
+        ids.forEach(this::remove);
+    }
+
+    /**
+     * @return whether the table has been read into the index, only the first repository of a node has to
+     */
+    public boolean loaded() {
+        return loaded;
+    }
+
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param prefix whether the last term of the query also matches the terms it is a prefix of
+     * @return up to {@code limit} mantras that have every term of the query, best match first
+     */
+    public List<Mantra> search(String query, int limit, boolean prefix) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(terms(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (documents.isEmpty()) {
+                return Collections.emptyList();
+            }
+            double averageLength = (double) totalLength / documents.size();
+            List<Map<Integer, Double>> scores = new ArrayList<>(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                Map<Integer, Double> termScores = prefix && i == terms.size() - 1
+                        ? prefixScores(term, averageLength) : termScores(term, 1.0, averageLength, new HashMap<>());
+                if (termScores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                scores.add(termScores);
+            }
+            //walk the rarest term's matches and look them up in the others
+            scores.sort(Comparator.comparingInt(Map::size));
+
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, RANK);
+            for (Map.Entry<Integer, Double> candidate : scores.get(0).entrySet()) {
+                double score = candidate.getValue();
+                for (int i = 1; i < scores.size() && score >= 0; i++) {
+                    Double termScore = scores.get(i).get(candidate.getKey());
+                    score = termScore == null ? -1 : score + termScore;
+                }
+                if (score >= 0) {
+                    top.add(new Hit(candidate.getKey(), score));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+
+            Mantra[] ranked = new Mantra[top.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = documents.get(top.poll().id).mantra;
+            }
+            List<Mantra> result = new ArrayList<>(ranked.length);
+            Collections.addAll(result, ranked);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the lower cased runs of letters and digits of the text, in order
+     */
+    static List<String> terms(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                term.append(Character.toLowerCase(c));
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    private Map<Integer, Double> prefixScores(String prefix, double averageLength) {
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+            termScores(term, (double) prefix.length() / term.length(), averageLength, scores);
+        }
+        return scores;
+    }
+
+    /**
+     * Scores the mantras that have the term into {@code scores}, keeping the better score of a mantra matched by an
+     * earlier completion of the same prefix.
+     */
+    private Map<Integer, Double> termScores(String term, double weight, double averageLength,
+                                            Map<Integer, Double> scores) {
+        Map<Integer, Integer> frequencies = postings.get(term);
+        if (frequencies == null) {
+            return scores;
+        }
+        int count = documents.size();
+        double idf = Math.log(1 + (count - frequencies.size() + 0.5) / (frequencies.size() + 0.5));
+        frequencies.forEach((id, frequency) -> {
+            double norm = K1 * (1 - B + B * documents.get(id).length / averageLength);
+            double score = weight * idf * frequency * (K1 + 1) / (frequency + norm);
+            scores.merge(id, score, Math::max);
+        });
+        return scores;
+    }
+
+    private void unindex(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            Map<Integer, Integer> frequencies = postings.get(term);
+            frequencies.remove(id);
+            if (frequencies.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static class Document {
+
+        private final Mantra mantra;
+        private final String[] terms;
+        private final int length;
+
+        private Document(Mantra mantra, String[] terms, int length) {
+            this.mantra = mantra;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    private static class Hit {
+
+        private final int id;
+        private final double score;
+
+        private Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.workspace7.vertx.shard;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraRepository;
+import org.workspace7.vertx.codec.MantraListCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sends the requests meant for the {@link MantraRepository} to the shards that own the mantras, as the
+ * {@link ShardRouter} of the node sees them.
+ * <p>
+ * Requests about one mantra go to its owner. Inserts first allocate their ids, then go to the owners of those ids.
+ * Bulk writes are split by owner and sent to all of them at once, each shard's part is all or nothing but the parts
+ * are not: a bulk write failing on one shard may have been applied on another, and the failure is the first one
+ * replied. Reads of the whole collection are scattered to every shard and gathered: pages are merged by id, which
+ * keeps streaming the collection a page at a time, the fingerprints are joined in node order and search results,
+ * whose scores are not comparable from one shard to the next, are interleaved best first.
+ * <p>
+ * Not thread safe, every verticle instance has its own.
+ *
+ * @author kameshs
+ */
+public class ShardClient {
+
+    /**
+     * Sends one request to one shard, replying on the caller's context.
+     */
+    @FunctionalInterface
+    public interface Transport {
+        void send(String address, String action, Object body, String codecName,
+                  Handler<AsyncResult<Object>> replyHandler);
+    }
+
+    private final ShardRouter router;
+
+    public ShardClient(ShardRouter router) {
+        this.router = router;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void request(String action, Object body, Transport transport, Handler<AsyncResult<Object>> replyHandler) {
+        switch (action) {
+            case MantraRepository.SELECT:
+            case MantraRepository.DELETE:
+                transport.send(router.addressOf((Integer) body), action, body, null, replyHandler);
+                break;
+            case MantraRepository.UPDATE:
+                transport.send(router.addressOf(((Mantra) body).getId()), action, body, null, replyHandler);
+                break;
+            case MantraRepository.INSERT:
+                insert((Mantra) body, transport, replyHandler);
+                break;
+            case MantraRepository.INSERT_ALL:
+                insertAll((List<Mantra>) body, transport, replyHandler);
+                break;
+            case MantraRepository.UPDATE_ALL:
+                List<Mantra> mantras = (List<Mantra>) body;
+                writeAll(action, mantras, i -> mantras.get(i).getId(), transport, replyHandler);
+                break;
+            case MantraRepository.DELETE_ALL:
+                deleteAll(((JsonArray) body).getList(), transport, replyHandler);
+                break;
+            case MantraRepository.PAGE:
+                int limit = ((JsonObject) body).getInteger("limit");
+                everyShard(action, body, transport,
+                        pages -> merge((List<List<Mantra>>) (List<?>) pages, limit), replyHandler);
+                break;
+            case MantraRepository.SEARCH:
+                int maxResults = ((JsonObject) body).getInteger("limit", 10);
+                everyShard(action, body, transport,
+                        results -> interleave((List<List<Mantra>>) (List<?>) results, maxResults), replyHandler);
+                break;
+            case MantraRepository.FINGERPRINT:
+                everyShard(action, body, transport,
+                        fingerprints -> String.join(".", (List<String>) (List<?>) fingerprints), replyHandler);
+                break;
+            default:
+                //the node's own shard, for what is about the node rather than the mantras
+                transport.send(ShardRouter.address(router.node()), action, body, null, replyHandler);
+        }
+    }
+
+    /**
+     * @return the first {@code limit} mantras of the pages, each sorted by id, sorted by id
+     */
+    public static List<Mantra> merge(List<List<Mantra>> pages, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, pages.size()),
+                (a, b) -> Integer.compare(pages.get(a[0]).get(a[1]).getId(), pages.get(b[0]).get(b[1]).getId()));
+        for (int page = 0; page < pages.size(); page++) {
+            if (!pages.get(page).isEmpty()) {
+                heads.add(new int[]{page, 0});
+            }
+        }
+        List<Mantra> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Mantra> page = pages.get(head[0]);
+            merged.add(page.get(head[1]));
+            if (++head[1] < page.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return up to {@code limit} of the results, the best of every list first, then the second best and so on
+     */
+    public static List<Mantra> interleave(List<List<Mantra>> results, int limit) {
+        List<Mantra> interleaved = new ArrayList<>(limit);
+        for (int rank = 0; interleaved.size() < limit; rank++) {
+            boolean more = false;
+            for (List<Mantra> result : results) {
+                if (rank < result.size() && interleaved.size() < limit) {
+                    interleaved.add(result.get(rank));
+                    more = true;
+                }
+            }
+            if (!more) {
+                break;
+            }
+        }
+        return interleaved;
+    }
+
+    private void insert(Mantra mantra, Transport transport, Handler<AsyncResult<Object>> replyHandler) {
+        router.allocate(1, id -> {
+            if (id.failed()) {
+                replyHandler.handle(Future.failedFuture(id.cause()));
+            } else {
+                transport.send(router.addressOf(id.result()), MantraRepository.INSERT,
+                        new Mantra(id.result(), mantra.getMantra()), null, replyHandler);
+            }
+        });
+    }
+
+    private void insertAll(List<Mantra> mantras, Transport transport, Handler<AsyncResult<Object>> replyHandler) {
+        if (mantras.isEmpty()) {
+            replyHandler.handle(Future.succeededFuture(Collections.emptyList()));
+            return;
+        }
+        router.allocate(mantras.size(), first -> {
+            if (first.failed()) {
+                replyHandler.handle(Future.failedFuture(first.cause()));
+                return;
+            }
+            List<Mantra> identified = new ArrayList<>(mantras.size());
+            for (int i = 0; i < mantras.size(); i++) {
+                identified.add(new Mantra(first.result() + i, mantras.get(i).getMantra()));
+            }
+            writeAll(MantraRepository.INSERT_ALL, identified, i -> first.result() + i, transport, replyHandler);
+        });
+    }
+
+    /**
+     * Splits the mantras by owner and replies with what the shards replied, in the order of the mantras.
+     */
+    private void writeAll(String action, List<Mantra> mantras, IntUnaryOperator idOf, Transport transport,
+                          Handler<AsyncResult<Object>> replyHandler) {
+        Map<String, List<Integer>> byOwner = byOwner(mantras.size(), idOf);
+        List<String> addresses = new ArrayList<>(byOwner.keySet());
+        List<Object> bodies = new ArrayList<>(addresses.size());
+        for (List<Integer> indexes : byOwner.values()) {
+            List<Mantra> part = new ArrayList<>(indexes.size());
+            indexes.forEach(i -> part.add(mantras.get(i)));
+            bodies.add(part);
+        }
+        scatter(addresses, action, bodies, MantraListCodec.NAME, transport, replies -> {
+            if (replies.failed()) {
+                replyHandler.handle(Future.failedFuture(replies.cause()));
+                return;
+            }
+            Mantra[] written = new Mantra[mantras.size()];
+            int part = 0;
+            for (List<Integer> indexes : byOwner.values()) {
+                @SuppressWarnings("unchecked")
+                List<Mantra> reply = (List<Mantra>) replies.result().get(part++);
+                for (int i = 0; i < indexes.size(); i++) {
+                    written[indexes.get(i)] = reply.get(i);
+                }
+            }
+            replyHandler.handle(Future.succeededFuture(Arrays.asList(written)));
+        });
+    }
+
+    private void deleteAll(List<Integer> ids, Transport transport, Handler<AsyncResult<Object>> replyHandler) {
+        Map<String, List<Integer>> byOwner = byOwner(ids.size(), ids::get);
+        List<Object> bodies = new ArrayList<>(byOwner.size());
+        for (List<Integer> indexes : byOwner.values()) {
+            JsonArray part = new JsonArray();
+            indexes.forEach(i -> part.add(ids.get(i)));
+            bodies.add(part);
+        }
+        scatter(new ArrayList<>(byOwner.keySet()), MantraRepository.DELETE_ALL, bodies, null, transport, replies -> {
+            if (replies.failed()) {
+                replyHandler.handle(Future.failedFuture(replies.cause()));
+            } else {
+                replyHandler.handle(Future.succeededFuture(
+                        replies.result().stream().mapToInt(deleted -> (Integer) deleted).sum()));
+            }
+        });
+    }
+
+    private void everyShard(String action, Object body, Transport transport,
+                            Function<List<Object>, Object> gather,
+                            Handler<AsyncResult<Object>> replyHandler) {
+        List<String> addresses = new ArrayList<>();
+        router.ring().nodes().forEach(node -> addresses.add(ShardRouter.address(node)));
+        scatter(addresses, action, Collections.nCopies(addresses.size(), body), null, transport, replies ->
+                replyHandler.handle(replies.map(gather)));
+    }
+
+    /**
+     * @return the indexes of the ids grouped by the address of their owner
+     */
+    private Map<String, List<Integer>> byOwner(int size, IntUnaryOperator idOf) {
+        ShardRing ring = router.ring();
+        Map<String, List<Integer>> byOwner = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            byOwner.computeIfAbsent(ShardRouter.address(ring.owner(idOf.applyAsInt(i))), owner -> new ArrayList<>())
+                    .add(i);
+        }
+        return byOwner;
+    }
+
+    /**
+     * Sends each body to its address at once and replies with all the replies in order, or with the first failure.
+     */
+    private static void scatter(List<String> addresses, String action, List<Object> bodies, String codecName,
+                                Transport transport, Handler<AsyncResult<List<Object>>> handler) {
+        if (addresses.isEmpty()) {
+            handler.handle(Future.succeededFuture(Collections.emptyList()));
+            return;
+        }
+        Object[] replies = new Object[addresses.size()];
+        int[] pending = {addresses.size()};
+        for (int i = 0; i < addresses.size(); i++) {
+            final int part = i;
+            transport.send(addresses.get(i), action, bodies.get(i), codecName, reply -> {
+                if (pending[0] <= 0) {
+                    return;
+                }
+                if (reply.failed()) {
+                    pending[0] = 0;
+                    handler.handle(Future.failedFuture(reply.cause()));
+                    return;
+                }
+                replies[part] = reply.result();
+                if (--pending[0] == 0) {
+                    handler.handle(Future.succeededFuture(Arrays.asList(replies)));
+                }
+            });
+        }
+    }
+}
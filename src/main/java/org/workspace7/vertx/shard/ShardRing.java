@@ -0,0 +1,68 @@
+package org.workspace7.vertx.shard;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing of mantra ids onto the nodes of the cluster. Ids are taken in ranges of {@code rangeSize}
+ * consecutive ids, each range is hashed onto a ring where every node has {@code virtualNodes} points, and the node
+ * of the first point at or after the hash owns the range. A node joining or leaving moves only the ranges between
+ * its points and the ones before them, about one in so many nodes, and keeping ranges together keeps the pages of
+ * each shard long.
+ * <p>
+ * Immutable, the hashes depend on the node names and ids only so every node with the same members agrees.
+ *
+ * @author kameshs
+ */
+public final class ShardRing {
+
+    private final Set<String> nodes;
+    private final int rangeSize;
+    private final NavigableMap<Integer, String> points = new TreeMap<>();
+
+    public ShardRing(Collection<String> nodes, int virtualNodes, int rangeSize) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        this.rangeSize = Math.max(1, rangeSize);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                //a collision goes to the node that sorts first, which every node agrees on
+                points.putIfAbsent(mix((node + "#" + i).hashCode()), node);
+            }
+        }
+    }
+
+    /**
+     * @return the node owning the id, null when the ring has no nodes
+     */
+    public String owner(int id) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, String> point = points.ceilingEntry(mix(Math.floorDiv(id, rangeSize)));
+        return (point == null ? points.firstEntry() : point).getValue();
+    }
+
+    /**
+     * @return the nodes, sorted
+     */
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * The murmur3 finalizer, so that consecutive ranges land all around the ring.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,315 @@
+package org.workspace7.vertx.shard;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.workspace7.vertx.MantraRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Knows which node's repository owns which mantras when {@code shard.enabled}: every node is a shard, reached at
+ * {@link #address(String)}, and the {@link ShardRing} of the nodes alive says which one owns an id.
+ * <p>
+ * Nodes find each other over the event bus. Each one publishes a heartbeat at {@link #ADDRESS} every
+ * {@code shard.heartbeat.ms}, answers the first heartbeat of a node it did not know with one of its own, and drops
+ * the nodes it has not heard from for {@code shard.expiry.ms} or that said they were leaving. Whenever the nodes
+ * change so does the ring, and the repository running the membership is told so that it hands the mantras it no
+ * longer owns over to their new owners.
+ * <p>
+ * Ids come from a cluster wide counter, so any node can allocate them and send the insert to the owner. The counter
+ * lives in the memory of the cluster, every shard raises it to the highest id it holds as it starts.
+ * <p>
+ * Thread safe: the verticles of a node share one through {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class ShardRouter implements Shareable {
+
+    public static final String ADDRESS = "mantras.shards";
+
+    private static final Logger _logger = LoggerFactory.getLogger(ShardRouter.class);
+    private static final String COUNTER = "mantras.ids";
+
+    private final Vertx vertx;
+    private final String node;
+    private final int virtualNodes;
+    private final int rangeSize;
+    private final long heartbeatMillis;
+    private final long expiryMillis;
+
+    //when each node was last heard from
+    private final Map<String, Long> members = new HashMap<>();
+    private volatile ShardRing ring;
+    private long ringChanges;
+    private final LongAdder handedOver = new LongAdder();
+
+    private boolean joined;
+    private MessageConsumer<JsonObject> consumer;
+    private long heartbeatTimer = -1;
+    private Handler<ShardRing> onChange;
+
+    public ShardRouter(Vertx vertx, String node, int virtualNodes, int rangeSize, long heartbeatMillis,
+                       long expiryMillis) {
+        this.vertx = vertx;
+        this.node = node;
+        this.virtualNodes = virtualNodes;
+        this.rangeSize = rangeSize;
+        this.heartbeatMillis = heartbeatMillis;
+        this.expiryMillis = expiryMillis;
+        members.put(node, Long.MAX_VALUE);
+        ring = new ShardRing(members.keySet(), virtualNodes, rangeSize);
+    }
+
+    /**
+     * @return the router of this Vert.x instance, named {@code shard.node} or else at random
+     */
+    public static ShardRouter shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, ShardRouter> routers = vertx.sharedData().getLocalMap("mantras.shards");
+        ShardRouter router = routers.get("router");
+        if (router == null) {
+            ShardRouter created = new ShardRouter(vertx,
+                    config.getString("shard.node", UUID.randomUUID().toString()),
+                    config.getInteger("shard.virtual.nodes", 64),
+                    config.getInteger("shard.range.size", 256),
+                    config.getLong("shard.heartbeat.ms", 1000L),
+                    config.getLong("shard.expiry.ms", 5000L));
+            router = routers.putIfAbsent("router", created);
+            if (router == null) {
+                router = created;
+            }
+        }
+        return router;
+    }
+
+    /**
+     * @return the event bus address the repository of the node listens at for the requests of the whole cluster
+     */
+    public static String address(String node) {
+        return MantraRepository.ADDRESS + "." + node;
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public ShardRing ring() {
+        return ring;
+    }
+
+    /**
+     * @return the address of the repository owning the id
+     */
+    public String addressOf(int id) {
+        return address(ring.owner(id));
+    }
+
+    /**
+     * Starts taking part in the membership on the caller's context, unless another caller of this node already
+     * does.
+     *
+     * @param onChange called on the caller's context with every new ring
+     * @return whether the caller runs the membership
+     */
+    public synchronized boolean join(Handler<ShardRing> onChange) {
+        if (joined) {
+            return false;
+        }
+        joined = true;
+        this.onChange = onChange;
+        consumer = vertx.eventBus().consumer(ADDRESS, message -> {
+            JsonObject body = message.body();
+            String from = body.getString("node");
+            boolean changed;
+            if ("leave".equals(body.getString("type"))) {
+                changed = left(from);
+            } else {
+                changed = heard(from, System.currentTimeMillis());
+                if (changed) {
+                    //so that a joining node does not wait a whole period to know of this one
+                    heartbeat();
+                }
+            }
+            if (changed) {
+                changed();
+            }
+        });
+        heartbeatTimer = vertx.setPeriodic(heartbeatMillis, timerId -> {
+            heartbeat();
+            if (expire(System.currentTimeMillis())) {
+                changed();
+            }
+        });
+        consumer.completionHandler(registered -> heartbeat());
+        return true;
+    }
+
+    /**
+     * Tells the other nodes this one is leaving and stops taking part in the membership. The ring no longer has
+     * this node from then on, for its mantras to be handed over to the others.
+     */
+    public synchronized void leave() {
+        if (!joined) {
+            return;
+        }
+        joined = false;
+        vertx.cancelTimer(heartbeatTimer);
+        consumer.unregister();
+        vertx.eventBus().publish(ADDRESS, new JsonObject().put("node", node).put("type", "leave"));
+        members.remove(node);
+        rebuild();
+    }
+
+    /**
+     * Allocates consecutive ids from the cluster wide counter.
+     *
+     * @param handler given the first of the ids
+     */
+    public void allocate(int count, Handler<AsyncResult<Integer>> handler) {
+        vertx.sharedData().getCounter(COUNTER, counter -> {
+            if (counter.failed()) {
+                handler.handle(Future.failedFuture(counter.cause()));
+                return;
+            }
+            counter.result().addAndGet(count, last -> {
+                if (last.failed()) {
+                    handler.handle(Future.failedFuture(last.cause()));
+                } else if (last.result() > Integer.MAX_VALUE) {
+                    handler.handle(Future.failedFuture(new IllegalStateException("Mantra ids exhausted")));
+                } else {
+                    handler.handle(Future.succeededFuture((int) (last.result() - count + 1)));
+                }
+            });
+        });
+    }
+
+    /**
+     * Raises the cluster wide counter to at least {@code maxId}, so that no id up to it is allocated again.
+     */
+    public void reserve(int maxId, Handler<AsyncResult<Void>> handler) {
+        vertx.sharedData().getCounter(COUNTER, counter -> {
+            if (counter.failed()) {
+                handler.handle(Future.failedFuture(counter.cause()));
+            } else {
+                raise(counter.result(), maxId, handler);
+            }
+        });
+    }
+
+    /**
+     * Claims the first {@code count} ids when none was allocated yet, for the mantras every cluster starts with.
+     *
+     * @param handler given whether the caller got them
+     */
+    public void claimFirst(int count, Handler<AsyncResult<Boolean>> handler) {
+        vertx.sharedData().getCounter(COUNTER, counter -> {
+            if (counter.failed()) {
+                handler.handle(Future.failedFuture(counter.cause()));
+            } else {
+                counter.result().compareAndSet(0, count, handler);
+            }
+        });
+    }
+
+    public void recordHandover(int mantras) {
+        handedOver.add(mantras);
+    }
+
+    /**
+     * @return the number of mantras this node handed over to other shards
+     */
+    public long handedOver() {
+        return handedOver.sum();
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("node", node)
+                .put("nodes", new JsonArray(new ArrayList<>(ring.nodes())))
+                .put("ringChanges", ringChanges)
+                .put("handedOver", handedOver.sum())
+                .put("rangeSize", rangeSize)
+                .put("virtualNodes", virtualNodes);
+    }
+
+    /**
+     * @return whether the node is new and the ring changed
+     */
+    synchronized boolean heard(String from, long now) {
+        if (from.equals(node)) {
+            return false;
+        }
+        return members.put(from, now) == null && rebuild();
+    }
+
+    synchronized boolean left(String from) {
+        return !from.equals(node) && members.remove(from) != null && rebuild();
+    }
+
+    /**
+     * Drops the nodes not heard from for {@code shard.expiry.ms}.
+     */
+    synchronized boolean expire(long now) {
+        boolean expired = false;
+        for (Iterator<Map.Entry<String, Long>> it = members.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> member = it.next();
+            if (now - member.getValue() > expiryMillis) {
+                _logger.warn("Shard {} not heard from for {}ms, dropping it", member.getKey(), expiryMillis);
+                it.remove();
+                expired = true;
+            }
+        }
+        return expired && rebuild();
+    }
+
+    private boolean rebuild() {
+        ring = new ShardRing(members.keySet(), virtualNodes, rangeSize);
+        ringChanges++;
+        _logger.info("Shard {} sees nodes {}", node, ring.nodes());
+        return true;
+    }
+
+    private void changed() {
+        if (onChange != null) {
+            onChange.handle(ring);
+        }
+    }
+
+    private void heartbeat() {
+        vertx.eventBus().publish(ADDRESS, new JsonObject().put("node", node).put("type", "heartbeat"));
+    }
+
+    private static void raise(Counter counter, long to, Handler<AsyncResult<Void>> handler) {
+        counter.get(current -> {
+            if (current.failed()) {
+                handler.handle(Future.failedFuture(current.cause()));
+            } else if (current.result() >= to) {
+                handler.handle(Future.succeededFuture());
+            } else {
+                counter.compareAndSet(current.result(), to, set -> {
+                    if (set.failed()) {
+                        handler.handle(Future.failedFuture(set.cause()));
+                    } else if (set.result()) {
+                        handler.handle(Future.succeededFuture());
+                    } else {
+                        raise(counter, to, handler);
+                    }
+                });
+            }
+        });
+    }
+}
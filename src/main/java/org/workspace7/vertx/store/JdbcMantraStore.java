@@ -0,0 +1,220 @@
+package org.workspace7.vertx.store;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraBatch;
+import org.workspace7.vertx.WriteCoalescer;
+import org.workspace7.vertx.pool.ConnectionPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The MANTRAS table, through the node's shared {@link ConnectionPool}. Single rows go through the async client,
+ * bulk writes run as one JDBC batch transaction off the event loop, and single writes are group committed by a
+ * {@link WriteCoalescer} when {@code write.coalesce.enabled}.
+ * <p>
+ * Not thread safe, every repository instance has its own.
+ *
+ * @author kameshs
+ */
+public class JdbcMantraStore implements MantraStore {
+
+    private final Vertx vertx;
+    private final ConnectionPool jdbcClient;
+    private final int bulkBatchSize;
+    private WriteCoalescer writeCoalescer;
+
+    public JdbcMantraStore(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.jdbcClient = ConnectionPool.createShared(vertx, config, "My-Mantras-Collection");
+        this.bulkBatchSize = config.getInteger("bulk.batch.size", 1000);
+        if (config.getBoolean("write.coalesce.enabled", false)) {
+            writeCoalescer = new WriteCoalescer(vertx, jdbcClient,
+                    config.getLong("write.coalesce.max.delay.ms", 2L),
+                    config.getInteger("write.coalesce.max.batch", 128));
+        }
+    }
+
+    @Override
+    public void open(Handler<AsyncResult<Void>> handler) {
+        //the pool starts with no deadline, so that a slow start does not fail the deployment
+        jdbcClient.warmUp(warmed -> {
+            if (warmed.failed()) {
+                handler.handle(Future.failedFuture(new UnavailableException(warmed.cause())));
+                return;
+            }
+            withConnection(handler, sqlConnection -> sqlConnection.execute(
+                    "CREATE TABLE IF NOT EXISTS MANTRAS (id INTEGER IDENTITY, mantra varchar(200));"
+                            + "ALTER TABLE MANTRAS ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+                    ar -> {
+                        sqlConnection.close();
+                        handler.handle(ar);
+                    }));
+        });
+    }
+
+    @Override
+    public void select(int id, Handler<AsyncResult<Mantra>> handler) {
+        withConnection(handler, sqlConnection -> sqlConnection.queryWithParams("SELECT * FROM MANTRAS where id=?",
+                new JsonArray().add(id),
+                (ar) -> {
+                    sqlConnection.close();
+                    if (ar.failed()) {
+                        handler.handle(Future.failedFuture(ar.cause()));
+                    } else {
+                        ResultSet result = ar.result();
+                        if (result.getNumRows() >= 1) {
+                            handler.handle(Future.succeededFuture(new Mantra(result.getRows().get(0))));
+                        } else {
+                            handler.handle(Future.failedFuture(
+                                    new MantraBatch.MantrasNotFoundException(Collections.singletonList(id))));
+                        }
+                    }
+                }));
+    }
+
+    @Override
+    public void page(int after, int limit, Handler<AsyncResult<List<Mantra>>> handler) {
+        withConnection(handler, sqlConnection -> sqlConnection.queryWithParams(
+                "SELECT * FROM MANTRAS WHERE id > ? ORDER BY id LIMIT ?",
+                new JsonArray().add(after).add(limit),
+                (ar) -> {
+                    sqlConnection.close();
+                    if (ar.failed()) {
+                        handler.handle(Future.failedFuture(ar.cause()));
+                    } else {
+                        handler.handle(Future.succeededFuture(
+                                ar.result().getRows().stream().map(Mantra::new).collect(Collectors.toList())));
+                    }
+                }));
+    }
+
+    @Override
+    public void insert(Mantra mantra, Handler<AsyncResult<Mantra>> handler) {
+        if (writeCoalescer != null) {
+            writeCoalescer.insert(mantra, handler);
+            return;
+        }
+        withConnection(handler, sqlConnection -> sqlConnection.updateWithParams(
+                "INSERT INTO MANTRAS(mantra) VALUES(?)",
+                new JsonArray().add(mantra.getMantra()),
+                (ar) -> {
+                    sqlConnection.close();
+                    if (ar.failed()) {
+                        handler.handle(Future.failedFuture(ar.cause()));
+                    } else {
+                        handler.handle(Future.succeededFuture(
+                                new Mantra(ar.result().getKeys().getInteger(0), mantra.getMantra())));
+                    }
+                }));
+    }
+
+    @Override
+    public void update(Mantra mantra, Handler<AsyncResult<Mantra>> handler) {
+        if (writeCoalescer != null) {
+            writeCoalescer.update(mantra, handler);
+            return;
+        }
+        bulk(connection -> MantraBatch.updateAll(connection, Collections.singletonList(mantra), 1).get(0), handler);
+    }
+
+    @Override
+    public void delete(int id, Handler<AsyncResult<Void>> handler) {
+        withConnection(handler, sqlConnection -> sqlConnection.updateWithParams("DELETE FROM MANTRAS WHERE id=?",
+                new JsonArray().add(id),
+                (ar) -> {
+                    sqlConnection.close();
+                    handler.handle(ar.failed() ? Future.failedFuture(ar.cause()) : Future.succeededFuture());
+                }));
+    }
+
+    @Override
+    public void insertAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        bulk(connection -> MantraBatch.insertAll(connection, mantras, bulkBatchSize), handler);
+    }
+
+    @Override
+    public void updateAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        bulk(connection -> MantraBatch.updateAll(connection, mantras, bulkBatchSize), handler);
+    }
+
+    @Override
+    public void deleteAll(List<Integer> ids, Handler<AsyncResult<Integer>> handler) {
+        bulk(connection -> MantraBatch.deleteAll(connection, ids, bulkBatchSize), handler);
+    }
+
+    @Override
+    public void putAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        bulk(connection -> MantraBatch.putAll(connection, mantras, bulkBatchSize), handler);
+    }
+
+    /**
+     * Identity columns are never reused and every update bumps a version, so the row count, the highest id and the
+     * sum of the versions together change with any write. It costs one aggregate scan, no row leaves the database.
+     */
+    @Override
+    public void fingerprint(Handler<AsyncResult<String>> handler) {
+        withConnection(handler, sqlConnection -> sqlConnection.query(
+                "SELECT COUNT(*), COALESCE(MAX(id), 0), COALESCE(SUM(version), 0) FROM MANTRAS",
+                (ar) -> {
+                    sqlConnection.close();
+                    if (ar.failed()) {
+                        handler.handle(Future.failedFuture(ar.cause()));
+                    } else {
+                        JsonArray row = ar.result().getResults().get(0);
+                        handler.handle(Future.succeededFuture(row.getValue(0) + "-" + row.getValue(1) + "-"
+                                + row.getValue(2)));
+                    }
+                }));
+    }
+
+    @Override
+    public JsonObject stats() {
+        return jdbcClient.stats();
+    }
+
+    @Override
+    public void close() {
+        jdbcClient.close();
+    }
+
+    private <T> void withConnection(Handler<AsyncResult<T>> handler, Handler<SQLConnection> work) {
+        jdbcClient.getConnection(ar -> {
+            if (ar.failed()) {
+                //the caller is better off told to come back later than kept waiting behind the pool
+                handler.handle(Future.failedFuture(new UnavailableException(ar.cause())));
+            } else {
+                work.handle(ar.result());
+            }
+        });
+    }
+
+    /**
+     * Runs the batch work as one transaction on a pooled connection, off the event loop.
+     */
+    private <T> void bulk(MantraBatch.Work<T> work, Handler<AsyncResult<T>> handler) {
+        withConnection(handler, sqlConnection ->
+                vertx.<T>executeBlocking(future -> {
+                    try {
+                        Connection connection = sqlConnection.unwrap();
+                        future.complete(MantraBatch.inTransaction(connection, work));
+                    } catch (SQLException e) {
+                        future.fail(e);
+                    }
+                }, false, result -> {
+                    sqlConnection.close();
+                    handler.handle(result);
+                }));
+    }
+}
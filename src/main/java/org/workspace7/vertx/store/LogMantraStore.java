@@ -0,0 +1,595 @@
+package org.workspace7.vertx.store;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraBatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Mantras in an append only file that is memory mapped, with an {@link OffHeapIndex} from id to the latest entry of
+ * each mantra. Lookups read straight from the mapping, so neither the data nor the index is on the heap, and opening
+ * the store maps and replays the file instead of running any SQL.
+ * <p>
+ * The file is an 8 byte magic number followed by frames of {@code [int length][int crc32][entries]}, an entry being
+ * {@code [byte put or delete][int id][long version][int text length][utf-8 text]}. A write appends one frame, so a
+ * bulk write is all or nothing, and the length goes in last. On open the frames are replayed up to the first one
+ * whose length or checksum does not hold, the torn end of a crash, and everything after it is wiped.
+ * <p>
+ * Superseded entries are left behind until a compaction, checked for every {@code store.log.compact.interval.ms},
+ * rewrites the live entries in id order to a new file and moves it over the old one, once the garbage reaches
+ * {@code store.log.compact.ratio} of the live data. The delete of the highest id ever given out is kept when that
+ * mantra is gone, so that replaying the compacted file never hands the id out again. Readers wait for a compaction,
+ * writers for each other.
+ * <p>
+ * Writes reach the page cache only, so they survive the process crashing but not the machine unless
+ * {@code store.log.sync} forces each one to disk. The file is one mapping, so it is limited to 2GB, and it belongs to
+ * the one process that maps it: the repository instances of a node share the store through {@link #shared}.
+ *
+ * @author kameshs
+ */
+public class LogMantraStore implements MantraStore, Shareable {
+
+    private static final Logger _logger = LoggerFactory.getLogger(LogMantraStore.class);
+
+    private static final long MAGIC = 0x4d414e5452415331L;
+    private static final int HEADER = 8;
+    private static final int FRAME_HEADER = 8;
+    private static final int ENTRY_HEADER = 17;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //frames written by a compaction are kept small so a torn one loses little
+    private static final int COMPACTED_FRAME = 64 * 1024;
+
+    private final Vertx vertx;
+    private final Path path;
+    private final int initialSize;
+    private final boolean sync;
+    private final double compactRatio;
+    private final long compactMinBytes;
+    private final long compactInterval;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int end;
+    private OffHeapIndex index;
+    private BitSet live;
+    private int maxId;
+    private long versionSum;
+    private long liveBytes;
+    private long compactions;
+    private long compactTimer = -1;
+    private int users;
+
+    LogMantraStore(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.path = Paths.get(config.getString("store.log.path", "mantras.log")).toAbsolutePath();
+        this.initialSize = config.getInteger("store.log.initial.size", 16 * 1024 * 1024);
+        this.sync = config.getBoolean("store.log.sync", false);
+        this.compactRatio = config.getDouble("store.log.compact.ratio", 1.0);
+        this.compactMinBytes = config.getLong("store.log.compact.min.bytes", 1024L * 1024);
+        this.compactInterval = config.getLong("store.log.compact.interval.ms", 60000L);
+    }
+
+    /**
+     * @return the store of the file in {@code store.log.path} for this Vert.x instance, each call to be matched by a
+     * {@link #close()}
+     */
+    public static LogMantraStore shared(Vertx vertx, JsonObject config) {
+        synchronized (LogMantraStore.class) {
+            LocalMap<String, LogMantraStore> stores = vertx.sharedData().getLocalMap("mantras.store");
+            String key = Paths.get(config.getString("store.log.path", "mantras.log")).toAbsolutePath().toString();
+            LogMantraStore store = stores.get(key);
+            if (store == null) {
+                store = new LogMantraStore(vertx, config);
+                stores.put(key, store);
+            }
+            store.users++;
+            return store;
+        }
+    }
+
+    @Override
+    public void open(Handler<AsyncResult<Void>> handler) {
+        lock.writeLock().lock();
+        try {
+            if (channel == null) {
+                recover();
+                if (compactInterval > 0) {
+                    compactTimer = vertx.setPeriodic(compactInterval, timerId -> vertx.executeBlocking(future -> {
+                        compactIfNeeded();
+                        future.complete();
+                    }, false, null));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            _logger.error("Error opening mantra log {}", path, e);
+            handler.handle(Future.failedFuture(e));
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        handler.handle(Future.succeededFuture());
+    }
+
+    @Override
+    public void select(int id, Handler<AsyncResult<Mantra>> handler) {
+        Mantra mantra;
+        lock.readLock().lock();
+        try {
+            long offset = index.get(id);
+            mantra = offset < 0 ? null : read((int) offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+        handler.handle(mantra == null
+                ? Future.failedFuture(new MantraBatch.MantrasNotFoundException(Collections.singletonList(id)))
+                : Future.succeededFuture(mantra));
+    }
+
+    @Override
+    public void page(int after, int limit, Handler<AsyncResult<List<Mantra>>> handler) {
+        List<Mantra> mantras = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            for (int id = live.nextSetBit(Math.max(0, after + 1)); id >= 0 && mantras.size() < limit;
+                 id = id == Integer.MAX_VALUE ? -1 : live.nextSetBit(id + 1)) {
+                mantras.add(read((int) index.get(id)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        handler.handle(Future.succeededFuture(mantras));
+    }
+
+    @Override
+    public void insert(Mantra mantra, Handler<AsyncResult<Mantra>> handler) {
+        insertAll(Collections.singletonList(mantra), inserted -> handler.handle(inserted.map(list -> list.get(0))));
+    }
+
+    @Override
+    public void update(Mantra mantra, Handler<AsyncResult<Mantra>> handler) {
+        updateAll(Collections.singletonList(mantra), updated -> handler.handle(updated.map(list -> list.get(0))));
+    }
+
+    @Override
+    public void delete(int id, Handler<AsyncResult<Void>> handler) {
+        deleteAll(Collections.singletonList(id), deleted -> handler.handle(deleted.map((Void) null)));
+    }
+
+    @Override
+    public void insertAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        write(handler, () -> {
+            List<Mantra> inserted = new ArrayList<>(mantras.size());
+            for (Mantra mantra : mantras) {
+                inserted.add(new Mantra(maxId + inserted.size() + 1, mantra.getMantra(), 0));
+            }
+            append(inserted, Collections.emptyList());
+            return inserted;
+        });
+    }
+
+    @Override
+    public void updateAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        write(handler, () -> {
+            List<Integer> missing = new ArrayList<>();
+            Map<Integer, Long> versions = new HashMap<>();
+            List<Mantra> updated = new ArrayList<>(mantras.size());
+            for (Mantra mantra : mantras) {
+                long offset = index.get(mantra.getId());
+                if (offset < 0) {
+                    missing.add(mantra.getId());
+                    continue;
+                }
+                //a mantra updated more than once in the batch gets one version per update
+                long version = versions.getOrDefault(mantra.getId(), map.getLong((int) offset + 5)) + 1;
+                versions.put(mantra.getId(), version);
+                updated.add(new Mantra(mantra.getId(), mantra.getMantra(), version));
+            }
+            if (!missing.isEmpty()) {
+                throw new MantraBatch.MantrasNotFoundException(missing);
+            }
+            append(updated, Collections.emptyList());
+            return updated;
+        });
+    }
+
+    @Override
+    public void deleteAll(List<Integer> ids, Handler<AsyncResult<Integer>> handler) {
+        write(handler, () -> {
+            List<Integer> deleted = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                if (index.get(id) >= 0 && !deleted.contains(id)) {
+                    deleted.add(id);
+                }
+            }
+            if (!deleted.isEmpty()) {
+                append(Collections.emptyList(), deleted);
+            }
+            return deleted.size();
+        });
+    }
+
+    @Override
+    public void putAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler) {
+        write(handler, () -> {
+            List<Mantra> stored = new ArrayList<>(mantras.size());
+            for (Mantra mantra : mantras) {
+                if (mantra.getId() < 0) {
+                    throw new IllegalArgumentException("Invalid mantra id " + mantra.getId());
+                }
+                long offset = index.get(mantra.getId());
+                if (offset < 0 || map.getLong((int) offset + 5) <= mantra.getVersion()) {
+                    stored.add(mantra);
+                }
+            }
+            if (!stored.isEmpty()) {
+                append(stored, Collections.emptyList());
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Ids are never reused and every update bumps a version, as with the table.
+     */
+    @Override
+    public void fingerprint(Handler<AsyncResult<String>> handler) {
+        String fingerprint;
+        lock.readLock().lock();
+        try {
+            fingerprint = index.size() + "-" + maxId + "-" + versionSum;
+        } finally {
+            lock.readLock().unlock();
+        }
+        handler.handle(Future.succeededFuture(fingerprint));
+    }
+
+    @Override
+    public JsonObject stats() {
+        lock.readLock().lock();
+        try {
+            return new JsonObject()
+                    .put("engine", "log")
+                    .put("path", path.toString())
+                    .put("mantras", index.size())
+                    .put("fileBytes", end)
+                    .put("mappedBytes", map.capacity())
+                    .put("liveBytes", liveBytes)
+                    .put("garbageBytes", garbageBytes())
+                    .put("indexBytes", index.bytes())
+                    .put("compactions", compactions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (LogMantraStore.class) {
+            if (--users > 0) {
+                return;
+            }
+            vertx.sharedData().getLocalMap("mantras.store").remove(path.toString());
+        }
+        lock.writeLock().lock();
+        try {
+            if (compactTimer != -1) {
+                vertx.cancelTimer(compactTimer);
+                compactTimer = -1;
+            }
+            if (channel != null) {
+                map.force();
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            _logger.warn("Error closing mantra log {}: {}", path, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live entries to a new file when there is enough garbage, see the class description.
+     *
+     * @return whether it did
+     */
+    boolean compactIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            long garbage = garbageBytes();
+            if (channel == null || garbage < compactMinBytes || garbage < liveBytes * compactRatio) {
+                return false;
+            }
+            long start = System.nanoTime();
+            compact();
+            _logger.info("Compacted {} from {} to {} bytes in {}ms", path, garbage + liveBytes, end,
+                    (System.nanoTime() - start) / 1000000);
+            return true;
+        } catch (IOException e) {
+            _logger.error("Error compacting mantra log {}", path, e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Write<T> {
+        T apply() throws IOException, MantraBatch.MantrasNotFoundException;
+    }
+
+    private <T> void write(Handler<AsyncResult<T>> handler, Write<T> write) {
+        T result;
+        lock.writeLock().lock();
+        try {
+            result = write.apply();
+        } catch (IOException | MantraBatch.MantrasNotFoundException | RuntimeException e) {
+            handler.handle(Future.failedFuture(e));
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        handler.handle(Future.succeededFuture(result));
+    }
+
+    private long garbageBytes() {
+        return end - HEADER - liveBytes;
+    }
+
+    private Mantra read(int offset) {
+        int id = map.getInt(offset + 1);
+        long version = map.getLong(offset + 5);
+        int length = map.getInt(offset + 13);
+        if (length < 0) {
+            return new Mantra(id, null, version);
+        }
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = map.get(offset + ENTRY_HEADER + i);
+        }
+        return new Mantra(id, new String(text, StandardCharsets.UTF_8), version);
+    }
+
+    private static int entrySize(ByteBuffer buffer, int offset) {
+        return ENTRY_HEADER + Math.max(0, buffer.getInt(offset + 13));
+    }
+
+    /**
+     * Writes the puts and deletes as one frame and applies them to the index.
+     */
+    private void append(List<Mantra> puts, List<Integer> deletes) throws IOException {
+        List<byte[]> texts = new ArrayList<>(puts.size());
+        int length = deletes.size() * ENTRY_HEADER;
+        for (Mantra mantra : puts) {
+            byte[] text = mantra.getMantra() == null ? null : mantra.getMantra().getBytes(StandardCharsets.UTF_8);
+            texts.add(text);
+            length += ENTRY_HEADER + (text == null ? 0 : text.length);
+        }
+        ensureCapacity(end + FRAME_HEADER + length);
+
+        int position = end + FRAME_HEADER;
+        int[] offsets = new int[puts.size()];
+        for (int i = 0; i < puts.size(); i++) {
+            offsets[i] = position;
+            position = putEntry(map, position, PUT, puts.get(i).getId(), puts.get(i).getVersion(), texts.get(i));
+        }
+        for (Integer id : deletes) {
+            position = putEntry(map, position, DELETE, id, 0, null);
+        }
+        seal(map, end, length);
+        if (sync) {
+            map.force();
+        }
+        end = position;
+
+        for (int i = 0; i < puts.size(); i++) {
+            apply(PUT, puts.get(i).getId(), offsets[i]);
+        }
+        for (Integer id : deletes) {
+            apply(DELETE, id, -1);
+        }
+    }
+
+    private static int putEntry(ByteBuffer buffer, int position, byte type, int id, long version, byte[] text) {
+        buffer.put(position, type);
+        buffer.putInt(position + 1, id);
+        buffer.putLong(position + 5, version);
+        buffer.putInt(position + 13, text == null ? -1 : text.length);
+        position += ENTRY_HEADER;
+        if (text != null) {
+            for (byte b : text) {
+                buffer.put(position++, b);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Checksums the frame body and writes the length last, only then does the frame count.
+     */
+    private static void seal(ByteBuffer buffer, int frame, int length) {
+        buffer.putInt(frame + 4, checksum(buffer, frame + FRAME_HEADER, length));
+        buffer.putInt(frame, length);
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(from + length).position(from);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private void apply(byte type, int id, int offset) {
+        long previous = index.get(id);
+        if (previous >= 0) {
+            liveBytes -= entrySize(map, (int) previous);
+            versionSum -= map.getLong((int) previous + 5);
+        }
+        if (type == PUT) {
+            index.put(id, offset);
+            live.set(id);
+            liveBytes += entrySize(map, offset);
+            versionSum += map.getLong(offset + 5);
+        } else {
+            index.remove(id);
+            live.clear(id);
+        }
+        maxId = Math.max(maxId, id);
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("Mantra log " + path + " is full");
+        }
+        if (needed > map.capacity()) {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * map.capacity())));
+        }
+    }
+
+    private Path compactPath() {
+        return path.resolveSibling(path.getFileName() + ".compact");
+    }
+
+    private void recover() throws IOException {
+        //a compaction that did not get as far as replacing the log
+        Files.deleteIfExists(compactPath());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean fresh = channel.size() == 0;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), initialSize));
+        if (fresh) {
+            map.putLong(0, MAGIC);
+        } else if (map.getLong(0) != MAGIC) {
+            channel.close();
+            channel = null;
+            throw new IOException(path + " is not a mantra log");
+        }
+
+        index = new OffHeapIndex(1024);
+        live = new BitSet();
+        maxId = 0;
+        versionSum = 0;
+        liveBytes = 0;
+        int frame = HEADER;
+        int frames = 0;
+        while (frame + FRAME_HEADER <= map.capacity()) {
+            int length = map.getInt(frame);
+            if (length <= 0 || (long) frame + FRAME_HEADER + length > map.capacity()
+                    || checksum(map, frame + FRAME_HEADER, length) != map.getInt(frame + 4)) {
+                break;
+            }
+            for (int entry = frame + FRAME_HEADER; entry < frame + FRAME_HEADER + length; ) {
+                apply(map.get(entry), map.getInt(entry + 1), entry);
+                entry += entrySize(map, entry);
+            }
+            frame += FRAME_HEADER + length;
+            frames++;
+        }
+        end = frame;
+        int wiped = wipe(end);
+        if (wiped > 0) {
+            _logger.warn("Discarded {} bytes of a torn write at the end of {}", wiped, path);
+        }
+        _logger.info("Opened {} with {} mantras from {} frames", path, index.size(), frames);
+    }
+
+    /**
+     * Zeroes the mapping from {@code from}, so a frame torn by a crash is never taken for a good one later on.
+     *
+     * @return how far the last byte that was not zero was from {@code from}
+     */
+    private int wipe(int from) {
+        int last = from;
+        for (int position = from; position < map.capacity(); position++) {
+            if (map.get(position) != 0) {
+                map.put(position, (byte) 0);
+                last = position + 1;
+            }
+        }
+        return last - from;
+    }
+
+    private void compact() throws IOException {
+        Path target = compactPath();
+        int used = HEADER + ENTRY_HEADER + (int) liveBytes + FRAME_HEADER * (int) (liveBytes / COMPACTED_FRAME + 1)
+                + FRAME_HEADER * index.size();
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(initialSize, 2L * used));
+        OffHeapIndex compacted = new OffHeapIndex(index.size());
+        MappedByteBuffer out;
+        int position;
+        try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out = targetChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            out.putLong(0, MAGIC);
+            int frame = HEADER;
+            position = frame + FRAME_HEADER;
+            //ids are never reused, the highest one given out has to outlive its mantra
+            if (maxId > 0 && !live.get(maxId)) {
+                position = putEntry(out, position, DELETE, maxId, 0, null);
+            }
+            for (int id = live.nextSetBit(0); id >= 0; id = id == Integer.MAX_VALUE ? -1 : live.nextSetBit(id + 1)) {
+                int offset = (int) index.get(id);
+                int size = entrySize(map, offset);
+                if (position - frame - FRAME_HEADER + size > COMPACTED_FRAME && position > frame + FRAME_HEADER) {
+                    seal(out, frame, position - frame - FRAME_HEADER);
+                    frame = position;
+                    position = frame + FRAME_HEADER;
+                }
+                for (int i = 0; i < size; i++) {
+                    out.put(position + i, map.get(offset + i));
+                }
+                compacted.put(id, position);
+                position += size;
+            }
+            if (position > frame + FRAME_HEADER) {
+                seal(out, frame, position - frame - FRAME_HEADER);
+            } else {
+                position = frame;
+            }
+            out.force();
+        }
+        Files.move(target, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        //the old mapping goes with the garbage collector, the compacted one stays valid under the new name
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = out;
+        end = position;
+        index = compacted;
+        compactions++;
+    }
+}
@@ -0,0 +1,118 @@
+package org.workspace7.vertx.store;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraBatch;
+
+import java.util.List;
+
+/**
+ * Where the {@link org.workspace7.vertx.MantraRepository} keeps the mantras, picked with {@code store.engine}:
+ * {@code jdbc}, the default, for the MANTRAS table through the connection pool, or {@code log} for
+ * {@link LogMantraStore}, an append only file memory mapped by this process.
+ * <p>
+ * Ids are assigned by the store, unless put, never reused, and every update bumps the version of a mantra. Results
+ * are handed to the handler on the caller's context. Failures are a {@link MantraBatch.MantrasNotFoundException}
+ * for unknown mantras where noted, an {@link UnavailableException} when the store cannot take the request right now,
+ * and anything else when it failed.
+ *
+ * @author kameshs
+ */
+public interface MantraStore {
+
+    /**
+     * @return the store for the {@code store.engine} of the config, to be closed by the caller
+     */
+    static MantraStore create(Vertx vertx, JsonObject config) {
+        String engine = config.getString("store.engine", "jdbc");
+        switch (engine) {
+            case "jdbc":
+                return new JdbcMantraStore(vertx, config);
+            case "log":
+                return LogMantraStore.shared(vertx, config);
+            default:
+                throw new IllegalArgumentException("Unknown store.engine " + engine);
+        }
+    }
+
+    /**
+     * Creates the schema or recovers the file, whatever the engine needs before it can serve.
+     */
+    void open(Handler<AsyncResult<Void>> handler);
+
+    /**
+     * Fails with a {@link MantraBatch.MantrasNotFoundException} when there is no such mantra.
+     */
+    void select(int id, Handler<AsyncResult<Mantra>> handler);
+
+    /**
+     * @param after the id to start after, -1 for the first page
+     */
+    void page(int after, int limit, Handler<AsyncResult<List<Mantra>>> handler);
+
+    /**
+     * Succeeds with the mantra as stored, with its id.
+     */
+    void insert(Mantra mantra, Handler<AsyncResult<Mantra>> handler);
+
+    /**
+     * Succeeds with the mantra as stored, with its new version, or fails with a
+     * {@link MantraBatch.MantrasNotFoundException}.
+     */
+    void update(Mantra mantra, Handler<AsyncResult<Mantra>> handler);
+
+    /**
+     * Succeeds whether or not there was such a mantra.
+     */
+    void delete(int id, Handler<AsyncResult<Void>> handler);
+
+    /**
+     * Inserts all the mantras or none of them.
+     */
+    void insertAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler);
+
+    /**
+     * Updates all the mantras or, failing with a {@link MantraBatch.MantrasNotFoundException} naming the unknown
+     * ones, none of them.
+     */
+    void updateAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler);
+
+    /**
+     * Succeeds with the number of mantras there were to delete.
+     */
+    void deleteAll(List<Integer> ids, Handler<AsyncResult<Integer>> handler);
+
+    /**
+     * Stores the mantras under their own ids and versions, for mantras whose ids were assigned elsewhere: handed
+     * over by another shard or inserted with an id allocated by the cluster. A mantra the store has a newer version
+     * of is left alone. Succeeds with the mantras stored.
+     */
+    void putAll(List<Mantra> mantras, Handler<AsyncResult<List<Mantra>>> handler);
+
+    /**
+     * Succeeds with a string that changes whenever any mantra is added, updated or deleted.
+     */
+    void fingerprint(Handler<AsyncResult<String>> handler);
+
+    /**
+     * @return what the engine reports about itself, the connection pool statistics for {@code jdbc}
+     */
+    JsonObject stats();
+
+    void close();
+
+    /**
+     * The store could not take the request right now, it is worth retrying later.
+     */
+    class UnavailableException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
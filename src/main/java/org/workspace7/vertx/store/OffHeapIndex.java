@@ -0,0 +1,127 @@
+package org.workspace7.vertx.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An open addressing hash table from mantra id to file offset held in a direct buffer, so that however many mantras
+ * there are the index adds no objects to the heap. Linear probing, and a removal shifts the entries that follow it
+ * back instead of leaving a tombstone, so lookups never slow down with churn.
+ * <p>
+ * Not thread safe.
+ *
+ * @author kameshs
+ */
+final class OffHeapIndex {
+
+    private static final int SLOT = 12;
+    private static final int EMPTY = 0;
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+
+    OffHeapIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the offset of the id, -1 when it is not in the index
+     */
+    long get(int id) {
+        for (int slot = home(id); ; slot = (slot + 1) & mask) {
+            int key = slots.getInt(slot * SLOT);
+            if (key == EMPTY) {
+                return -1;
+            }
+            if (key == id) {
+                return slots.getLong(slot * SLOT + 4);
+            }
+        }
+    }
+
+    /**
+     * @param id greater than zero
+     */
+    void put(int id, long offset) {
+        if (id <= EMPTY) {
+            throw new IllegalArgumentException("Ids must be positive: " + id);
+        }
+        if ((size + 1) * 2 > mask + 1) {
+            resize((mask + 1) * 2);
+        }
+        int slot = home(id);
+        while (true) {
+            int key = slots.getInt(slot * SLOT);
+            if (key == EMPTY) {
+                slots.putInt(slot * SLOT, id);
+                size++;
+                break;
+            }
+            if (key == id) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots.putLong(slot * SLOT + 4, offset);
+    }
+
+    void remove(int id) {
+        int hole = home(id);
+        while (true) {
+            int key = slots.getInt(hole * SLOT);
+            if (key == EMPTY) {
+                return;
+            }
+            if (key == id) {
+                break;
+            }
+            hole = (hole + 1) & mask;
+        }
+        //move back every entry of the run that would no longer be found past the hole
+        for (int slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+            int key = slots.getInt(slot * SLOT);
+            if (key == EMPTY) {
+                break;
+            }
+            if (((slot - home(key)) & mask) >= ((slot - hole) & mask)) {
+                slots.putInt(hole * SLOT, key);
+                slots.putLong(hole * SLOT + 4, slots.getLong(slot * SLOT + 4));
+                hole = slot;
+            }
+        }
+        slots.putInt(hole * SLOT, EMPTY);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the off heap memory taken
+     */
+    long bytes() {
+        return (long) (mask + 1) * SLOT;
+    }
+
+    private int home(int id) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void resize(int capacity) {
+        ByteBuffer old = slots;
+        int oldCapacity = mask + 1;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT);
+        mask = capacity - 1;
+        size = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int key = old.getInt(slot * SLOT);
+            if (key != EMPTY) {
+                put(key, old.getLong(slot * SLOT + 4));
+            }
+        }
+    }
+}
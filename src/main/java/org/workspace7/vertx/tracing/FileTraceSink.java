@@ -0,0 +1,37 @@
+package org.workspace7.vertx.tracing;
+
+import io.vertx.core.json.Json;
+import org.hawkular.apm.api.model.trace.Trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends every trace as one line of JSON to a local file, a stand-in for the collector when there is none.
+ *
+ * @author kameshs
+ */
+public class FileTraceSink implements TraceSink {
+
+    private final Path file;
+
+    public FileTraceSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void publish(List<Trace> traces) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Trace trace : traces) {
+                writer.write(Json.encode(trace));
+                writer.newLine();
+            }
+        }
+    }
+}
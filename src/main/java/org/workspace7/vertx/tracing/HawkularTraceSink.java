@@ -0,0 +1,31 @@
+package org.workspace7.vertx.tracing;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.TracePublisher;
+import org.hawkular.apm.trace.publisher.rest.client.TracePublisherRESTClient;
+
+import java.util.List;
+
+/**
+ * Publishes to the Hawkular APM server named by the {@code HAWKULAR_APM_URI}, {@code HAWKULAR_APM_USERNAME} and
+ * {@code HAWKULAR_APM_PASSWORD} environment.
+ *
+ * @author kameshs
+ */
+public class HawkularTraceSink implements TraceSink {
+
+    private final TracePublisher publisher;
+
+    public HawkularTraceSink() {
+        this(new TracePublisherRESTClient());
+    }
+
+    HawkularTraceSink(TracePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void publish(List<Trace> traces) throws Exception {
+        publisher.publish(null, traces);
+    }
+}
@@ -3,25 +3,25 @@ package org.workspace7.vertx.tracing;
 import io.opentracing.propagation.TextMap;
 import io.vertx.core.MultiMap;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 /**
+ * Reads the headers in place, nothing is copied until the tracer iterates them.
+ *
  * @author kameshs
  */
 public class HttpHeadersExtractAdapter implements TextMap {
 
-    private final Map<String, String> map;
+    private final MultiMap multiMap;
 
     public HttpHeadersExtractAdapter(final MultiMap multiMap) {
-        this.map = new HashMap<>();
-        multiMap.forEach(entry -> map.put(entry.getKey(), entry.getValue()));
+        this.multiMap = multiMap;
     }
 
     @Override
     public Iterator<Map.Entry<String, String>> iterator() {
-        return map.entrySet().iterator();
+        return multiMap.iterator();
     }
 
     @Override
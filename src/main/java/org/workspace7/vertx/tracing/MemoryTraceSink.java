@@ -0,0 +1,61 @@
+package org.workspace7.vertx.tracing;
+
+import org.hawkular.apm.api.model.trace.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent traces in memory, for tests and for running without a collector.
+ *
+ * @author kameshs
+ */
+public class MemoryTraceSink implements TraceSink {
+
+    private final int maxSize;
+    private final List<Trace> traces = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    public MemoryTraceSink(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized void publish(List<Trace> batch) {
+        batchSizes.add(batch.size());
+        traces.addAll(batch);
+        if (traces.size() > maxSize) {
+            traces.subList(0, traces.size() - maxSize).clear();
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return a copy of the traces held, oldest first
+     */
+    public synchronized List<Trace> traces() {
+        return new ArrayList<>(traces);
+    }
+
+    /**
+     * @return the size of every batch published so far
+     */
+    public synchronized List<Integer> batchSizes() {
+        return new ArrayList<>(batchSizes);
+    }
+
+    /**
+     * Waits until at least {@code count} traces are held or the time is up.
+     *
+     * @return the traces held
+     */
+    public synchronized List<Trace> await(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long left = timeoutMillis;
+        while (traces.size() < count && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        return traces();
+    }
+}
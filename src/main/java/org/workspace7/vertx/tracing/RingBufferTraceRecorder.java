@@ -0,0 +1,208 @@
+package org.workspace7.vertx.tracing;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.client.api.recorder.TraceRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes the traces of finished spans from whatever thread finishes them, usually an event loop, and hands them to a
+ * {@link TraceSink} in batches from a reporter thread of its own.
+ * <p>
+ * Recording never blocks: traces go into a bounded ring and, once it is full, each new trace overwrites the oldest
+ * one that has not been reported yet. The reporter sends a batch as soon as {@code batchSize} traces are waiting, and
+ * otherwise every {@code flushInterval}.
+ * <p>
+ * Every slot carries the sequence of the trace it holds, so the reporter can tell a slot whose recorder has not
+ * filled it yet, which it waits for, from one a later trace has already overwritten, which it steps over.
+ *
+ * @author kameshs
+ */
+public class RingBufferTraceRecorder implements TraceRecorder {
+
+    private static final Logger _logger = LoggerFactory.getLogger(RingBufferTraceRecorder.class);
+
+    private final AtomicReferenceArray<Slot> ring;
+    private final int mask;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final TraceSink sink;
+
+    //the next sequence to claim, by recorders
+    private final AtomicLong head = new AtomicLong();
+    //the next sequence to report, only moved by the reporter
+    private volatile long tail;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Thread reporter;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public RingBufferTraceRecorder(TraceSink sink, int capacity, int batchSize, long flushInterval, TimeUnit unit) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.batchSize = Math.max(1, Math.min(batchSize, size));
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.sink = sink;
+        this.reporter = new Thread(this::report, "mantras-trace-reporter");
+        this.reporter.setDaemon(true);
+        this.reporter.start();
+    }
+
+    @Override
+    public void record(Trace trace) {
+        long sequence = head.getAndIncrement();
+        recorded.incrementAndGet();
+        int index = (int) sequence & mask;
+        Slot slot = new Slot(sequence, trace);
+        while (true) {
+            Slot current = ring.get(index);
+            if (current != null && current.sequence > sequence) {
+                //a recorder a whole ring ahead got here first, this trace is already the older one
+                dropped.incrementAndGet();
+                break;
+            }
+            if (ring.compareAndSet(index, current, slot)) {
+                if (current != null) {
+                    dropped.incrementAndGet();
+                }
+                break;
+            }
+        }
+        if (sequence - tail >= batchSize - 1) {
+            LockSupport.unpark(reporter);
+        }
+    }
+
+    /**
+     * Stops the reporter after it has sent what is waiting.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(reporter);
+        try {
+            reporter.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the traces taken so far
+     */
+    public long recorded() {
+        return recorded.get();
+    }
+
+    /**
+     * @return the traces overwritten before they could be reported
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the traces the sink accepted
+     */
+    public long reported() {
+        return reported.get();
+    }
+
+    /**
+     * @return the traces in batches the sink failed on
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the traces waiting to be reported
+     */
+    public long queueDepth() {
+        return Math.min(head.get() - tail, ring.length());
+    }
+
+    private void report() {
+        List<Trace> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (drain(batch) == 0) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            } else {
+                publish(batch);
+            }
+        }
+        //whatever was claimed before the stop is filled in moments, wait for it rather than lose it
+        long end = head.get();
+        while (tail < end) {
+            if (drain(batch) == 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                publish(batch);
+            }
+        }
+    }
+
+    /**
+     * Moves up to a batch of traces out of the ring, oldest first, stepping over the ones that were overwritten and
+     * stopping at a slot that was claimed but not yet filled. The recorder that overwrote a trace counted it dropped.
+     */
+    private int drain(List<Trace> batch) {
+        long end = head.get();
+        long from = Math.max(tail, end - ring.length());
+        int taken = 0;
+        while (from < end && taken < batchSize) {
+            int index = (int) from & mask;
+            Slot slot = ring.get(index);
+            if (slot == null || slot.sequence < from) {
+                break;
+            }
+            if (slot.sequence == from) {
+                if (!ring.compareAndSet(index, slot, null)) {
+                    //overwritten while it was being taken, look again
+                    continue;
+                }
+                batch.add(slot.trace);
+                taken++;
+            }
+            from++;
+        }
+        tail = from;
+        return taken;
+    }
+
+    private void publish(List<Trace> batch) {
+        try {
+            sink.publish(batch);
+            reported.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            _logger.warn("Unable to report {} traces: {}", batch.size(), e.getMessage());
+        }
+        batch.clear();
+    }
+
+    private static final class Slot {
+
+        private final long sequence;
+        private final Trace trace;
+
+        private Slot(long sequence, Trace trace) {
+            this.sequence = sequence;
+            this.trace = trace;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.workspace7.vertx.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a trace that starts here is recorded: with probability {@code rate}, and then no more than
+ * {@code maxPerSecond} times a second, with bursts of up to a second's worth.
+ * <p>
+ * Lock free and safe to share between event loops.
+ *
+ * @author kameshs
+ */
+public class Sampler {
+
+    private final double rate;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong next;
+    private final LongSupplier clock;
+    private final DoubleSupplier random;
+
+    /**
+     * @param rate         the fraction of traces to record, from 0 to 1
+     * @param maxPerSecond the most traces to record a second, 0 or less for no limit
+     */
+    public Sampler(double rate, int maxPerSecond) {
+        this(rate, maxPerSecond, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    Sampler(double rate, int maxPerSecond, LongSupplier clock, DoubleSupplier random) {
+        this.rate = rate;
+        this.intervalNanos = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+        this.burstNanos = TimeUnit.SECONDS.toNanos(1) - intervalNanos;
+        this.next = new AtomicLong(clock.getAsLong() - burstNanos);
+        this.clock = clock;
+        this.random = random;
+    }
+
+    public boolean sample() {
+        if (rate <= 0 || (rate < 1 && random.getAsDouble() >= rate)) {
+            return false;
+        }
+        if (intervalNanos == 0) {
+            return true;
+        }
+        //generic cell rate algorithm: each sample pushes the next allowed time one interval further
+        long now = clock.getAsLong();
+        while (true) {
+            long allowed = next.get();
+            long from = Math.max(allowed, now - burstNanos);
+            if (from > now) {
+                return false;
+            }
+            if (next.compareAndSet(allowed, from + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true when nothing is ever sampled, so callers can skip tracing altogether
+     */
+    public boolean never() {
+        return rate <= 0;
+    }
+}
@@ -0,0 +1,18 @@
+package org.workspace7.vertx.tracing;
+
+import org.hawkular.apm.api.model.trace.Trace;
+
+import java.util.List;
+
+/**
+ * Where the {@link RingBufferTraceRecorder} sends its batches, always from its own reporter thread.
+ *
+ * @author kameshs
+ */
+public interface TraceSink {
+
+    /**
+     * @throws Exception when the batch could not be delivered, it is then counted as failed and not retried
+     */
+    void publish(List<Trace> traces) throws Exception;
+}
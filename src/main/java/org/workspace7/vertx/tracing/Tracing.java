@@ -0,0 +1,228 @@
+package org.workspace7.vertx.tracing;
+
+import io.opentracing.NoopSpan;
+import io.opentracing.NoopSpanBuilder;
+import io.opentracing.NoopTracerFactory;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.hawkular.apm.client.opentracing.APMTracer;
+import org.workspace7.vertx.metrics.MetricsRegistry;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The one {@link Tracer} of a Vert.x instance together with its {@link Sampler}.
+ * <p>
+ * Sampling is decided where a trace starts. A request or message carrying one of the {@code tracing.context.headers}
+ * continues the trace its sender started, unless the sender asked for no tracing with {@code HWKAPMLEVEL: None}.
+ * Anything else starts a new trace when the sampler says so. When it does not, every span of the request is the
+ * shared {@link NoopSpan} and nothing is extracted, injected or allocated for it.
+ * <p>
+ * With {@code startup.lazy} the {@link APMTracer}, the recorder and its sink are only built for the first sampled
+ * span, which keeps the Hawkular client and its dependencies out of startup.
+ *
+ * @author kameshs
+ */
+public class Tracing implements Shareable {
+
+    private static final String LEVEL_HEADER = "HWKAPMLEVEL";
+    private static final List<String> SINKS = Arrays.asList("hawkular", "file", "memory");
+
+    private final Sampler sampler;
+    private final String[] contextHeaders;
+    //builds the recorder the tracer reports to, when that waits for the first sampled span
+    private final Supplier<RingBufferTraceRecorder> deferred;
+    private final boolean reporting;
+    private volatile Tracer tracer;
+    private volatile RingBufferTraceRecorder recorder;
+
+    Tracing(Tracer tracer, Sampler sampler, List<String> contextHeaders) {
+        this(tracer, sampler, contextHeaders, null, null);
+    }
+
+    private Tracing(Tracer tracer, Sampler sampler, List<String> contextHeaders, RingBufferTraceRecorder recorder,
+                    Supplier<RingBufferTraceRecorder> deferred) {
+        this.tracer = tracer;
+        this.sampler = sampler;
+        this.contextHeaders = contextHeaders.toArray(new String[contextHeaders.size()]);
+        this.recorder = recorder;
+        this.deferred = deferred;
+        this.reporting = recorder != null || deferred != null;
+    }
+
+    /**
+     * @return the tracing every verticle of this Vert.x instance shares, configured by {@code tracing.sample.rate},
+     * {@code tracing.max.per.second} and {@code tracing.context.headers}, reporting finished traces through a
+     * {@link RingBufferTraceRecorder} to the {@code tracing.sink}
+     */
+    @SuppressWarnings("unchecked")
+    public static Tracing shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, Tracing> tracings = vertx.sharedData().getLocalMap("mantras.tracing");
+        Tracing tracing = tracings.get("tracing");
+        if (tracing == null) {
+            Sampler sampler = new Sampler(config.getDouble("tracing.sample.rate", 1.0),
+                    config.getInteger("tracing.max.per.second", 0));
+            JsonArray headers = config.getJsonArray("tracing.context.headers",
+                    new JsonArray().add("HWKAPMID").add("HWKAPMTRACEID"));
+            Tracing created;
+            if (sampler.never()) {
+                created = new Tracing(NoopTracerFactory.create(), sampler, headers.getList());
+            } else if (config.getBoolean("startup.lazy", false)) {
+                checkSink(config);
+                created = new Tracing(null, sampler, headers.getList(), null, () -> recorder(config));
+            } else {
+                RingBufferTraceRecorder recorder = recorder(config);
+                created = new Tracing(new APMTracer(recorder), sampler, headers.getList(), recorder, null);
+            }
+            tracing = tracings.putIfAbsent("tracing", created);
+            if (tracing == null) {
+                tracing = created;
+            } else if (created.recorder != null) {
+                created.recorder.close();
+            }
+        }
+        return tracing;
+    }
+
+    private static RingBufferTraceRecorder recorder(JsonObject config) {
+        return new RingBufferTraceRecorder(sink(config),
+                config.getInteger("tracing.buffer.size", 4096),
+                config.getInteger("tracing.batch.size", 100),
+                config.getLong("tracing.flush.interval.ms", 500L), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fails on an unknown {@code tracing.sink} as the verticle starts rather than on the first sampled span.
+     */
+    private static void checkSink(JsonObject config) {
+        String sink = config.getString("tracing.sink", "hawkular");
+        if (!SINKS.contains(sink)) {
+            throw new IllegalArgumentException("Unknown tracing.sink " + sink + ", expected hawkular, file or memory");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown {@code tracing.sink}
+     */
+    static TraceSink sink(JsonObject config) {
+        String sink = config.getString("tracing.sink", "hawkular");
+        switch (sink) {
+            case "hawkular":
+                return new HawkularTraceSink();
+            case "file":
+                return new FileTraceSink(Paths.get(config.getString("tracing.sink.file", "traces.jsonl")));
+            case "memory":
+                return new MemoryTraceSink(config.getInteger("tracing.sink.memory.size", 1000));
+            default:
+                throw new IllegalArgumentException("Unknown tracing.sink " + sink
+                        + ", expected hawkular, file or memory");
+        }
+    }
+
+    /**
+     * Adds the reporting counters, when traces are reported at all.
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        if (!reporting) {
+            return;
+        }
+        metrics.counter("mantras_traces_recorded_total", "Traces handed to the reporter",
+                () -> recorder == null ? 0 : recorder.recorded());
+        metrics.counter("mantras_traces_dropped_total", "Traces overwritten before they were reported",
+                () -> recorder == null ? 0 : recorder.dropped());
+        metrics.counter("mantras_traces_reported_total", "Traces the sink accepted",
+                () -> recorder == null ? 0 : recorder.reported());
+        metrics.counter("mantras_traces_failed_total", "Traces in batches the sink failed on",
+                () -> recorder == null ? 0 : recorder.failed());
+        metrics.gauge("mantras_traces_queue_depth", "Traces waiting to be reported",
+                () -> recorder == null ? 0 : recorder.queueDepth());
+    }
+
+    /**
+     * @return the recorder finished traces go through, null when tracing is off or nothing was sampled yet with
+     * {@code startup.lazy}
+     */
+    public RingBufferTraceRecorder recorder() {
+        return recorder;
+    }
+
+    /**
+     * Starts building the first span of a request or message, continuing the trace carried in its headers.
+     *
+     * @return a no-op builder when the trace is not sampled
+     */
+    public Tracer.SpanBuilder buildSpan(String operation, MultiMap headers) {
+        if (carriesContext(headers)) {
+            return continueSpan(operation, headers);
+        }
+        return sampler.sample() ? tracer().buildSpan(operation) : NoopSpanBuilder.INSTANCE;
+    }
+
+    /**
+     * Starts building the first span of a message, only when the sender sampled the trace. Work done for a request
+     * that is not traced is not traced either.
+     */
+    public Tracer.SpanBuilder continueSpan(String operation, MultiMap headers) {
+        if (!carriesContext(headers) || "None".equalsIgnoreCase(headers.get(LEVEL_HEADER))) {
+            return NoopSpanBuilder.INSTANCE;
+        }
+        SpanContext parent = tracer().extract(Format.Builtin.TEXT_MAP, new HttpHeadersExtractAdapter(headers));
+        return tracer().buildSpan(operation).asChildOf(parent);
+    }
+
+    /**
+     * @return a builder of a child of {@code parent}, a no-op one when the parent is not sampled
+     */
+    public Tracer.SpanBuilder buildSpan(String operation, Span parent) {
+        return isSampled(parent) ? tracer().buildSpan(operation).asChildOf(parent) : NoopSpanBuilder.INSTANCE;
+    }
+
+    /**
+     * Adds the context of a sampled span to the headers of an event bus message.
+     */
+    public void inject(Span span, DeliveryOptions options) {
+        if (isSampled(span)) {
+            tracer().inject(span.context(), Format.Builtin.TEXT_MAP, new VertxMessageInjectAdapter(options));
+        }
+    }
+
+    public static boolean isSampled(Span span) {
+        return span != null && !(span instanceof NoopSpan);
+    }
+
+    private Tracer tracer() {
+        Tracer current = tracer;
+        if (current == null) {
+            synchronized (this) {
+                if (tracer == null) {
+                    recorder = deferred.get();
+                    tracer = new APMTracer(recorder);
+                }
+                current = tracer;
+            }
+        }
+        return current;
+    }
+
+    private boolean carriesContext(MultiMap headers) {
+        for (String header : contextHeaders) {
+            if (headers.contains(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
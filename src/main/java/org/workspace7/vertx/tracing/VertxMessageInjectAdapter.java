@@ -1,28 +1,23 @@
 package org.workspace7.vertx.tracing;
 
 import io.opentracing.propagation.TextMap;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.eventbus.DeliveryOptions;
 
 import java.util.Iterator;
 import java.util.Map;
 
 /**
+ * Injects into the message headers, which is where {@link HttpHeadersExtractAdapter} on the receiving side finds
+ * them.
+ *
  * @author kameshs
  */
 public class VertxMessageInjectAdapter implements TextMap {
 
-    private JsonObject header;
+    private final DeliveryOptions deliveryOptions;
 
-    public VertxMessageInjectAdapter(final JsonObject obj) {
-        header = obj.getJsonObject("_apmHeader");
-        if (header == null) {
-            header = new JsonObject();
-            obj.put("_apmHeader", header);
-        }
-    }
-
-    public static void cleanup(JsonObject obj) {
-        obj.remove("_apmHeader");
+    public VertxMessageInjectAdapter(final DeliveryOptions deliveryOptions) {
+        this.deliveryOptions = deliveryOptions;
     }
 
     @Override
@@ -32,6 +27,6 @@ public class VertxMessageInjectAdapter implements TextMap {
 
     @Override
     public void put(String key, String value) {
-        this.header.put(key, value);
+        deliveryOptions.addHeader(key, value);
     }
 }
@@ -0,0 +1,21 @@
+package org.workspace7.vertx;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kameshs
+ */
+public class ChantLauncherTest {
+
+    @Test
+    public void testAnExplicitInstancesIsNoticed() {
+        assertTrue(ChantLauncher.instancesGiven(new String[]{"-instances", "1"}));
+        assertTrue(ChantLauncher.instancesGiven(new String[]{"-conf", "chant-app.json", "--instances", "1"}));
+        assertTrue(ChantLauncher.instancesGiven(new String[]{"--instances=1"}));
+        assertFalse(ChantLauncher.instancesGiven(new String[]{"-conf", "chant-app.json", "-cluster"}));
+        assertFalse(ChantLauncher.instancesGiven(new String[0]));
+    }
+}
@@ -3,6 +3,7 @@ package org.workspace7.vertx;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -11,6 +12,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.workspace7.vertx.tracing.Tracing;
 
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -24,6 +26,7 @@ public class MainVerticleTest {
     private String apiHost = "localhost";
     private int port;
     private Vertx vertx;
+    private DeploymentOptions options;
 
     @Before
     public void setup(TestContext context) throws IOException {
@@ -33,10 +36,11 @@ public class MainVerticleTest {
         port = socket.getLocalPort();
         socket.close();
 
-        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject()
+        options = new DeploymentOptions().setConfig(new JsonObject()
                 .put("http.port", port)
                 .put("url", "jdbc:h2:mem:vdb")
                 .put("user", "sa")
+                .put("mantras.stream.chunk", 2)
                 .put("driver_class", "org.h2.Driver"));
         vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
     }
@@ -60,6 +64,24 @@ public class MainVerticleTest {
         });
     }
 
+    @Test
+    public void testAssetsManifest(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/assets/_manifest.json", manifest -> {
+            context.assertEquals(manifest.statusCode(), 200);
+            manifest.bodyHandler(body -> {
+                String hashed = body.toJsonObject().getString("index.html");
+                context.assertTrue(hashed.matches("/assets/index\\.[0-9a-f]+\\.html"));
+                vertx.createHttpClient().getNow(port, apiHost, hashed, index -> {
+                    context.assertEquals(index.statusCode(), 200);
+                    context.assertTrue(index.getHeader("cache-control").contains("immutable"));
+                    async.complete();
+                });
+            });
+        });
+    }
+
     @Test
     public void checkThatICanAdd(TestContext context) {
         Async async = context.async();
@@ -81,4 +103,410 @@ public class MainVerticleTest {
                 .write(chantJson)
                 .end();
     }
+
+    @Test
+    public void checkThatICanStreamAll(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras", httpClientResponse -> {
+            context.assertEquals(httpClientResponse.statusCode(), 200);
+            context.assertEquals(httpClientResponse.getHeader("transfer-encoding"), "chunked");
+            httpClientResponse.bodyHandler(body -> {
+                JsonArray mantras = body.toJsonArray();
+                context.assertEquals(mantras.size(), 3);
+                context.assertEquals(mantras.getJsonObject(0).getString("mantra"), "Srimathe Ramanujaya Namaha!");
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void checkThatICanPage(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=2", firstPage -> {
+            context.assertEquals(firstPage.statusCode(), 200);
+            context.assertNotNull(firstPage.getHeader("link"));
+            firstPage.bodyHandler(body -> {
+                JsonArray mantras = body.toJsonArray();
+                context.assertEquals(mantras.size(), 2);
+                int lastId = mantras.getJsonObject(1).getInteger("id");
+                vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=2&after=" + lastId, nextPage -> {
+                    context.assertEquals(nextPage.statusCode(), 200);
+                    context.assertNull(nextPage.getHeader("link"));
+                    nextPage.bodyHandler(nextBody -> {
+                        JsonArray rest = nextBody.toJsonArray();
+                        context.assertEquals(rest.size(), 1);
+                        context.assertTrue(rest.getJsonObject(0).getInteger("id") > lastId);
+                        async.complete();
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatBadPagingIsRejected(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=abc", httpClientResponse -> {
+            context.assertEquals(httpClientResponse.statusCode(), 400);
+            async.complete();
+        });
+    }
+
+    @Test
+    public void checkThatMantrasCanBeSearched(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_search?q=hare%20kri", found -> {
+            context.assertEquals(found.statusCode(), 200);
+            found.bodyHandler(body -> {
+                JsonArray mantras = body.toJsonArray();
+                context.assertEquals(mantras.size(), 1);
+                context.assertEquals(mantras.getJsonObject(0).getString("mantra"),
+                        "Hare Krishna Hare Krishna Krishna Krishna Hare Hare!");
+                final String added = Json.encode(new Mantra("Sri Krishna Sharanam Mama"));
+                vertx.createHttpClient().post(port, apiHost, "/api/mantras", created -> {
+                    context.assertEquals(created.statusCode(), 201);
+                    vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_search?q=krishna&limit=5", all ->
+                            all.bodyHandler(allBody -> {
+                                context.assertEquals(allBody.toJsonArray().size(), 2);
+                                vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_search", missing -> {
+                                    context.assertEquals(missing.statusCode(), 400);
+                                    async.complete();
+                                });
+                            }));
+                }).end(added);
+            });
+        });
+    }
+
+    @Test
+    public void checkThatReadsAreCached(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=1", list -> list.bodyHandler(body -> {
+            int id = body.toJsonArray().getJsonObject(0).getInteger("id");
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/" + id, miss -> {
+                context.assertEquals(miss.statusCode(), 200);
+                vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/" + id, hit -> {
+                    context.assertEquals(hit.statusCode(), 200);
+                    vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_cache", stats ->
+                            stats.bodyHandler(statsBody -> {
+                                JsonObject cacheStats = statsBody.toJsonObject();
+                                context.assertTrue(cacheStats.getBoolean("enabled"));
+                                context.assertEquals(cacheStats.getLong("hits"), 1L);
+                                context.assertEquals(cacheStats.getLong("misses"), 1L);
+                                async.complete();
+                            }));
+                });
+            });
+        }));
+    }
+
+    @Test
+    public void checkThatPoolStatsAreExposed(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=1", list -> {
+            context.assertEquals(list.statusCode(), 200);
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_pool", stats -> {
+                context.assertEquals(stats.statusCode(), 200);
+                stats.bodyHandler(body -> {
+                    JsonObject poolStats = body.toJsonObject();
+                    context.assertTrue(poolStats.getLong("acquired") >= 1L);
+                    context.assertEquals(poolStats.getLong("timedOut"), 0L);
+                    context.assertTrue(poolStats.containsKey("inUse"));
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatConcurrentReadsGetTheSameAnswer(TestContext context) {
+        Async lists = context.async(10);
+        Async async = context.async();
+        String[] first = new String[1];
+
+        for (int i = 0; i < 10; i++) {
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=2", list -> {
+                context.assertEquals(list.statusCode(), 200);
+                list.bodyHandler(body -> {
+                    if (first[0] == null) {
+                        first[0] = body.toString();
+                    }
+                    context.assertEquals(body.toString(), first[0]);
+                    lists.countDown();
+                });
+            });
+        }
+
+        lists.handler(done -> vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_cache", stats ->
+                stats.bodyHandler(body -> {
+                    JsonObject singleFlight = body.toJsonObject().getJsonObject("singleFlight");
+                    context.assertTrue(singleFlight.getBoolean("enabled"));
+                    //a fingerprint and a page each
+                    context.assertEquals(singleFlight.getLong("calls"), 20L);
+                    context.assertTrue(singleFlight.getDouble("ratio") < 1.0);
+                    async.complete();
+                })));
+    }
+
+    @Test
+    public void checkThatChangesAreStreamed(TestContext context) {
+        Async async = context.async();
+        StringBuilder events = new StringBuilder();
+        boolean[] added = new boolean[1];
+
+        vertx.createHttpClient().get(port, apiHost, "/api/mantras/_changes", stream -> {
+            context.assertEquals(stream.statusCode(), 200);
+            context.assertTrue(stream.getHeader("content-type").startsWith("text/event-stream"));
+            stream.handler(chunk -> {
+                events.append(chunk.toString());
+                if (!added[0] && events.indexOf("event: hello") >= 0) {
+                    added[0] = true;
+                    final String mantra = Json.encode(new Mantra("Om Namo Narayanaya"));
+                    vertx.createHttpClient().post(port, apiHost, "/api/mantras",
+                            created -> context.assertEquals(created.statusCode(), 201))
+                            .putHeader("content-type", "application/json")
+                            .putHeader("content-length", Integer.toString(mantra.length()))
+                            .end(mantra);
+                } else if (events.indexOf("event: insert") >= 0 && events.indexOf("\n\n", events
+                        .indexOf("event: insert")) >= 0) {
+                    context.assertTrue(events.indexOf("id: 1\nevent: insert\ndata: {") >= 0);
+                    context.assertTrue(events.indexOf("\"mantra\":\"Om Namo Narayanaya\"") >= 0);
+                    //a late subscriber resumes from where it was
+                    vertx.createHttpClient().websocket(port, apiHost, "/api/mantras/_changes?since=0", webSocket -> {
+                        JsonArray messages = new JsonArray();
+                        webSocket.textMessageHandler(text -> {
+                            messages.add(new JsonObject(text));
+                            if (messages.size() == 2) {
+                                context.assertEquals(messages.getJsonObject(0).getString("type"), "hello");
+                                context.assertEquals(messages.getJsonObject(0).getLong("seq"), 0L);
+                                context.assertEquals(messages.getJsonObject(1).getString("type"), "insert");
+                                context.assertEquals(messages.getJsonObject(1).getLong("seq"), 1L);
+                                context.assertEquals(messages.getJsonObject(1).getString("mantra"),
+                                        "Om Namo Narayanaya");
+                                async.complete();
+                            }
+                        });
+                    });
+                }
+            });
+        }).end();
+    }
+
+    @Test
+    public void checkThatConcurrencyLimitsAreExposed(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/1", mantra -> {
+            context.assertEquals(mantra.statusCode(), 200);
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/_limits", stats -> {
+                context.assertEquals(stats.statusCode(), 200);
+                stats.bodyHandler(body -> {
+                    JsonObject getOne = body.toJsonObject().getJsonObject("getOne");
+                    context.assertEquals(getOne.getInteger("limit"), 20);
+                    context.assertEquals(getOne.getInteger("inFlight"), 0);
+                    context.assertEquals(getOne.getLong("admitted"), 1L);
+                    context.assertEquals(getOne.getLong("rejected"), 0L);
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatRouteLatenciesAreExported(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/-1", missing -> {
+            context.assertEquals(missing.statusCode(), 404);
+            vertx.createHttpClient().getNow(port, apiHost, "/metrics", metrics -> {
+                context.assertEquals(metrics.statusCode(), 200);
+                context.assertTrue(metrics.getHeader("content-type").startsWith("text/plain;version=0.0.4"));
+                metrics.bodyHandler(body -> {
+                    String text = body.toString();
+                    context.assertTrue(text.contains("# TYPE mantras_http_requests_seconds summary"));
+                    context.assertTrue(text.contains(
+                            "mantras_http_requests_seconds_count{route=\"getOne\",status=\"404\"} 1"));
+                    context.assertTrue(text.contains(
+                            "mantras_http_requests_seconds{route=\"getOne\",status=\"404\",quantile=\"0.999\"}"));
+                    context.assertTrue(text.contains("mantras_repository_request_seconds_count{action="));
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatPrettyIsOnlyOnRequest(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=1", compact -> compact.bodyHandler(body -> {
+            context.assertFalse(body.toString().contains("\n"));
+            int id = body.toJsonArray().getJsonObject(0).getInteger("id");
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/" + id + "?pretty=true", pretty ->
+                    pretty.bodyHandler(prettyBody -> {
+                        context.assertTrue(prettyBody.toString().contains("\n"));
+                        context.assertEquals(prettyBody.toJsonObject().getInteger("id"), id);
+                        async.complete();
+                    }));
+        }));
+    }
+
+    @Test
+    public void checkThatPrettyStreamsAll(TestContext context) {
+        Async async = context.async();
+
+        //three mantras in chunks of two, the streamed body has to read as one pretty array
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?pretty=true", streamed -> {
+            context.assertEquals(streamed.getHeader("transfer-encoding"), "chunked");
+            streamed.bodyHandler(body -> {
+                context.assertTrue(body.toString().contains("\n"));
+                context.assertEquals(body.toJsonArray().size(), 3);
+                vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=10&pretty=true", paged ->
+                        paged.bodyHandler(pagedBody -> {
+                            context.assertEquals(body.toString(), pagedBody.toString());
+                            async.complete();
+                        }));
+            });
+        });
+    }
+
+    @Test
+    public void checkThatUnchangedMantrasAreNotResent(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(port, apiHost, "/api/mantras?limit=1", list -> list.bodyHandler(body -> {
+            String listTag = list.getHeader("etag");
+            int id = body.toJsonArray().getJsonObject(0).getInteger("id");
+            vertx.createHttpClient().get(port, apiHost, "/api/mantras/" + id, first -> {
+                String tag = first.getHeader("etag");
+                context.assertNotNull(tag);
+                vertx.createHttpClient().get(port, apiHost, "/api/mantras/" + id, notModified -> {
+                    context.assertEquals(notModified.statusCode(), 304);
+                    final String update = Json.encode(new Mantra(id, "Om Namo Bhagavate Vasudevaya!"));
+                    vertx.createHttpClient().put(port, apiHost, "/api/mantras/" + id, updated -> {
+                        context.assertEquals(updated.statusCode(), 200);
+                        context.assertNotEquals(updated.getHeader("etag"), tag);
+                        vertx.createHttpClient().get(port, apiHost, "/api/mantras?limit=1", changed -> {
+                            context.assertEquals(changed.statusCode(), 200);
+                            context.assertNotEquals(changed.getHeader("etag"), listTag);
+                            async.complete();
+                        }).putHeader("if-none-match", listTag).end();
+                    }).putHeader("content-type", "application/json")
+                            .putHeader("content-length", Integer.toString(update.length()))
+                            .write(update)
+                            .end();
+                }).putHeader("if-none-match", tag).end();
+            }).end();
+        }));
+    }
+
+    @Test
+    public void checkThatICanWriteInBulk(TestContext context) {
+        Async async = context.async();
+        final String chants = new JsonArray()
+                .add(new JsonObject().put("mantra", "Om Namo Narayanaya!"))
+                .add(new JsonObject().put("mantra", "Om Namah Shivaya!"))
+                .encode();
+
+        vertx.createHttpClient().post(port, apiHost, "/api/mantras/_bulk")
+                .putHeader("content-type", "application/json")
+                .handler(added -> {
+                    context.assertEquals(added.statusCode(), 201);
+                    added.bodyHandler(body -> {
+                        JsonArray inserted = body.toJsonArray();
+                        context.assertEquals(inserted.size(), 2);
+                        int first = inserted.getJsonObject(0).getInteger("id");
+                        int second = inserted.getJsonObject(1).getInteger("id");
+                        context.assertNotEquals(first, second);
+
+                        final String updates = new JsonArray()
+                                .add(new JsonObject().put("id", first).put("mantra", "Om Namo Narayanaya!!"))
+                                .encode();
+                        vertx.createHttpClient().put(port, apiHost, "/api/mantras/_bulk")
+                                .putHeader("content-type", "application/json")
+                                .handler(updated -> {
+                                    context.assertEquals(updated.statusCode(), 200);
+                                    vertx.createHttpClient().delete(port, apiHost, "/api/mantras/_bulk")
+                                            .putHeader("content-type", "application/json")
+                                            .handler(deleted -> {
+                                                context.assertEquals(deleted.statusCode(), 204);
+                                                vertx.createHttpClient().getNow(port, apiHost, "/api/mantras/" + second,
+                                                        gone -> {
+                                                            context.assertEquals(gone.statusCode(), 404);
+                                                            async.complete();
+                                                        });
+                                            })
+                                            .end(new JsonArray().add(first).add(second).encode());
+                                })
+                                .end(updates);
+                    });
+                })
+                .end(chants);
+    }
+
+    @Test
+    public void checkThatBulkUpdateOfMissingMantraIsRolledBack(TestContext context) {
+        Async async = context.async();
+        final String updates = new JsonArray()
+                .add(new JsonObject().put("id", Integer.MAX_VALUE).put("mantra", "Nobody home"))
+                .encode();
+
+        vertx.createHttpClient().put(port, apiHost, "/api/mantras/_bulk")
+                .putHeader("content-type", "application/json")
+                .handler(updated -> {
+                    context.assertEquals(updated.statusCode(), 404);
+                    async.complete();
+                })
+                .end(updates);
+    }
+
+    @Test
+    public void checkThatMoreInstancesSeedOnce(TestContext context) {
+        Async async = context.async();
+
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions(options).setInstances(3), deployed -> {
+            context.assertTrue(deployed.succeeded());
+            vertx.createHttpClient().getNow(port, apiHost, "/api/mantras", httpClientResponse ->
+                    httpClientResponse.bodyHandler(body -> {
+                        context.assertEquals(body.toJsonArray().size(), 3);
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void checkThatLazyStartupDefersTracingAndAssets(TestContext context) throws IOException {
+        Async async = context.async();
+        Vertx lazy = Vertx.vertx();
+        int lazyPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            lazyPort = socket.getLocalPort();
+        }
+        JsonObject config = options.getConfig().copy()
+                .put("http.port", lazyPort)
+                .put("url", "jdbc:h2:mem:lazydb")
+                .put("startup.lazy", true)
+                .put("tracing.sample.rate", 1.0)
+                .put("tracing.sink", "memory");
+
+        lazy.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(deployed -> {
+                    Tracing tracing = Tracing.shared(lazy, config);
+                    context.assertNull(tracing.recorder());
+                    lazy.createHttpClient().getNow(lazyPort, apiHost, "/api/mantras", all -> {
+                        context.assertEquals(all.statusCode(), 200);
+                        context.assertNotNull(tracing.recorder());
+                        lazy.createHttpClient().getNow(lazyPort, apiHost, "/assets/index.html", index -> {
+                            context.assertEquals(index.statusCode(), 200);
+                            lazy.close(context.asyncAssertSuccess(closed -> async.complete()));
+                        });
+                    });
+                }));
+    }
 }
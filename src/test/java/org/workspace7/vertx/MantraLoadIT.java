@@ -0,0 +1,312 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.workspace7.vertx.metrics.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives a mix of reads and writes against {@code /api/mantras} at a constant arrival rate and fails when the latency
+ * percentiles, the error rate or the throughput miss their thresholds. Runs in the {@code loadtest} profile against
+ * the fat jar the build starts, see the pom for the properties.
+ * <p>
+ * Requests are sent on schedule whether or not earlier ones have been answered, and each latency is taken from the
+ * time the request was due rather than the time it went out, so a stall on the server shows up in every request it
+ * held back and not just in the one that was waiting when it happened. The percentiles from the time the requests
+ * went out are printed next to them for comparison.
+ *
+ * @author kameshs
+ */
+public class MantraLoadIT {
+
+    private static final String[] OPERATIONS = {"get", "list", "post", "put", "delete"};
+
+    private final int port = Integer.getInteger("http.port", 8080);
+    private final int rate = Integer.getInteger("loadtest.rate", 200);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup.seconds", 10);
+    private final int seconds = Integer.getInteger("loadtest.seconds", 30);
+    private final int connections = Integer.getInteger("loadtest.connections", 32);
+    private final String mix = System.getProperty("loadtest.mix", "get:60,list:5,post:10,put:15,delete:10");
+    private final long seed = Long.getLong("loadtest.seed", 42);
+    private final double p50Millis = Double.parseDouble(System.getProperty("loadtest.p50.ms", "25"));
+    private final double p99Millis = Double.parseDouble(System.getProperty("loadtest.p99.ms", "250"));
+    private final double p999Millis = Double.parseDouble(System.getProperty("loadtest.p999.ms", "1000"));
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max.error.rate", "0.001"));
+
+    private Vertx vertx;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLatenciesAtAConstantArrivalRate() throws Exception {
+        Load load = new Load();
+        vertx.runOnContext(v -> load.start());
+        load.done.get(warmupSeconds + seconds + 60, TimeUnit.SECONDS);
+        load.report();
+
+        Stats all = load.all;
+        assertThat(all.count).as("requests measured").isGreaterThan(0);
+        assertThat((double) all.errors / all.count).as("error rate").isLessThanOrEqualTo(maxErrorRate);
+        assertThat(load.throughput()).as("requests/s").isGreaterThanOrEqualTo(rate * 0.95);
+        assertThat(millis(all.response, 0.5)).as("p50 ms").isLessThanOrEqualTo(p50Millis);
+        assertThat(millis(all.response, 0.99)).as("p99 ms").isLessThanOrEqualTo(p99Millis);
+        assertThat(millis(all.response, 0.999)).as("p99.9 ms").isLessThanOrEqualTo(p999Millis);
+    }
+
+    private static double millis(LatencyHistogram histogram, double quantile) {
+        return histogram.valueAtQuantile(quantile) / 1000.0;
+    }
+
+    private static class Stats {
+
+        //from the time the request was due
+        private final LatencyHistogram response = new LatencyHistogram();
+        //from the time it went out
+        private final LatencyHistogram service = new LatencyHistogram();
+        private long count;
+        private long errors;
+
+        private void record(long dueNanos, long sentNanos, long now, boolean failed) {
+            response.record(TimeUnit.NANOSECONDS.toMicros(now - dueNanos));
+            service.record(TimeUnit.NANOSECONDS.toMicros(now - sentNanos));
+            count++;
+            errors += failed ? 1 : 0;
+        }
+    }
+
+    /**
+     * All of its state is only touched from the context it is started on.
+     */
+    private class Load {
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final Random random = new Random(seed);
+        private final int[] weights = new int[OPERATIONS.length];
+        private final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        private final Map<String, Stats> stats = new LinkedHashMap<>();
+        private final Stats all = new Stats();
+
+        //every id that can be read, and the ones created here that are free to update or delete
+        private final List<Integer> readable = new ArrayList<>();
+        private final Deque<Integer> owned = new ArrayDeque<>();
+
+        private HttpClient client;
+        private long measureFromNanos;
+        private long endNanos;
+        private long nextNanos;
+        private long lastNanos;
+        private long timer;
+        private int outstanding;
+        private int created;
+
+        private Load() {
+            for (String entry : mix.split(",")) {
+                String[] weight = entry.trim().split(":");
+                int index = indexOf(weight[0]);
+                weights[index] = Integer.parseInt(weight[1]);
+            }
+            for (int i = 1; i < weights.length; i++) {
+                weights[i] += weights[i - 1];
+            }
+            for (String operation : OPERATIONS) {
+                stats.put(operation, new Stats());
+            }
+        }
+
+        private void start() {
+            client = vertx.createHttpClient(new HttpClientOptions().setDefaultHost("localhost").setDefaultPort(port)
+                    .setKeepAlive(true).setMaxPoolSize(connections));
+            client.getNow("/api/mantras", response -> response.bodyHandler(body -> {
+                body.toJsonArray().forEach(mantra -> readable.add(((JsonObject) mantra).getInteger("id")));
+                long now = System.nanoTime();
+                measureFromNanos = now + TimeUnit.SECONDS.toNanos(warmupSeconds);
+                endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(seconds);
+                nextNanos = now;
+                timer = vertx.setPeriodic(1, t -> tick());
+            }));
+        }
+
+        /**
+         * Sends everything that has fallen due since the last tick, so a late timer never lowers the rate.
+         */
+        private void tick() {
+            long now = System.nanoTime();
+            while (nextNanos <= now && nextNanos < endNanos) {
+                send(pick(), nextNanos);
+                nextNanos += intervalNanos;
+            }
+            if (nextNanos >= endNanos) {
+                vertx.cancelTimer(timer);
+                finishIfIdle();
+            }
+        }
+
+        private String pick() {
+            int draw = random.nextInt(weights[weights.length - 1]);
+            for (int i = 0; i < weights.length; i++) {
+                if (draw < weights[i]) {
+                    return OPERATIONS[i];
+                }
+            }
+            throw new IllegalStateException("Unreachable");
+        }
+
+        private void send(String operation, long dueNanos) {
+            if (("put".equals(operation) || "delete".equals(operation)) && owned.isEmpty()
+                    || ("get".equals(operation) && readable.isEmpty())) {
+                operation = "post";
+            }
+            switch (operation) {
+                case "get":
+                    int id = readable.get(random.nextInt(readable.size()));
+                    call(operation, dueNanos, HttpMethod.GET, "/api/mantras/" + id, null, (status, body) ->
+                            status == 200 || status == 404);
+                    break;
+                case "list":
+                    call(operation, dueNanos, HttpMethod.GET, "/api/mantras", null, (status, body) -> status == 200);
+                    break;
+                case "post":
+                    String text = "Load test mantra " + created++;
+                    call(operation, dueNanos, HttpMethod.POST, "/api/mantras", new JsonObject().put("mantra", text),
+                            (status, body) -> {
+                                if (status != 201) {
+                                    return false;
+                                }
+                                int added = body.toJsonObject().getInteger("id");
+                                readable.add(added);
+                                owned.add(added);
+                                return true;
+                            });
+                    break;
+                case "put":
+                    int updated = owned.poll();
+                    call(operation, dueNanos, HttpMethod.PUT, "/api/mantras/" + updated, new JsonObject()
+                            .put("id", updated).put("mantra", "Load test mantra " + updated + " updated"),
+                            (status, body) -> {
+                                owned.add(updated);
+                                return status == 200;
+                            });
+                    break;
+                default:
+                    Integer deleted = owned.poll();
+                    readable.remove(deleted);
+                    call(operation, dueNanos, HttpMethod.DELETE, "/api/mantras/" + deleted, null,
+                            (status, body) -> status == 204);
+            }
+        }
+
+        private void call(String operation, long dueNanos, HttpMethod method, String uri, JsonObject json,
+                          Check check) {
+            long sentNanos = System.nanoTime();
+            boolean[] finished = {false};
+            outstanding++;
+            HttpClientRequest request = client.request(method, uri, response -> response.bodyHandler(body -> {
+                if (!finished[0]) {
+                    finished[0] = true;
+                    finish(operation, dueNanos, sentNanos, !check.ok(response.statusCode(), body));
+                }
+            }));
+            request.setTimeout(TimeUnit.SECONDS.toMillis(10)).exceptionHandler(e -> {
+                if (!finished[0]) {
+                    finished[0] = true;
+                    check.ok(-1, null);
+                    finish(operation, dueNanos, sentNanos, true);
+                }
+            });
+            if (json == null) {
+                request.end();
+            } else {
+                request.putHeader("content-type", "application/json").end(json.toBuffer());
+            }
+        }
+
+        private void finish(String operation, long dueNanos, long sentNanos, boolean failed) {
+            long now = System.nanoTime();
+            outstanding--;
+            if (dueNanos >= measureFromNanos) {
+                stats.get(operation).record(dueNanos, sentNanos, now, failed);
+                all.record(dueNanos, sentNanos, now, failed);
+                lastNanos = now;
+            }
+            if (nextNanos >= endNanos) {
+                finishIfIdle();
+            }
+        }
+
+        private void finishIfIdle() {
+            if (outstanding == 0) {
+                client.close();
+                done.complete(null);
+            }
+        }
+
+        private double throughput() {
+            return all.count / ((lastNanos - measureFromNanos) / 1e9);
+        }
+
+        private void report() {
+            System.out.printf("%d requests/s offered for %ds over %d connections, %.1f requests/s answered%n", rate,
+                    seconds, connections, throughput());
+            System.out.printf("%-8s %8s %7s %9s %9s %9s %9s %9s%n", "", "count", "errors", "p50 ms", "p99 ms",
+                    "p99.9 ms", "max ms", "p99 sent");
+            stats.forEach((operation, stat) -> print(operation, stat));
+            print("all", all);
+        }
+
+        private void print(String name, Stats stat) {
+            if (stat.count > 0) {
+                System.out.printf("%-8s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, stat.count, stat.errors,
+                        millis(stat.response, 0.5), millis(stat.response, 0.99), millis(stat.response, 0.999),
+                        millis(stat.response, 1.0), millis(stat.service, 0.99));
+            }
+        }
+    }
+
+    private static int indexOf(String operation) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (OPERATIONS[i].equals(operation)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation in loadtest.mix: " + operation);
+    }
+
+    @FunctionalInterface
+    private interface Check {
+
+        /**
+         * @param status -1, with no body, when there was no response
+         * @return whether the response is what the operation expects
+         */
+        boolean ok(int status, Buffer body);
+    }
+}
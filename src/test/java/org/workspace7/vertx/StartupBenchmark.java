@@ -0,0 +1,227 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting the fat jar in a JVM of its own to the first successful {@code GET /api/mantras},
+ * then the time the first asset takes on top of it, with and without {@code startup.lazy} and, given
+ * {@code -Dstartup.archive}, with and without that AppCDS archive. Each variant runs {@code runs} times on a fresh
+ * JVM, the config being the given one on a free port and an in memory database.
+ * <p>
+ * With {@code -Dstartup.train=<class list>} it instead starts the jar once with {@code -XX:DumpLoadedClassList}, sends
+ * it a request of each kind and stops it, which is how the {@code appcds} profile learns what to archive.
+ * <p>
+ * Run with {@code mvn -Pappcds package exec:exec@startup}, or {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=org.workspace7.vertx.StartupBenchmark
+ * -Dexec.args="target/web-example-1.0.0-SNAPSHOT-fat.jar 5 src/main/conf/chant-app.json"}, the arguments being the
+ * jar, the runs per variant and the config. {@code -Dstartup.java} picks the JVM to start, {@code -Dstartup.args}
+ * adds arguments for the launcher such as {@code -cluster}.
+ *
+ * @author kameshs
+ */
+public class StartupBenchmark {
+
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Paths.get(args.length > 0 ? args[0] : "target/web-example-1.0.0-SNAPSHOT-fat.jar").toAbsolutePath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path conf = Paths.get(args.length > 2 ? args[2] : "src/main/conf/chant-app.json");
+        JsonObject config = new JsonObject(new String(Files.readAllBytes(conf), StandardCharsets.UTF_8));
+
+        String train = System.getProperty("startup.train");
+        if (train != null) {
+            Files.deleteIfExists(Paths.get(train));
+            Run run = start(jar, config, false, Collections.singletonList("-XX:DumpLoadedClassList=" + train), true);
+            System.out.printf("Trained on %s in %.0f ms, class list in %s%n", jar, run.readyMillis, train);
+            return;
+        }
+
+        List<String> cds = new ArrayList<>();
+        String archive = System.getProperty("startup.archive");
+        if (archive != null) {
+            if (!Files.exists(Paths.get(archive))) {
+                throw new IllegalArgumentException("No AppCDS archive " + archive + ", build it with -Pappcds");
+            }
+            cds.add("-XX:SharedArchiveFile=" + archive);
+        }
+
+        System.out.printf("%-10s %6s %12s %12s %12s %14s%n", "variant", "runs", "min ms", "median ms", "max ms",
+                "first asset ms");
+        report("default", jar, config, false, Collections.emptyList(), runs);
+        report("lazy", jar, config, true, Collections.emptyList(), runs);
+        if (!cds.isEmpty()) {
+            report("cds", jar, config, false, cds, runs);
+            report("cds+lazy", jar, config, true, cds, runs);
+        }
+    }
+
+    private static void report(String variant, Path jar, JsonObject config, boolean lazy, List<String> jvmOptions,
+                               int runs) throws Exception {
+        double[] ready = new double[runs];
+        double[] asset = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            Run run = start(jar, config, lazy, jvmOptions, false);
+            ready[i] = run.readyMillis;
+            asset[i] = run.firstAssetMillis;
+        }
+        Arrays.sort(ready);
+        Arrays.sort(asset);
+        System.out.printf("%-10s %6d %12.0f %12.0f %12.0f %14.1f%n", variant, runs, ready[0], ready[runs / 2],
+                ready[runs - 1], asset[runs / 2]);
+    }
+
+    /**
+     * Starts the jar and waits for its first successful request, then asks for an asset, optionally sends a request
+     * of each kind, and stops it.
+     */
+    private static Run start(Path jar, JsonObject config, boolean lazy, List<String> jvmOptions, boolean exercise)
+            throws Exception {
+        int port = freePort();
+        Path runConf = Files.createTempFile("startup", ".json");
+        Files.write(runConf, config.copy()
+                .put("http.port", port)
+                .put("url", "jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1")
+                .put("startup.lazy", lazy)
+                .encode().getBytes(StandardCharsets.UTF_8));
+        Path log = Files.createTempFile("startup", ".log");
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("startup.java",
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.add("-conf");
+        command.add(runConf.toString());
+        String launcherArgs = System.getProperty("startup.args", "").trim();
+        if (!launcherArgs.isEmpty()) {
+            command.addAll(Arrays.asList(launcherArgs.split("\\s+")));
+        }
+
+        boolean started = false;
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+            while (status(port, "GET", "/api/mantras", null) != 200) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException("No successful request from " + command + ", see " + log);
+                }
+                Thread.sleep(5);
+            }
+            Run run = new Run();
+            run.readyMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+            long assetStart = System.nanoTime();
+            expect(port, "GET", "/assets/index.html", null, 200);
+            run.firstAssetMillis = (System.nanoTime() - assetStart) / 1_000_000.0;
+
+            if (exercise) {
+                exercise(port);
+            }
+            started = true;
+            return run;
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(runConf);
+            //kept for a look at what went wrong otherwise
+            if (started) {
+                Files.deleteIfExists(log);
+            }
+        }
+    }
+
+    /**
+     * A request to every route, for the classes each of them needs to be loaded.
+     */
+    private static void exercise(int port) throws IOException {
+        String mantra = new JsonObject().put("mantra", "Om").encode();
+        expect(port, "GET", "/", null, 200);
+        expect(port, "GET", "/assets/_manifest.json", null, 200);
+        expect(port, "POST", "/api/mantras", mantra, 201);
+        expect(port, "GET", "/api/mantras/1", null, 200);
+        expect(port, "PUT", "/api/mantras/1", "{\"id\":1,\"mantra\":\"Om\"}", 200);
+        expect(port, "GET", "/api/mantras?limit=2", null, 200);
+        expect(port, "GET", "/api/mantras/_search?q=om", null, 200);
+        expect(port, "POST", "/api/mantras/_bulk", "[" + mantra + "," + mantra + "]", 201);
+        expect(port, "PUT", "/api/mantras/_bulk", "[{\"id\":1,\"mantra\":\"Om Om\"}]", 200);
+        expect(port, "DELETE", "/api/mantras/2", null, 204);
+        expect(port, "GET", "/metrics", null, 200);
+        expect(port, "GET", "/api/mantras/_cache", null, 200);
+    }
+
+    private static void expect(int port, String method, String path, String body, int expected) throws IOException {
+        int status = status(port, method, path, body);
+        if (status != expected) {
+            throw new IllegalStateException(method + " " + path + " answered " + status + " instead of " + expected);
+        }
+    }
+
+    /**
+     * @return the status of the response, read to its end, or -1 when the connection failed
+     */
+    private static int status(int port, String method, String path, String body) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout(10000);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("content-type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                try (InputStream drained = in) {
+                    byte[] buffer = new byte[8192];
+                    while (drained.read(buffer) >= 0) {
+                        //discard the body
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class Run {
+        private double readyMillis;
+        private double firstAssetMillis;
+    }
+}
@@ -0,0 +1,90 @@
+package org.workspace7.vertx;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class WriteCoalescerTest {
+
+    private Vertx vertx;
+    private JDBCClient jdbcClient;
+
+    @Before
+    public void setup(TestContext context) {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", "jdbc:h2:mem:coalesce;DB_CLOSE_DELAY=-1")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver"), "WriteCoalescerTest");
+        Async async = context.async();
+        jdbcClient.getConnection(ar -> {
+            context.assertTrue(ar.succeeded());
+            ar.result().execute("CREATE TABLE IF NOT EXISTS MANTRAS (id INTEGER IDENTITY, mantra varchar(200))",
+                    created -> {
+                        context.assertTrue(created.succeeded());
+                        ar.result().close();
+                        async.complete();
+                    });
+        });
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        jdbcClient.close();
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testEachWriteGetsItsOwnResult(TestContext context) {
+        WriteCoalescer coalescer = new WriteCoalescer(vertx, jdbcClient, 20, 100);
+        Set<Integer> ids = new HashSet<>();
+        Async inserts = context.async(10);
+        Async missingUpdate = context.async();
+
+        for (int i = 0; i < 10; i++) {
+            coalescer.insert(new Mantra(-1, "Om " + i), inserted -> {
+                context.assertTrue(inserted.succeeded());
+                context.assertTrue(ids.add(inserted.result().getId()));
+                inserts.countDown();
+            });
+        }
+        coalescer.update(new Mantra(Integer.MAX_VALUE, "Nobody home"), updated -> {
+            context.assertTrue(updated.failed());
+            missingUpdate.complete();
+        });
+    }
+
+    @Test
+    public void testFailingWriteDoesNotFailTheBatch(TestContext context) {
+        WriteCoalescer coalescer = new WriteCoalescer(vertx, jdbcClient, 20, 100);
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            tooLong.append('x');
+        }
+        Async good = context.async();
+        Async bad = context.async();
+
+        coalescer.insert(new Mantra(-1, "Hare Krishna!"), inserted -> {
+            context.assertTrue(inserted.succeeded());
+            good.complete();
+        });
+        coalescer.insert(new Mantra(-1, tooLong.toString()), inserted -> {
+            context.assertTrue(inserted.failed());
+            bad.complete();
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package org.workspace7.vertx.assets;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.Router;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class AssetCacheTest {
+
+    private static final String PAGE = "<html><body>" + String.join("<br/>", Collections.nCopies(50,
+            "<h1>Hare Rama Hare Rama Rama Rama Hare Hare!</h1>")) + "</body></html>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private HttpServer server;
+    private AssetCache cache;
+    private byte[] noise;
+
+    @Before
+    public void setup(TestContext context) throws IOException {
+        Path root = folder.newFolder("webroot").toPath();
+        Files.write(root.resolve("index.html"), PAGE.getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(root.resolve("js"));
+        Files.write(root.resolve("js/app.js"), "console.log('Om');".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("js/app.js.br"), new byte[]{1, 2, 3});
+        noise = new byte[4096];
+        new Random(7).nextBytes(noise);
+        Files.write(root.resolve("noise.png"), noise);
+
+        //spool everything but tiny files to disk so that sendfile is used as well
+        cache = AssetCache.load(root, new JsonObject().put("assets.sendfile.min.size", 1024));
+
+        vertx = Vertx.vertx();
+        Router router = Router.router(vertx);
+        router.get("/assets/*").handler(new AssetHandler(cache, "/assets/", 3600));
+        server = vertx.createHttpServer()
+                .requestHandler(router::accept)
+                .listen(0, context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testManifestHasContentHashedNames() {
+        assertThat(cache.manifest()).containsOnlyKeys("index.html", "js/app.js", "noise.png");
+        assertThat(cache.manifest().get("js/app.js")).matches("js/app\\.[0-9a-f]{10}\\.js");
+        assertThat(AssetCache.hashedName("LICENSE", "abc")).isEqualTo("LICENSE.abc");
+        assertThat(AssetCache.hashedName("a.b/LICENSE", "abc")).isEqualTo("a.b/LICENSE.abc");
+    }
+
+    @Test
+    public void testPlainNamesAreRevalidated(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+
+        client.getNow(server.actualPort(), "localhost", "/assets/", index -> {
+            context.assertEquals(index.statusCode(), 200);
+            context.assertEquals(index.getHeader("content-type"), "text/html;charset=UTF-8");
+            context.assertEquals(index.getHeader("cache-control"), "no-cache");
+            context.assertNull(index.getHeader("content-encoding"));
+            String etag = index.getHeader("etag");
+            index.bodyHandler(body -> {
+                context.assertEquals(body.toString(), PAGE);
+                client.get(server.actualPort(), "localhost", "/assets/index.html", again -> {
+                    context.assertEquals(again.statusCode(), 304);
+                    async.complete();
+                }).putHeader("if-none-match", etag).end();
+            });
+        });
+    }
+
+    @Test
+    public void testHashedNamesAreImmutable(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().getNow(server.actualPort(), "localhost",
+                "/assets/" + cache.manifest().get("noise.png"), png -> {
+                    context.assertEquals(png.statusCode(), 200);
+                    context.assertEquals(png.getHeader("content-type"), "image/png");
+                    context.assertEquals(png.getHeader("cache-control"), "public, max-age=3600, immutable");
+                    //random bytes do not compress, so there is nothing to vary on
+                    context.assertNull(png.getHeader("vary"));
+                    png.bodyHandler(body -> {
+                        context.assertEquals(body, Buffer.buffer(noise));
+                        async.complete();
+                    });
+                });
+    }
+
+    @Test
+    public void testEncodedVariants(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+
+        client.get(server.actualPort(), "localhost", "/assets/index.html", gzipped -> {
+            context.assertEquals(gzipped.getHeader("content-encoding"), "gzip");
+            context.assertEquals(gzipped.getHeader("vary"), "accept-encoding");
+            gzipped.bodyHandler(body -> {
+                context.assertEquals(gunzip(body), PAGE);
+                client.get(server.actualPort(), "localhost", "/assets/js/app.js", brotli -> {
+                    context.assertEquals(brotli.getHeader("content-encoding"), "br");
+                    context.assertEquals(brotli.getHeader("content-type"), "application/javascript;charset=UTF-8");
+                    brotli.bodyHandler(br -> {
+                        context.assertEquals(br, Buffer.buffer(new byte[]{1, 2, 3}));
+                        client.getNow(server.actualPort(), "localhost", "/assets/js/app.js.br", shipped -> {
+                            context.assertEquals(shipped.statusCode(), 404);
+                            async.complete();
+                        });
+                    });
+                }).putHeader("accept-encoding", "gzip, br").end();
+            });
+        }).putHeader("accept-encoding", "gzip, br;q=0").end();
+    }
+
+    private static String gunzip(Buffer body) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+                out.write(bytes, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.workspace7.vertx.auth;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.workspace7.vertx.MainVerticle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The REST API with {@code auth.enabled}, over the users and roles of {@code test-shiro.ini}.
+ *
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class MantraAuthTest {
+
+    private static final String MANTRA = new JsonObject().put("mantra", "Om").encode();
+
+    private int port;
+    private Vertx vertx;
+
+    @Before
+    public void setup(TestContext context) throws IOException {
+        vertx = Vertx.vertx();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject()
+                .put("http.port", port)
+                .put("url", "jdbc:h2:mem:authdb")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver")
+                .put("auth.enabled", true)
+                .put("auth.ini", "classpath:test-shiro.ini")
+                .put("auth.token.secret", "a secret of the test cluster"));
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void checkThatWritesNeedAnAllowedRole(TestContext context) {
+        Async async = context.async();
+        send(HttpMethod.GET, "/api/mantras", null, all -> {
+            context.assertEquals(all.statusCode(), 200);
+            send(HttpMethod.POST, "/api/mantras", null, anonymous -> {
+                context.assertEquals(anonymous.statusCode(), 401);
+                context.assertEquals(anonymous.getHeader("www-authenticate"), "Basic realm=\"mantras\"");
+                send(HttpMethod.POST, "/api/mantras", basic("guest", "guest"), guest -> {
+                    context.assertEquals(guest.statusCode(), 403);
+                    send(HttpMethod.GET, "/api/mantras/_pool", basic("kamesh", "blah"), wrong -> {
+                        context.assertEquals(wrong.statusCode(), 401);
+                        send(HttpMethod.GET, "/api/mantras/_pool", basic("kamesh", "kamesh"), admin -> {
+                            context.assertEquals(admin.statusCode(), 200);
+                            async.complete();
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatVerifiedCredentialsAreCached(TestContext context) {
+        Async async = context.async();
+        String krishna = basic("krishna", "krishna");
+        send(HttpMethod.POST, "/api/mantras", krishna, first -> {
+            context.assertEquals(first.statusCode(), 201);
+            send(HttpMethod.POST, "/api/mantras", krishna, second -> {
+                context.assertEquals(second.statusCode(), 201);
+                //the cached entry does not let another password in
+                send(HttpMethod.POST, "/api/mantras", basic("krishna", "nope"), wrong -> {
+                    context.assertEquals(wrong.statusCode(), 401);
+                    send(HttpMethod.GET, "/api/mantras/_auth", krishna, stats -> stats.bodyHandler(body -> {
+                        JsonObject auth = body.toJsonObject();
+                        //krishna once, the wrong password once
+                        context.assertEquals(auth.getLong("realmCalls"), 2L);
+                        context.assertEquals(auth.getLong("cacheHits"), 2L);
+                        async.complete();
+                    }));
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatTokensStandInForCredentials(TestContext context) {
+        Async async = context.async();
+        send(HttpMethod.POST, "/api/auth/token", basic("krishna", "krishna"), issued -> {
+            context.assertEquals(issued.statusCode(), 200);
+            issued.bodyHandler(body -> {
+                String bearer = "Bearer " + body.toJsonObject().getString("token");
+                send(HttpMethod.POST, "/api/mantras", bearer, added -> {
+                    context.assertEquals(added.statusCode(), 201);
+                    send(HttpMethod.POST, "/api/auth/token", bearer, renewed -> {
+                        context.assertEquals(renewed.statusCode(), 401);
+                        send(HttpMethod.POST, "/api/mantras", bearer + "x", forged -> {
+                            context.assertEquals(forged.statusCode(), 401);
+                            send(HttpMethod.GET, "/api/mantras/_auth", bearer, stats -> stats.bodyHandler(json -> {
+                                context.assertEquals(json.toJsonObject().getLong("realmCalls"), 1L);
+                                async.complete();
+                            }));
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void checkThatAuthNeedsARealm(TestContext context) {
+        Vertx unconfigured = Vertx.vertx();
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject()
+                .put("http.port", port + 1)
+                .put("url", "jdbc:h2:mem:norealmdb")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver")
+                .put("auth.enabled", true));
+        unconfigured.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertFailure(e -> {
+            context.assertTrue(e.getMessage().contains("auth.ini"));
+            unconfigured.close(context.asyncAssertSuccess());
+        }));
+    }
+
+    private void send(HttpMethod method, String path, String authorization, Handler<HttpClientResponse> handler) {
+        HttpClientRequest request = vertx.createHttpClient()
+                .request(method, port, "localhost", path, handler);
+        if (authorization != null) {
+            request.putHeader("authorization", authorization);
+        }
+        request.end(method == HttpMethod.GET ? "" : MANTRA);
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package org.workspace7.vertx.auth;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class TokenSignerTest {
+
+    private final TokenSigner signer = new TokenSigner("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+    private final Caller krishna = new Caller("krishna", new LinkedHashSet<>(Arrays.asList("super-user")));
+
+    @Test
+    public void testTokensAreVerifiedUntilTheyExpire() {
+        String token = signer.sign(krishna, 1000);
+        Caller verified = signer.verify(token, 999);
+        assertThat(verified.username()).isEqualTo("krishna");
+        assertThat(verified.roles()).containsExactly("super-user");
+        assertThat(signer.verify(token, 1000)).isNull();
+    }
+
+    @Test
+    public void testForgedTokensAreRejected() {
+        String token = signer.sign(krishna, 1000);
+        String payload = token.substring(0, token.indexOf('.'));
+        String signature = token.substring(token.indexOf('.'));
+
+        //more roles, with the signature of the genuine token
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "{\"sub\":\"krishna\",\"roles\":[\"administrator\"],\"exp\":1000}".getBytes(StandardCharsets.UTF_8));
+        assertThat(signer.verify(forged + signature, 0)).isNull();
+        assertThat(signer.verify(payload + ".", 0)).isNull();
+        assertThat(signer.verify(payload, 0)).isNull();
+        assertThat(signer.verify(token + ".x", 0)).isNull();
+        assertThat(signer.verify("!!." + signature.substring(1), 0)).isNull();
+
+        TokenSigner other = new TokenSigner("fedcba9876543210".getBytes(StandardCharsets.UTF_8));
+        assertThat(other.verify(token, 0)).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortSecretsAreRefused() {
+        new TokenSigner("secret".getBytes(StandardCharsets.UTF_8));
+    }
+}
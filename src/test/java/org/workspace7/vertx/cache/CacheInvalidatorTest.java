@@ -0,0 +1,55 @@
+package org.workspace7.vertx.cache;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class CacheInvalidatorTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testBurstIsCoalesced(TestContext context) {
+        Async async = context.async();
+        List<Integer> remote = new ArrayList<>();
+
+        CacheInvalidator writer = new CacheInvalidator(vertx, 20, 512,
+                id -> context.fail("an invalidator must not receive its own invalidations"));
+        CacheInvalidator reader = new CacheInvalidator(vertx, 20, 512, remote::add);
+
+        writer.invalidate(1);
+        writer.invalidate(2);
+        writer.invalidate(2);
+
+        vertx.setTimer(200, timerId -> {
+            context.assertEquals(remote.size(), 2);
+            context.assertTrue(remote.contains(1));
+            context.assertTrue(remote.contains(2));
+            context.assertEquals(writer.published(), 1L);
+            context.assertEquals(reader.received(), 1L);
+            async.complete();
+        });
+    }
+}
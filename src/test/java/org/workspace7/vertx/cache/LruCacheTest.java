@@ -0,0 +1,64 @@
+package org.workspace7.vertx.cache;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author kameshs
+ */
+public class LruCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        LruCache<Integer, String> cache = new LruCache<>(2, 0, now::get);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        //touch 1 so that 2 becomes the eldest
+        assertEquals("one", cache.get(1));
+        cache.put(3, "three");
+
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+
+        JsonObject stats = cache.stats();
+        assertEquals(2, (int) stats.getInteger("size"));
+        assertEquals(1L, (long) stats.getLong("evictions"));
+        assertEquals(3L, (long) stats.getLong("hits"));
+        assertEquals(1L, (long) stats.getLong("misses"));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 100, now::get);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        now.set(99);
+        assertEquals("one", cache.get(1));
+
+        now.set(100);
+        assertNull(cache.get(1));
+        cache.purgeExpired();
+
+        assertEquals(0, cache.size());
+        assertEquals(2L, (long) cache.stats().getLong("expirations"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0, now::get);
+        cache.put(1, "one");
+        cache.invalidate(1);
+
+        assertNull(cache.get(1));
+        assertEquals(0L, (long) cache.stats().getLong("evictions"));
+    }
+}
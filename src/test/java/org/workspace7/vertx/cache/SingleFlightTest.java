@@ -0,0 +1,47 @@
+package org.workspace7.vertx.cache;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author kameshs
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testOverlappingCallsShareOneLoad() {
+        SingleFlight.Stats stats = new SingleFlight.Stats();
+        SingleFlight<String, String> flight = new SingleFlight<>(stats);
+        List<Handler<AsyncResult<String>>> loads = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+
+        assertFalse(flight.execute("a", loads::add, result -> results.add("1:" + result.result())));
+        assertTrue(flight.execute("a", loads::add, result -> results.add("2:" + result.result())));
+        assertFalse(flight.execute("b", loads::add, result -> results.add("3:" + result.result())));
+        assertEquals(2, loads.size());
+        assertEquals(2, flight.inFlight());
+
+        loads.get(0).handle(Future.succeededFuture("A"));
+        assertEquals("[1:A, 2:A]", results.toString());
+
+        //a call after the load completed starts a new one
+        assertFalse(flight.execute("a", loads::add, result -> results.add("4:" + result.cause().getMessage())));
+        loads.get(2).handle(Future.failedFuture("down"));
+        loads.get(1).handle(Future.succeededFuture("B"));
+        assertEquals("[1:A, 2:A, 4:down, 3:B]", results.toString());
+        assertEquals(0, flight.inFlight());
+
+        assertEquals(4L, stats.calls());
+        assertEquals(1L, stats.coalesced());
+        assertEquals(0.25, stats.toJson().getDouble("ratio"), 0.0001);
+    }
+}
@@ -0,0 +1,62 @@
+package org.workspace7.vertx.changes;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class ChangeLogTest {
+
+    @Test
+    public void testWritesAreAppendedOnceInOrder() {
+        ChangeLog log = new ChangeLog(8);
+        log.append("a", 1, changes(1, 2));
+        //the same write heard by another feed
+        log.append("a", 1, changes(1, 2));
+        log.append("b", 1, changes(3));
+        log.append("a", 2, changes(4));
+
+        assertThat(log.latest()).isEqualTo(4L);
+        assertThat(ids(log.range(0, 4))).containsExactly(1, 2, 3, 4);
+        assertThat(ids(log.range(2, 3))).containsExactly(3);
+        assertThat(log.range(4, 4)).isEmpty();
+
+        ChangeLog.Change change = log.range(2, 3).get(0);
+        assertThat(new JsonObject(change.json()).getLong("seq")).isEqualTo(3L);
+        assertThat(change.event().toString()).isEqualTo("id: 3\nevent: update\ndata: " + change.json() + "\n\n");
+    }
+
+    @Test
+    public void testOnlyTheHistoryIsKept() {
+        ChangeLog log = new ChangeLog(4);
+        for (int write = 1; write <= 10; write++) {
+            log.append("a", write, changes(write));
+        }
+
+        assertThat(ids(log.range(6, 10))).containsExactly(7, 8, 9, 10);
+        assertThat(log.range(5, 10)).isNull();
+        //not a sequence number of this log
+        assertThat(log.range(11, 10)).isNull();
+        assertThat(log.range(-1, 10)).isNull();
+    }
+
+    private static JsonArray changes(int... ids) {
+        JsonArray changes = new JsonArray();
+        for (int id : ids) {
+            changes.add(new JsonObject().put("type", "update").put("id", id).put("mantra", "Om").put("version", 1));
+        }
+        return changes;
+    }
+
+    private static List<Integer> ids(List<ChangeLog.Change> changes) {
+        return changes.stream().map(change -> new JsonObject(change.json()).getInteger("id"))
+                .collect(Collectors.toList());
+    }
+}
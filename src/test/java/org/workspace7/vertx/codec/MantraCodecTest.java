@@ -0,0 +1,42 @@
+package org.workspace7.vertx.codec;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+import org.workspace7.vertx.Mantra;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author kameshs
+ */
+public class MantraCodecTest {
+
+    @Test
+    public void testWireRoundTrip() {
+        MantraCodec codec = new MantraCodec();
+        Buffer buffer = Buffer.buffer().appendString("header");
+        codec.encodeToWire(buffer, new Mantra(7, "ஸ்ரீமதே ராமானுஜாய நம:", 3));
+
+        Mantra mantra = codec.decodeFromWire(6, buffer);
+        assertEquals(7, mantra.getId());
+        assertEquals(3, mantra.getVersion());
+        assertEquals("ஸ்ரீமதே ராமானுஜாய நம:", mantra.getMantra());
+    }
+
+    @Test
+    public void testListWireRoundTrip() {
+        MantraListCodec codec = new MantraListCodec();
+        Buffer buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, Arrays.asList(new Mantra(1, "Hare Rama!"), new Mantra(2, null)));
+
+        List<Mantra> mantras = codec.decodeFromWire(0, buffer);
+        assertEquals(2, mantras.size());
+        assertEquals("Hare Rama!", mantras.get(0).getMantra());
+        assertEquals(2, mantras.get(1).getId());
+        assertNull(mantras.get(1).getMantra());
+    }
+}
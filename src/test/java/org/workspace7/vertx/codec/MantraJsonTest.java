@@ -0,0 +1,56 @@
+package org.workspace7.vertx.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import org.junit.Test;
+import org.workspace7.vertx.Mantra;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class MantraJsonTest {
+
+    @Test
+    public void testEncodesLikeJackson() {
+        List<Mantra> mantras = Arrays.asList(
+                new Mantra(1, "Hare Krishna!"),
+                new Mantra(-42, "\"quoted\" \\ back\nslash\t\u0001"),
+                new Mantra(Integer.MAX_VALUE, "ॐ नमः शिवाय 🙏"),
+                new Mantra(Integer.MIN_VALUE, null),
+                new Mantra(0, "", Long.MAX_VALUE));
+
+        for (Mantra mantra : mantras) {
+            assertThat(MantraJson.encode(mantra).toString()).isEqualTo(Json.encode(mantra));
+        }
+        assertThat(MantraJson.encode(mantras).toString()).isEqualTo(Json.encode(mantras));
+    }
+
+    @Test
+    public void testDecodesWhatItEncodes() {
+        Mantra mantra = MantraJson.decode(MantraJson.encode(new Mantra(7, "ॐ \"Namo\" Narayanaya\n", 12)));
+
+        assertThat(mantra.getId()).isEqualTo(7);
+        assertThat(mantra.getVersion()).isEqualTo(12);
+        assertThat(mantra.getMantra()).isEqualTo("ॐ \"Namo\" Narayanaya\n");
+    }
+
+    @Test
+    public void testDecodeSkipsUnknownFields() {
+        Mantra mantra = MantraJson.decode(Buffer.buffer(
+                "{\"tags\":[\"morning\",{\"x\":1}],\"mantra\":\"Om\",\"extra\":{\"id\":9}}"));
+
+        assertThat(mantra.getId()).isEqualTo(-1);
+        assertThat(mantra.getMantra()).isEqualTo("Om");
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testDecodeRejectsNonObjects() {
+        MantraJson.decode(Buffer.buffer("[1,2]"));
+    }
+}
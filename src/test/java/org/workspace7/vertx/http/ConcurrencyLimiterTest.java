@@ -0,0 +1,80 @@
+package org.workspace7.vertx.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void testRequestsOverTheLimitAreTurnedAway() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 10, 2.0, 0.5);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        limiter.release(FAST, false);
+        assertThat(limiter.tryAcquire()).isTrue();
+
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(limiter.stats().getLong("rejected")).isEqualTo(1L);
+        assertThat(limiter.stats().getLong("admitted")).isEqualTo(3L);
+    }
+
+    @Test
+    public void testTheLimitGrowsWhileLatencyHoldsAndIsUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 6, 4, 2.0, 0.5);
+
+        for (int window = 0; window < 5; window++) {
+            cycle(limiter, limiter.limit(), FAST, false);
+        }
+        assertThat(limiter.limit()).isEqualTo(6);
+
+        //a window that barely uses the limit is no reason to raise it
+        ConcurrencyLimiter idle = new ConcurrencyLimiter(4, 1, 6, 4, 2.0, 0.5);
+        for (int i = 0; i < 8; i++) {
+            cycle(idle, 1, FAST, false);
+        }
+        assertThat(idle.limit()).isEqualTo(4);
+    }
+
+    @Test
+    public void testTheLimitBacksOffOnLatencyAndDrops() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 2, 10, 4, 2.0, 0.5);
+        cycle(limiter, 4, FAST, false);
+        assertThat(limiter.limit()).isEqualTo(9);
+
+        cycle(limiter, 4, SLOW, false);
+        assertThat(limiter.limit()).isEqualTo(4);
+
+        //the long term latency has not caught up with the slow window yet, a drop is enough anyway
+        cycle(limiter, 3, FAST, false);
+        limiter.tryAcquire();
+        limiter.release(FAST, true);
+        assertThat(limiter.limit()).isEqualTo(2);
+
+        cycle(limiter, 2, SLOW, true);
+        cycle(limiter, 2, SLOW, true);
+        assertThat(limiter.limit()).isEqualTo(2);
+    }
+
+    /**
+     * Admits {@code concurrency} requests at once and releases them, one window's worth when it is the window size.
+     */
+    private static void cycle(ConcurrencyLimiter limiter, int concurrency, long latency, boolean dropped) {
+        for (int i = 0; i < concurrency; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(latency, dropped);
+        }
+    }
+}
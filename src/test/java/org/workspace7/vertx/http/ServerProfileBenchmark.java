@@ -0,0 +1,184 @@
+package org.workspace7.vertx.http;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.workspace7.vertx.MainVerticle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput and latency of {@code GET /api/mantras} across the {@code http.profiles} of a config file. Each
+ * profile gets its own {@link MainVerticle} on an in memory database seeded with the same mantras, and is driven by
+ * a fixed number of clients sending gzip accepting requests back to back for the given time, over HTTP/2 with prior
+ * knowledge for profiles named {@code h2c*} and over keep-alive HTTP/1.1 otherwise.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.workspace7.vertx.http.ServerProfileBenchmark
+ * -Dexec.args="src/main/conf/chant-app.json 10 32"}, the arguments being the config, the seconds per profile and the
+ * number of concurrent clients.
+ *
+ * @author kameshs
+ */
+public class ServerProfileBenchmark {
+
+    private static final int MANTRAS = 1000;
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        String conf = args.length > 0 ? args[0] : "src/main/conf/chant-app.json";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+
+        JsonObject config = new JsonObject(new String(Files.readAllBytes(Paths.get(conf)), "UTF-8"));
+
+        System.out.printf("%-12s %12s %10s %10s %10s %12s%n", "profile", "req/s", "p50 ms", "p99 ms", "max ms",
+                "bytes/req");
+        for (String profile : config.getJsonObject("http.profiles").fieldNames()) {
+            Vertx vertx = Vertx.vertx();
+            try {
+                run(vertx, config, profile, seconds, clients);
+            } finally {
+                CompletableFuture<Void> closed = new CompletableFuture<>();
+                vertx.close(ar -> closed.complete(null));
+                closed.get(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static void run(Vertx vertx, JsonObject config, String profile, int seconds, int clients)
+            throws Exception {
+        int port = freePort();
+        JsonObject profileConfig = config.copy()
+                .put("http.port", port)
+                .put("http.profile", profile)
+                .put("url", "jdbc:h2:mem:bench-" + profile + ";DB_CLOSE_DELAY=-1");
+
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(profileConfig), ar -> {
+            if (ar.failed()) {
+                ready.completeExceptionally(ar.cause());
+                return;
+            }
+            JsonArray mantras = new JsonArray();
+            for (int i = 0; i < MANTRAS; i++) {
+                mantras.add(new JsonObject().put("mantra", "Hare Rama Hare Krishna #" + i));
+            }
+            vertx.createHttpClient().post(port, "localhost", "/api/mantras/_bulk")
+                    .putHeader("content-type", "application/json")
+                    .handler(seeded -> ready.complete(null))
+                    .exceptionHandler(ready::completeExceptionally)
+                    .end(mantras.encode());
+        });
+        ready.get(60, TimeUnit.SECONDS);
+
+        HttpClientOptions options = new HttpClientOptions()
+                .setDefaultPort(port)
+                .setKeepAlive(true)
+                .setMaxPoolSize(clients);
+        if (profile.startsWith("h2c")) {
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setHttp2ClearTextUpgrade(false)
+                    .setHttp2MaxPoolSize(1)
+                    .setHttp2MultiplexingLimit(clients);
+        }
+
+        drive(vertx, options, clients, WARMUP_SECONDS).get(WARMUP_SECONDS + 30, TimeUnit.SECONDS);
+        Result result = drive(vertx, options, clients, seconds).get(seconds + 30, TimeUnit.SECONDS);
+
+        long[] latencies = result.latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(latencies);
+        System.out.printf("%-12s %12.0f %10.2f %10.2f %10.2f %12d%s%n", profile,
+                latencies.length / (double) seconds,
+                millis(percentile(latencies, 0.50)),
+                millis(percentile(latencies, 0.99)),
+                millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]),
+                latencies.length == 0 ? 0 : result.bytes / latencies.length,
+                result.errors > 0 ? "  (" + result.errors + " errors)" : "");
+    }
+
+    /**
+     * Sends requests from {@code clients} loops, each issuing the next one when the previous response is read, until
+     * the time is up. The client is created and used on one context so the result needs no locking.
+     */
+    private static CompletableFuture<Result> drive(Vertx vertx, HttpClientOptions options, int clients,
+                                                   int seconds) {
+        CompletableFuture<Result> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> {
+            HttpClient client = vertx.createHttpClient(options);
+            Result result = new Result();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            List<Future<Void>> loops = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Future<Void> loop = Future.future();
+                loops.add(loop);
+                next(client, deadline, result, loop);
+            }
+            for (Future<Void> loop : loops) {
+                loop.setHandler(ar -> {
+                    if (loops.stream().allMatch(Future::isComplete)) {
+                        client.close();
+                        done.complete(result);
+                    }
+                });
+            }
+        });
+        return done;
+    }
+
+    private static void next(HttpClient client, long deadline, Result result, Future<Void> loop) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            loop.complete();
+            return;
+        }
+        client.get("/api/mantras?limit=" + MANTRAS, response -> response.bodyHandler((Buffer body) -> {
+            result.latencies.add(System.nanoTime() - start);
+            result.bytes += body.length();
+            if (response.statusCode() != 200) {
+                result.errors++;
+            }
+            next(client, deadline, result, loop);
+        })).exceptionHandler(e -> {
+            result.errors++;
+            next(client, deadline, result, loop);
+        }).putHeader("accept-encoding", "gzip").end();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class Result {
+        private final List<Long> latencies = new ArrayList<>();
+        private long bytes;
+        private int errors;
+    }
+}
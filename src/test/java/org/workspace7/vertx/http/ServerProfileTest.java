@@ -0,0 +1,132 @@
+package org.workspace7.vertx.http;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.Router;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class ServerProfileTest {
+
+    private static final JsonObject CONFIG = new JsonObject()
+            .put("http.profile", "compressed")
+            .put("http.profiles", new JsonObject()
+                    .put("compressed", new JsonObject()
+                            .put("compressionSupported", true)
+                            .put("compressionMinSize", 100)
+                            .put("acceptBacklog", 2048)
+                            .put("initialSettings", new JsonObject().put("maxConcurrentStreams", 64))));
+
+    private static final String LARGE = String.join(" ", Collections.nCopies(100, "Hare Krishna"));
+
+    private Vertx vertx;
+    private HttpServer server;
+
+    @Before
+    public void setup(TestContext context) {
+        vertx = Vertx.vertx();
+        ServerProfile profile = ServerProfile.fromConfig(CONFIG);
+        Router router = Router.router(vertx);
+        router.get("/small").handler(rc -> profile.end(rc, Buffer.buffer("Om")));
+        router.get("/large").handler(rc -> profile.end(rc, Buffer.buffer(LARGE)));
+        router.get("/chunks").handler(rc -> {
+            rc.response().setChunked(true);
+            ResponseCompressor body = profile.compressor(rc);
+            body.write(Buffer.buffer("Hare Rama "));
+            body.write(Buffer.buffer("Hare Krishna "));
+            body.end(Buffer.buffer(LARGE));
+        });
+        server = vertx.createHttpServer(profile.options().setPort(0))
+                .requestHandler(router::accept)
+                .listen(context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testProfileOptions() {
+        ServerProfile profile = ServerProfile.fromConfig(CONFIG);
+
+        assertEquals("compressed", profile.name());
+        assertEquals(2048, profile.options().getAcceptBacklog());
+        assertEquals(64, profile.options().getInitialSettings().getMaxConcurrentStreams());
+        //with a threshold the API bodies are compressed by the profile, not by the server
+        assertFalse(profile.options().isCompressionSupported());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProfileIsRejected() {
+        ServerProfile.fromConfig(CONFIG.copy().put("http.profile", "turbo"));
+    }
+
+    @Test
+    public void testOnlyLargeBodiesAreCompressed(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+
+        client.get(server.actualPort(), "localhost", "/small", small -> {
+            context.assertNull(small.getHeader("content-encoding"));
+            client.get(server.actualPort(), "localhost", "/large", large -> {
+                context.assertEquals(large.getHeader("content-encoding"), "gzip");
+                large.bodyHandler(body -> {
+                    context.assertEquals(inflate(body, true), LARGE);
+                    async.complete();
+                });
+            }).putHeader("accept-encoding", "gzip").end();
+        }).putHeader("accept-encoding", "gzip").end();
+    }
+
+    @Test
+    public void testChunksAreCompressedAsOneStream(TestContext context) {
+        Async async = context.async();
+
+        vertx.createHttpClient().get(server.actualPort(), "localhost", "/chunks", chunks -> {
+            context.assertEquals(chunks.getHeader("content-encoding"), "deflate");
+            chunks.bodyHandler(body -> {
+                context.assertEquals(inflate(body, false), "Hare Rama Hare Krishna " + LARGE);
+                async.complete();
+            });
+        }).putHeader("accept-encoding", "deflate, gzip;q=0").end();
+    }
+
+    private static String inflate(Buffer body, boolean gzip) {
+        try (InputStream in = gzip ? new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))
+                : new InflaterInputStream(new ByteArrayInputStream(body.getBytes()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+                out.write(bytes, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.workspace7.vertx.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * @author kameshs
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void testBucketsCoverEveryValueWithinOnePercent() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() & LatencyHistogram.MAX_VALUE;
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestValue(index);
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / 100);
+            assertThat(LatencyHistogram.index(highest)).isEqualTo(index);
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE))
+                .isEqualTo(LatencyHistogram.index(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        IntStream.rangeClosed(1, 1000).forEach(histogram::record);
+        histogram.record(TimeUnit.SECONDS.toMicros(2));
+
+        assertThat(histogram.count()).isEqualTo(1001);
+        assertThat(histogram.valueAtQuantile(0.5)).isBetween(501L, 505L);
+        assertThat(histogram.valueAtQuantile(0.99)).isBetween(990L, 1000L);
+        assertThat(histogram.valueAtQuantile(1.0)).isBetween(2_000_000L, 2_020_000L);
+    }
+
+    @Test
+    public void testQuantiles() {
+        Timer timer = new Timer(60, TimeUnit.SECONDS);
+        IntStream.rangeClosed(1, 10_000).parallel()
+                .forEach(millis -> timer.record(TimeUnit.MILLISECONDS.toNanos(millis)));
+
+        Timer.Snapshot snapshot = timer.snapshot();
+        assertThat(snapshot.count()).isEqualTo(10_000);
+        assertThat(snapshot.windowCount()).isEqualTo(10_000);
+        assertThat(snapshot.quantileNanos(0.5) / 1e6).isCloseTo(5_000, within(50.0));
+        assertThat(snapshot.quantileNanos(0.99) / 1e6).isCloseTo(9_900, within(99.0));
+        assertThat(snapshot.quantileNanos(0.999) / 1e6).isCloseTo(9_990, within(99.9));
+        assertThat(snapshot.quantileNanos(1.0)).isEqualTo(snapshot.maxNanos());
+    }
+
+    @Test
+    public void testQuantilesOnlyCoverTheWindow() {
+        AtomicLong now = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+        Timer timer = new Timer(30, TimeUnit.SECONDS, now::get);
+
+        timer.record(TimeUnit.SECONDS.toNanos(5));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(timer.snapshot().windowCount()).isEqualTo(2);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(1));
+        Timer.Snapshot snapshot = timer.snapshot();
+        assertThat(snapshot.windowCount()).isEqualTo(2);
+        assertThat(snapshot.quantileNanos(0.999)).isLessThan(TimeUnit.MILLISECONDS.toNanos(2));
+        assertThat(snapshot.count()).isEqualTo(3);
+        assertThat(snapshot.maxNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry(60);
+        registry.timer("db_seconds", "Time in the db", "action", "GET").record(TimeUnit.MILLISECONDS.toNanos(3));
+        registry.timer("db_seconds", "Time in the db", "action", "quote\"d").record(0);
+
+        StringBuilder out = new StringBuilder();
+        registry.writePrometheus(out);
+
+        assertThat(out.toString()).isEqualTo("# HELP db_seconds Time in the db\n"
+                + "# TYPE db_seconds summary\n"
+                + "db_seconds{action=\"GET\",quantile=\"0.5\"} 0.003\n"
+                + "db_seconds{action=\"GET\",quantile=\"0.9\"} 0.003\n"
+                + "db_seconds{action=\"GET\",quantile=\"0.99\"} 0.003\n"
+                + "db_seconds{action=\"GET\",quantile=\"0.999\"} 0.003\n"
+                + "db_seconds_sum{action=\"GET\"} 0.003\n"
+                + "db_seconds_count{action=\"GET\"} 1\n"
+                + "db_seconds{action=\"quote\\\"d\",quantile=\"0.5\"} 0.0\n"
+                + "db_seconds{action=\"quote\\\"d\",quantile=\"0.9\"} 0.0\n"
+                + "db_seconds{action=\"quote\\\"d\",quantile=\"0.99\"} 0.0\n"
+                + "db_seconds{action=\"quote\\\"d\",quantile=\"0.999\"} 0.0\n"
+                + "db_seconds_sum{action=\"quote\\\"d\"} 0.0\n"
+                + "db_seconds_count{action=\"quote\\\"d\"} 1\n"
+                + "# HELP db_seconds_max The longest ever recorded\n"
+                + "# TYPE db_seconds_max gauge\n"
+                + "db_seconds_max{action=\"GET\"} 0.003\n"
+                + "db_seconds_max{action=\"quote\\\"d\"} 0.0\n");
+    }
+
+    @Test
+    public void testCountersAndGauges() {
+        MetricsRegistry registry = new MetricsRegistry(60);
+        AtomicLong depth = new AtomicLong(3);
+        registry.gauge("queue_depth", "Waiting", depth::get);
+        registry.gauge("queue_depth", "Registered twice", () -> -1);
+        registry.counter("dropped_total", "Dropped", () -> 7);
+
+        depth.set(5);
+        StringBuilder out = new StringBuilder();
+        registry.writePrometheus(out);
+
+        assertThat(out.toString()).isEqualTo("# HELP dropped_total Dropped\n"
+                + "# TYPE dropped_total counter\n"
+                + "dropped_total 7\n"
+                + "# HELP queue_depth Waiting\n"
+                + "# TYPE queue_depth gauge\n"
+                + "queue_depth 5\n");
+    }
+}
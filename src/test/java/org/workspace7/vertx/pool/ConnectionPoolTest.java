@@ -0,0 +1,83 @@
+package org.workspace7.vertx.pool;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class ConnectionPoolTest {
+
+    private Vertx vertx;
+    private ConnectionPool pool;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+        pool = ConnectionPool.createShared(vertx, new JsonObject()
+                .put("url", "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 1)
+                .put("initial_pool_size", 1)
+                .put("min_pool_size", 1)
+                .put("acquire_timeout", 200), "ConnectionPoolTest");
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        pool.close();
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testAcquireTimesOutWhenPoolIsExhausted(TestContext context) {
+        Async async = context.async();
+
+        //starting the pool is not held against the timeout
+        pool.warmUp(context.asyncAssertSuccess(warm -> pool.getConnection(held -> {
+            context.assertTrue(held.succeeded());
+            long started = System.currentTimeMillis();
+            pool.getConnection(waiting -> {
+                context.assertTrue(waiting.failed());
+                context.assertTrue(waiting.cause() instanceof ConnectionPool.AcquireTimeoutException);
+                context.assertTrue(System.currentTimeMillis() - started < 2000);
+                held.result().close();
+
+                pool.getConnection(again -> {
+                    context.assertTrue(again.succeeded());
+                    again.result().close();
+                    JsonObject stats = pool.stats();
+                    context.assertEquals(stats.getLong("acquired"), 3L);
+                    context.assertEquals(stats.getLong("timedOut"), 1L);
+                    context.assertEquals(stats.getInteger("maxPoolSize"), 1);
+                    async.complete();
+                });
+            });
+        })));
+    }
+
+    @Test
+    public void testStartingThePoolIsNotTimed(TestContext context) {
+        ConnectionPool cold = ConnectionPool.createShared(vertx, new JsonObject()
+                .put("url", "jdbc:h2:mem:cold;DB_CLOSE_DELAY=-1")
+                .put("user", "sa")
+                .put("driver_class", "org.h2.Driver")
+                .put("acquire_timeout", 1), "ConnectionPoolTest-cold");
+        //far too short for c3p0 and H2 to start in, yet warming up gets there
+        cold.warmUp(context.asyncAssertSuccess(warm -> {
+            JsonObject stats = cold.stats();
+            context.assertEquals(stats.getLong("timedOut"), 0L);
+            context.assertTrue(stats.getLong("acquired") >= 1L);
+            cold.close();
+        }));
+    }
+}
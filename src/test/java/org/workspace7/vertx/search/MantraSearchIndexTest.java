@@ -0,0 +1,73 @@
+package org.workspace7.vertx.search;
+
+import org.junit.Test;
+import org.workspace7.vertx.Mantra;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class MantraSearchIndexTest {
+
+    @Test
+    public void testTerms() {
+        assertThat(MantraSearchIndex.terms("Hare Rama, hare-KRISHNA!! 108 times")).containsExactly("hare", "rama",
+                "hare", "krishna", "108", "times");
+        assertThat(MantraSearchIndex.terms("  ?! ")).isEmpty();
+        assertThat(MantraSearchIndex.terms(null)).isEmpty();
+    }
+
+    @Test
+    public void testEveryTermMustMatchAndBetterMatchesComeFirst() {
+        MantraSearchIndex index = seeded();
+
+        assertThat(ids(index.search("hare", 10, false))).containsExactly(2, 3, 4);
+        assertThat(ids(index.search("krishna hare", 10, false))).containsExactly(3, 4);
+        assertThat(ids(index.search("rama krishna", 10, false))).containsExactly(4);
+        assertThat(ids(index.search("narayana", 10, false))).isEmpty();
+        assertThat(ids(index.search("hare", 2, false))).containsExactly(2, 3);
+    }
+
+    @Test
+    public void testTheLastTermMatchesAsAPrefix() {
+        MantraSearchIndex index = seeded();
+
+        assertThat(ids(index.search("hare kri", 10, true))).containsExactly(3, 4);
+        assertThat(ids(index.search("hare kri", 10, false))).isEmpty();
+        //a whole term beats a longer completion of it
+        assertThat(ids(index.search("ram", 10, true))).containsExactly(5, 2, 4, 1);
+    }
+
+    @Test
+    public void testWritesAreReflected() {
+        MantraSearchIndex index = seeded();
+
+        index.put(new Mantra(1, "Om Namo Narayanaya", 1));
+        assertThat(ids(index.search("ramanujaya", 10, false))).isEmpty();
+        assertThat(index.search("narayanaya", 10, false)).extracting(Mantra::getVersion).containsExactly(1L);
+
+        index.removeAll(Arrays.asList(3, 4));
+        assertThat(ids(index.search("krishna", 10, true))).isEmpty();
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    private static MantraSearchIndex seeded() {
+        MantraSearchIndex index = new MantraSearchIndex();
+        index.putAll(Arrays.asList(
+                new Mantra(1, "Srimathe Ramanujaya Namaha!"),
+                new Mantra(2, "Hare Rama Hare Rama Rama Rama Hare Hare!"),
+                new Mantra(3, "Hare Krishna Hare Krishna Krishna Krishna Hare Hare!"),
+                new Mantra(4, "Hare Krishna, Rama Hare"),
+                new Mantra(5, "Sri Ram Jai Ram")));
+        return index;
+    }
+
+    private static List<Integer> ids(List<Mantra> mantras) {
+        return mantras.stream().map(Mantra::getId).collect(Collectors.toList());
+    }
+}
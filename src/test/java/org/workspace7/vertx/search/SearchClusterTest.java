@@ -0,0 +1,136 @@
+package org.workspace7.vertx.search;
+
+import com.hazelcast.config.ClasspathXmlConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.workspace7.vertx.MainVerticle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Two clustered Vert.x instances in this JVM sharing one database, each with the search index of its node.
+ *
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class SearchClusterTest {
+
+    private final String cluster = "mantras-" + UUID.randomUUID();
+    private final String url = "jdbc:h2:mem:" + cluster + ";DB_CLOSE_DELAY=-1";
+    private Vertx a;
+    private Vertx b;
+    private int portA;
+    private int portB;
+
+    @Before
+    public void setup(TestContext context) throws IOException {
+        portA = freePort();
+        portB = freePort();
+        Async started = context.async();
+        startNode(portA, context.asyncAssertSuccess(nodeA -> {
+            a = nodeA;
+            startNode(portB, context.asyncAssertSuccess(nodeB -> {
+                b = nodeB;
+                started.complete();
+            }));
+        }));
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        b.close(context.asyncAssertSuccess());
+        a.close(context.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 60000)
+    public void checkThatTheWritesOfOtherNodesAreSearchable(TestContext context) {
+        Async async = context.async();
+        a.createHttpClient().post(portA, "localhost", "/api/mantras", added -> added.bodyHandler(body -> {
+            context.assertEquals(added.statusCode(), 201);
+            int id = body.toJsonObject().getInteger("id");
+            String mantra = new JsonObject().put("id", id).put("mantra", "Om Namah Narayanaya").encode();
+            //b finds what a added, then what a changed it to, and no longer finds it once a deleted it
+            await(context, "shivaya", found -> found.size() == 1, () ->
+                    a.createHttpClient().put(portA, "localhost", "/api/mantras/" + id, updated -> {
+                        context.assertEquals(updated.statusCode(), 200);
+                        await(context, "shivaya", JsonArray::isEmpty, () -> await(context, "narayanaya",
+                                found -> found.size() == 1, () ->
+                                        a.createHttpClient().delete(portA, "localhost", "/api/mantras/" + id,
+                                                deleted -> await(context, "narayanaya", JsonArray::isEmpty,
+                                                        async::complete)).end()));
+                    }).putHeader("content-type", "application/json").end(mantra));
+        })).putHeader("content-type", "application/json")
+                .end(new JsonObject().put("mantra", "Om Namah Shivaya").encode());
+    }
+
+    /**
+     * Searches b until what it finds for the query satisfies the condition.
+     */
+    private void await(TestContext context, String query, Predicate<JsonArray> condition, Runnable next) {
+        b.createHttpClient().getNow(portB, "localhost", "/api/mantras/_search?q=" + query, found ->
+                found.bodyHandler(body -> {
+                    context.assertEquals(found.statusCode(), 200);
+                    if (condition.test(body.toJsonArray())) {
+                        next.run();
+                    } else {
+                        b.setTimer(100, timerId -> await(context, query, condition, next));
+                    }
+                }));
+    }
+
+    private void startNode(int port, Handler<AsyncResult<Vertx>> handler) {
+        //the locks and counters of Vert.x need the settings of its default config
+        Config hazelcast = new ClasspathXmlConfig("default-cluster.xml");
+        hazelcast.setProperty("hazelcast.logging.type", "slf4j");
+        hazelcast.getGroupConfig().setName(cluster);
+        hazelcast.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        JoinConfig join = hazelcast.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+
+        VertxOptions options = new VertxOptions()
+                .setClusterManager(new HazelcastClusterManager(hazelcast))
+                .setClusterHost("127.0.0.1");
+        Vertx.clusteredVertx(options, clustered -> {
+            if (clustered.failed()) {
+                handler.handle(Future.failedFuture(clustered.cause()));
+                return;
+            }
+            JsonObject config = new JsonObject()
+                    .put("http.port", port)
+                    .put("instances", 1)
+                    .put("url", url)
+                    .put("user", "sa")
+                    .put("driver_class", "org.h2.Driver")
+                    .put("changes.enabled", false)
+                    .put("cache.max.size", 0);
+            clustered.result().deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                    deployed -> handler.handle(deployed.map(clustered.result())));
+        });
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.workspace7.vertx.shard;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import org.junit.Test;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class ShardClientTest {
+
+    @Test
+    public void testPagesAreMergedById() {
+        List<Mantra> merged = ShardClient.merge(Arrays.asList(mantras(1, 4, 5), mantras(), mantras(2, 3, 9)), 4);
+        assertThat(ids(merged)).containsExactly(1, 2, 3, 4);
+        assertThat(ids(ShardClient.merge(Arrays.asList(mantras(1), mantras(2)), 10))).containsExactly(1, 2);
+    }
+
+    @Test
+    public void testSearchResultsAreInterleaved() {
+        List<Mantra> interleaved = ShardClient.interleave(Arrays.asList(mantras(7, 3, 5), mantras(2)), 3);
+        assertThat(ids(interleaved)).containsExactly(7, 2, 3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBulkWritesAreSplitByOwner() {
+        ShardRouter router = new ShardRouter(null, "a", 64, 1, 1000, 5000);
+        assertThat(router.heard("b", 0)).isTrue();
+        ShardClient client = new ShardClient(router);
+        List<String> addresses = new ArrayList<>();
+
+        List<Mantra> mantras = mantras(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        List<Object> updated = new ArrayList<>();
+        client.request(MantraRepository.UPDATE_ALL, mantras, (address, action, body, codecName, reply) -> {
+            addresses.add(address);
+            for (Mantra mantra : (List<Mantra>) body) {
+                assertThat(router.addressOf(mantra.getId())).isEqualTo(address);
+            }
+            reply.handle(Future.succeededFuture(((List<Mantra>) body).stream()
+                    .map(mantra -> new Mantra(mantra.getId(), mantra.getMantra(), 1))
+                    .collect(Collectors.toList())));
+        }, reply -> updated.add(reply.result()));
+        assertThat(addresses).containsOnly(ShardRouter.address("a"), ShardRouter.address("b")).hasSize(2);
+        assertThat(ids((List<Mantra>) updated.get(0))).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        List<Object> deleted = new ArrayList<>();
+        client.request(MantraRepository.DELETE_ALL, new JsonArray(Arrays.asList(1, 2, 3, 4, 5)),
+                (address, action, body, codecName, reply) ->
+                        reply.handle(Future.succeededFuture(((JsonArray) body).size())),
+                reply -> deleted.add(reply.result()));
+        assertThat(deleted).containsExactly(5);
+    }
+
+    @Test
+    public void testNodesComeAndGo() {
+        ShardRouter router = new ShardRouter(null, "a", 64, 1, 1000, 5000);
+        assertThat(router.ring().nodes()).containsExactly("a");
+        assertThat(router.heard("b", 1000)).isTrue();
+        assertThat(router.heard("c", 1000)).isTrue();
+        //hearing from known nodes, or from itself, changes nothing
+        assertThat(router.heard("b", 4000)).isFalse();
+        assertThat(router.heard("a", 4000)).isFalse();
+        assertThat(router.ring().nodes()).containsExactly("a", "b", "c");
+
+        assertThat(router.expire(7000)).isTrue();
+        assertThat(router.ring().nodes()).containsExactly("a", "b");
+        assertThat(router.left("b")).isTrue();
+        assertThat(router.left("b")).isFalse();
+        assertThat(router.expire(Long.MAX_VALUE - 1)).isFalse();
+        assertThat(router.ring().nodes()).containsExactly("a");
+    }
+
+    private static List<Mantra> mantras(int... ids) {
+        List<Mantra> mantras = new ArrayList<>();
+        for (int id : ids) {
+            mantras.add(new Mantra(id, "Om " + id));
+        }
+        return mantras;
+    }
+
+    private static List<Integer> ids(List<Mantra> mantras) {
+        return mantras.stream().map(Mantra::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,184 @@
+package org.workspace7.vertx.shard;
+
+import com.hazelcast.config.ClasspathXmlConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.workspace7.vertx.MainVerticle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Two clustered Vert.x instances in this JVM, each with a shard of its own.
+ *
+ * @author kameshs
+ */
+@RunWith(VertxUnitRunner.class)
+public class ShardClusterTest {
+
+    private final String cluster = "mantras-" + UUID.randomUUID();
+    private Path dir;
+    private Vertx a;
+    private Vertx b;
+    private int portA;
+    private int portB;
+    //the number of mantras held by the shard of the node at each port, as last polled
+    private final Map<Integer, Integer> held = new ConcurrentHashMap<>();
+
+    @Before
+    public void setup(TestContext context) throws IOException {
+        dir = Files.createTempDirectory("shards");
+        portA = freePort();
+        portB = freePort();
+        Async started = context.async();
+        startNode("a", portA, context.asyncAssertSuccess(vertx -> {
+            a = vertx;
+            started.complete();
+        }));
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        if (b != null) {
+            b.close(context.asyncAssertSuccess());
+        }
+        a.close(context.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 60000)
+    public void checkThatMantrasFollowTheirShards(TestContext context) {
+        Async async = context.async();
+        JsonArray mantras = new JsonArray();
+        for (int i = 0; i < 10; i++) {
+            mantras.add(new JsonObject().put("mantra", "Om " + i));
+        }
+        a.createHttpClient().post(portA, "localhost", "/api/mantras/_bulk", added -> {
+            context.assertEquals(added.statusCode(), 201);
+            startNode("b", portB, context.asyncAssertSuccess(vertx -> {
+                b = vertx;
+                //b takes over some of the 3 chants and 10 mantras a holds
+                await(() -> held(portB) > 0 && held(portA) + held(portB) == 13, () -> listAndGetEach(context, () ->
+                        b.close(context.asyncAssertSuccess(closed -> {
+                            b = null;
+                            //and hands them back as it leaves
+                            await(() -> held(portA) == 13, async::complete);
+                        }))));
+            }));
+        }).end(mantras.encode());
+    }
+
+    /**
+     * Lists the mantras from b, then reads each of them from both nodes.
+     */
+    private void listAndGetEach(TestContext context, Runnable next) {
+        b.createHttpClient().getNow(portB, "localhost", "/api/mantras", all -> all.bodyHandler(body -> {
+            JsonArray listed = body.toJsonArray();
+            context.assertEquals(listed.size(), 13);
+            for (int i = 0; i < listed.size(); i++) {
+                context.assertEquals(listed.getJsonObject(i).getInteger("id"), i + 1);
+            }
+            getEach(context, 1, next);
+        }));
+    }
+
+    private void getEach(TestContext context, int id, Runnable next) {
+        if (id > 13) {
+            next.run();
+            return;
+        }
+        a.createHttpClient().getNow(portA, "localhost", "/api/mantras/" + id, fromA -> {
+            context.assertEquals(fromA.statusCode(), 200);
+            b.createHttpClient().getNow(portB, "localhost", "/api/mantras/" + id, fromB -> {
+                context.assertEquals(fromB.statusCode(), 200);
+                getEach(context, id + 1, next);
+            });
+        });
+    }
+
+    private int held(int port) {
+        return held.getOrDefault(port, -1);
+    }
+
+    /**
+     * Polls the number of mantras the shard of each node holds until the condition holds.
+     */
+    private void await(BooleanSupplier condition, Runnable next) {
+        a.setPeriodic(200, timerId -> {
+            poll(portA);
+            if (b != null) {
+                poll(portB);
+            }
+            if (condition.getAsBoolean()) {
+                a.cancelTimer(timerId);
+                next.run();
+            }
+        });
+    }
+
+    private void poll(int port) {
+        a.createHttpClient().getNow(port, "localhost", "/api/mantras/_pool", stats -> stats.bodyHandler(body ->
+                held.put(port, body.toJsonObject().getInteger("mantras"))));
+    }
+
+    private void startNode(String node, int port, Handler<AsyncResult<Vertx>> handler) {
+        //the locks and counters of Vert.x need the settings of its default config
+        Config hazelcast = new ClasspathXmlConfig("default-cluster.xml");
+        hazelcast.setProperty("hazelcast.logging.type", "slf4j");
+        hazelcast.getGroupConfig().setName(cluster);
+        hazelcast.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        JoinConfig join = hazelcast.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+
+        VertxOptions options = new VertxOptions()
+                .setClusterManager(new HazelcastClusterManager(hazelcast))
+                .setClusterHost("127.0.0.1");
+        Vertx.clusteredVertx(options, clustered -> {
+            if (clustered.failed()) {
+                handler.handle(Future.failedFuture(clustered.cause()));
+                return;
+            }
+            JsonObject config = new JsonObject()
+                    .put("http.port", port)
+                    .put("instances", 1)
+                    .put("store.engine", "log")
+                    .put("store.log.path", dir.resolve(node + ".log").toString())
+                    .put("shard.enabled", true)
+                    .put("shard.node", node)
+                    .put("shard.range.size", 1)
+                    .put("shard.heartbeat.ms", 200)
+                    .put("shard.expiry.ms", 5000)
+                    .put("cache.max.size", 0);
+            clustered.result().deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                    deployed -> handler.handle(deployed.map(clustered.result())));
+        });
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
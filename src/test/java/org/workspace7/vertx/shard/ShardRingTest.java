@@ -0,0 +1,51 @@
+package org.workspace7.vertx.shard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class ShardRingTest {
+
+    @Test
+    public void testIdsAreSpreadTheSameWayByEveryNode() {
+        ShardRing ring = new ShardRing(Arrays.asList("a", "b", "c"), 64, 1);
+        ShardRing shuffled = new ShardRing(Arrays.asList("c", "a", "b"), 64, 1);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int id = 0; id < 30000; id++) {
+            assertThat(shuffled.owner(id)).isEqualTo(ring.owner(id));
+            owned.merge(ring.owner(id), 1, Integer::sum);
+        }
+        assertThat(owned.keySet()).containsOnly("a", "b", "c");
+        assertThat(owned.values()).allSatisfy(ids -> assertThat(ids).isBetween(6000, 14000));
+        assertThat(new ShardRing(Arrays.asList(), 64, 1).owner(1)).isNull();
+    }
+
+    @Test
+    public void testAJoiningNodeOnlyTakesOverSomeIds() {
+        ShardRing before = new ShardRing(Arrays.asList("a", "b", "c"), 64, 1);
+        ShardRing after = new ShardRing(Arrays.asList("a", "b", "c", "d"), 64, 1);
+        int moved = 0;
+        for (int id = 0; id < 30000; id++) {
+            if (!before.owner(id).equals(after.owner(id))) {
+                assertThat(after.owner(id)).isEqualTo("d");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(3000, 12000);
+    }
+
+    @Test
+    public void testRangesOfIdsStayTogether() {
+        ShardRing ring = new ShardRing(Arrays.asList("a", "b", "c"), 64, 100);
+        for (int id = 200; id < 300; id++) {
+            assertThat(ring.owner(id)).isEqualTo(ring.owner(200));
+        }
+    }
+}
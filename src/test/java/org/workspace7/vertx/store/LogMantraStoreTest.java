@@ -0,0 +1,256 @@
+package org.workspace7.vertx.store;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.workspace7.vertx.Mantra;
+import org.workspace7.vertx.MantraBatch;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class LogMantraStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private JsonObject config;
+    private LogMantraStore store;
+
+    @Before
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        config = new JsonObject()
+                .put("store.log.path", folder.newFolder().toPath().resolve("mantras.log").toString())
+                .put("store.log.initial.size", 64 * 1024)
+                .put("store.log.compact.interval.ms", 0L)
+                .put("store.log.compact.min.bytes", 0L);
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testCrud() {
+        List<Mantra> inserted = insertAll("Om", "Hare Rama", "Om Namah Shivaya");
+        assertThat(inserted).extracting(Mantra::getId).containsExactly(1, 2, 3);
+
+        Completion<Mantra> updated = new Completion<>();
+        store.update(new Mantra(2, "Hare Krishna"), updated);
+        assertThat(updated.result().getVersion()).isEqualTo(1L);
+        assertThat(select(2)).isEqualToComparingFieldByField(updated.result());
+
+        store.delete(1, new Completion<>());
+        Completion<Mantra> selected = new Completion<>();
+        store.select(1, selected);
+        assertThat(selected.cause()).isInstanceOf(MantraBatch.MantrasNotFoundException.class);
+        store.update(new Mantra(1, "Om"), updated = new Completion<>());
+        assertThat(updated.cause()).isInstanceOf(MantraBatch.MantrasNotFoundException.class);
+
+        //ids are never reused
+        Completion<Mantra> added = new Completion<>();
+        store.insert(new Mantra("Om Mani Padme Hum"), added);
+        assertThat(added.result().getId()).isEqualTo(4);
+        assertThat(texts(-1, 10)).containsExactly("Hare Krishna", "Om Namah Shivaya", "Om Mani Padme Hum");
+        assertThat(texts(2, 1)).containsExactly("Om Namah Shivaya");
+
+        Completion<Integer> deleted = new Completion<>();
+        store.deleteAll(Arrays.asList(3, 3, 1, 9), deleted);
+        assertThat(deleted.result()).isEqualTo(1);
+        assertThat(fingerprint()).isEqualTo("2-4-1");
+    }
+
+    @Test
+    public void testPutKeepsIdsAndNewerVersions() {
+        insertAll("Om");
+        store.update(new Mantra(1, "Om Om"), new Completion<>());
+
+        Completion<List<Mantra>> put = new Completion<>();
+        store.putAll(Arrays.asList(new Mantra(1, "Om", 0), new Mantra(40, "Hare Rama", 3)), put);
+        assertThat(put.result()).extracting(Mantra::getId).containsExactly(40);
+        assertThat(select(1).getMantra()).isEqualTo("Om Om");
+        assertThat(select(40).getVersion()).isEqualTo(3L);
+
+        store.putAll(Arrays.asList(new Mantra(1, "Om Om Om", 1)), put = new Completion<>());
+        assertThat(put.result()).hasSize(1);
+        assertThat(select(1).getMantra()).isEqualTo("Om Om Om");
+        //ids the store assigns come after the ones put
+        assertThat(insertAll("Hare Krishna")).extracting(Mantra::getId).containsExactly(41);
+    }
+
+    @Test
+    public void testUpdateAllWritesNothingWhenAMantraIsMissing() {
+        insertAll("Om", "Hare Rama");
+        String fingerprint = fingerprint();
+
+        Completion<List<Mantra>> updated = new Completion<>();
+        store.updateAll(Arrays.asList(new Mantra(1, "Om Om"), new Mantra(7, "Nope")), updated);
+        assertThat(((MantraBatch.MantrasNotFoundException) updated.cause()).getIds()).containsExactly(7);
+        assertThat(fingerprint()).isEqualTo(fingerprint);
+        assertThat(texts(-1, 10)).containsExactly("Om", "Hare Rama");
+
+        store.updateAll(Arrays.asList(new Mantra(1, "Om Om"), new Mantra(1, "Om Om Om")),
+                updated = new Completion<>());
+        assertThat(updated.result()).extracting(Mantra::getVersion).containsExactly(1L, 2L);
+        assertThat(select(1).getMantra()).isEqualTo("Om Om Om");
+    }
+
+    @Test
+    public void testReopeningRecoversTheMantras() {
+        insertAll("Om", "Hare Rama", null);
+        store.update(new Mantra(2, "Hare Krishna"), new Completion<>());
+        store.delete(1, new Completion<>());
+        String fingerprint = fingerprint();
+
+        store.close();
+        store = open();
+
+        assertThat(texts(-1, 10)).containsExactly("Hare Krishna", null);
+        assertThat(fingerprint()).isEqualTo(fingerprint);
+        assertThat(insertAll("Om")).extracting(Mantra::getId).containsExactly(4);
+    }
+
+    @Test
+    public void testATornWriteIsDiscarded() throws Exception {
+        insertAll("Om", "Hare Rama");
+        long end = store.stats().getLong("fileBytes");
+        store.close();
+
+        //a frame whose length made it to the file but not all of its body
+        try (RandomAccessFile file = new RandomAccessFile(config.getString("store.log.path"), "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+            file.write(new byte[]{1, 0, 0, 0, 3});
+        }
+        store = open();
+        assertThat(texts(-1, 10)).containsExactly("Om", "Hare Rama");
+
+        insertAll("Om Namah Shivaya");
+        store.close();
+        store = open();
+        assertThat(texts(-1, 10)).containsExactly("Om", "Hare Rama", "Om Namah Shivaya");
+    }
+
+    @Test
+    public void testCompactionKeepsTheMantrasAndShrinksTheFile() {
+        String[] texts = new String[500];
+        Arrays.fill(texts, "Mantra");
+        insertAll(texts);
+        for (int round = 1; round <= 5; round++) {
+            List<Mantra> mantras = new ArrayList<>();
+            for (int id = 1; id <= texts.length; id++) {
+                mantras.add(new Mantra(id, "Mantra " + round));
+            }
+            store.updateAll(mantras, new Completion<>());
+        }
+        store.deleteAll(Arrays.asList(1, 2, 3), new Completion<>());
+        long before = store.stats().getLong("fileBytes");
+
+        assertThat(store.compactIfNeeded()).isTrue();
+        JsonObject stats = store.stats();
+        assertThat(stats.getLong("fileBytes")).isLessThan(before / 4);
+        //nothing left but the headers of the compacted frames
+        assertThat(stats.getLong("garbageBytes")).isLessThan(64L);
+        assertThat(stats.getLong("compactions")).isEqualTo(1L);
+        assertThat(store.compactIfNeeded()).isFalse();
+
+        store.update(new Mantra(4, "Om"), new Completion<>());
+        store.close();
+        store = open();
+        assertThat(texts(-1, 2)).containsExactly("Om", "Mantra 5");
+        assertThat(select(500).getVersion()).isEqualTo(5L);
+        assertThat(fingerprint()).isEqualTo("497-500-" + (497 * 5 + 1));
+    }
+
+    @Test
+    public void testCompactionDoesNotHandTheHighestIdOutAgain() {
+        insertAll("Om", "Hare Rama", "Om Namah Shivaya");
+        String before = fingerprint();
+        store.delete(3, new Completion<>());
+        assertThat(store.compactIfNeeded()).isTrue();
+        store.close();
+        store = open();
+
+        Completion<Mantra> added = new Completion<>();
+        store.insert(new Mantra("Om Mani Padme Hum"), added);
+        assertThat(added.result().getId()).isEqualTo(4);
+        assertThat(fingerprint()).isEqualTo("3-4-0").isNotEqualTo(before);
+    }
+
+    private LogMantraStore open() {
+        LogMantraStore opened = LogMantraStore.shared(vertx, config);
+        Completion<Void> done = new Completion<>();
+        opened.open(done);
+        done.result();
+        return opened;
+    }
+
+    private List<Mantra> insertAll(String... texts) {
+        Completion<List<Mantra>> inserted = new Completion<>();
+        store.insertAll(Arrays.stream(texts).map(Mantra::new).collect(Collectors.toList()), inserted);
+        return inserted.result();
+    }
+
+    private Mantra select(int id) {
+        Completion<Mantra> selected = new Completion<>();
+        store.select(id, selected);
+        return selected.result();
+    }
+
+    private List<String> texts(int after, int limit) {
+        Completion<List<Mantra>> page = new Completion<>();
+        store.page(after, limit, page);
+        return page.result().stream().map(Mantra::getMantra).collect(Collectors.toList());
+    }
+
+    private String fingerprint() {
+        Completion<String> fingerprint = new Completion<>();
+        store.fingerprint(fingerprint);
+        return fingerprint.result();
+    }
+
+    /**
+     * The store completes on the calling thread, so the outcome is there as soon as the call returns.
+     */
+    private static class Completion<T> implements Handler<AsyncResult<T>> {
+
+        private AsyncResult<T> outcome;
+
+        @Override
+        public void handle(AsyncResult<T> outcome) {
+            this.outcome = outcome;
+        }
+
+        T result() {
+            assertThat(outcome).isNotNull();
+            assertThat(outcome.succeeded()).as("%s", outcome.cause()).isTrue();
+            return outcome.result();
+        }
+
+        Throwable cause() {
+            assertThat(outcome).isNotNull();
+            assertThat(outcome.failed()).isTrue();
+            return outcome.cause();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.workspace7.vertx.store;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class OffHeapIndexTest {
+
+    @Test
+    public void testAgreesWithAHashMap() {
+        OffHeapIndex index = new OffHeapIndex(4);
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200000; i++) {
+            //a small key space so that removals keep hitting runs of colliding ids
+            int id = 1 + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                long offset = random.nextInt(Integer.MAX_VALUE);
+                index.put(id, offset);
+                expected.put(id, offset);
+            }
+        }
+
+        assertThat(index.size()).isEqualTo(expected.size());
+        for (int id = 1; id <= 5000; id++) {
+            assertThat(index.get(id)).as("id %d", id).isEqualTo(expected.getOrDefault(id, -1L));
+        }
+        assertThat(index.get(0)).isEqualTo(-1L);
+    }
+}
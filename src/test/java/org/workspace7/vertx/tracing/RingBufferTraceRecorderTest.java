@@ -0,0 +1,153 @@
+package org.workspace7.vertx.tracing;
+
+import io.vertx.core.json.JsonObject;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class RingBufferTraceRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTracesAreReportedInBatches() throws Exception {
+        MemoryTraceSink sink = new MemoryTraceSink(1000);
+        RingBufferTraceRecorder recorder = new RingBufferTraceRecorder(sink, 64, 10, 10, TimeUnit.SECONDS);
+
+        IntStream.range(0, 25).forEach(i -> recorder.record(trace(i)));
+        //full batches wake the reporter long before the flush interval is up, the rest goes out on close
+        assertThat(sink.await(20, 5000).size()).isGreaterThanOrEqualTo(20);
+        recorder.close();
+
+        assertThat(ids(sink.traces())).isEqualTo(IntStream.range(0, 25).mapToObj(Integer::toString)
+                .collect(Collectors.toList()));
+        assertThat(sink.batchSizes()).allMatch(size -> size <= 10);
+        assertThat(recorder.recorded()).isEqualTo(25);
+        assertThat(recorder.reported()).isEqualTo(25);
+        assertThat(recorder.dropped()).isZero();
+        assertThat(recorder.queueDepth()).isZero();
+    }
+
+    @Test
+    public void testOldestTracesAreDroppedWhenTheSinkFallsBehind() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryTraceSink memory = new MemoryTraceSink(1000);
+        RingBufferTraceRecorder recorder = new RingBufferTraceRecorder(traces -> {
+            release.await();
+            memory.publish(traces);
+        }, 8, 1, 10, TimeUnit.MILLISECONDS);
+
+        //the reporter takes the first trace and then blocks in the sink
+        recorder.record(trace(0));
+        while (recorder.queueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        IntStream.range(1, 21).forEach(i -> recorder.record(trace(i)));
+        assertThat(recorder.queueDepth()).isEqualTo(8);
+        assertThat(recorder.dropped()).isEqualTo(12);
+
+        release.countDown();
+        recorder.close();
+        assertThat(ids(memory.traces())).containsExactly("0", "13", "14", "15", "16", "17", "18", "19", "20");
+        assertThat(recorder.reported()).isEqualTo(9);
+    }
+
+    @Test
+    public void testOverfillingTheRingWhileItIsDrainedLosesNothingUncounted() throws Exception {
+        List<Trace> published = new ArrayList<>();
+        RingBufferTraceRecorder recorder = new RingBufferTraceRecorder(published::addAll, 8, 4, 1,
+                TimeUnit.MILLISECONDS);
+
+        int writers = 4;
+        int perWriter = 20000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                IntStream.range(0, perWriter).forEach(i -> recorder.record(trace(writer * perWriter + i)));
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        recorder.close();
+
+        //every trace was either reported once or counted dropped, and each writer's survivors kept their order
+        assertThat(recorder.recorded()).isEqualTo(writers * perWriter);
+        assertThat(recorder.reported() + recorder.dropped()).isEqualTo(recorder.recorded());
+        assertThat(recorder.reported()).isEqualTo(published.size()).isPositive();
+        assertThat(recorder.queueDepth()).isZero();
+        List<Integer> ids = published.stream().map(trace -> Integer.valueOf(trace.getTraceId()))
+                .collect(Collectors.toList());
+        assertThat(new HashSet<>(ids)).hasSize(ids.size());
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            assertThat(ids.stream().filter(id -> id / perWriter == writer).collect(Collectors.toList())).isSorted();
+        }
+    }
+
+    @Test
+    public void testFailedBatchesAreCounted() {
+        RingBufferTraceRecorder recorder = new RingBufferTraceRecorder(traces -> {
+            throw new IllegalStateException("collector is down");
+        }, 8, 4, 10, TimeUnit.MILLISECONDS);
+
+        IntStream.range(0, 3).forEach(i -> recorder.record(trace(i)));
+        recorder.close();
+
+        assertThat(recorder.failed()).isEqualTo(3);
+        assertThat(recorder.reported()).isZero();
+    }
+
+    @Test
+    public void testFileSink() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("traces.jsonl");
+        TraceSink sink = Tracing.sink(new JsonObject().put("tracing.sink", "file")
+                .put("tracing.sink.file", file.toString()));
+
+        sink.publish(Collections.singletonList(trace(1)));
+        sink.publish(Collections.singletonList(trace(2)));
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(2);
+        assertThat(new JsonObject(lines.get(1)).getString("traceId")).isEqualTo("2");
+    }
+
+    private static Trace trace(int id) {
+        Trace trace = new Trace();
+        trace.setTraceId(Integer.toString(id));
+        return trace;
+    }
+
+    private static List<String> ids(List<Trace> traces) {
+        return traces.stream().map(Trace::getTraceId).collect(Collectors.toList());
+    }
+}
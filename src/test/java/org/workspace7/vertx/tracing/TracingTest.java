@@ -0,0 +1,120 @@
+package org.workspace7.vertx.tracing;
+
+import io.opentracing.NoopSpan;
+import io.opentracing.NoopTracerFactory;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.CaseInsensitiveHeaders;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author kameshs
+ */
+public class TracingTest {
+
+    @Test
+    public void testSamplerRate() {
+        double[] draws = {0.05, 0.5, 0.09, 0.1, 0.99};
+        AtomicInteger draw = new AtomicInteger();
+        Sampler sampler = new Sampler(0.1, 0, System::nanoTime, () -> draws[draw.getAndIncrement()]);
+
+        assertThat(Arrays.asList(sampler.sample(), sampler.sample(), sampler.sample(), sampler.sample(),
+                sampler.sample())).containsExactly(true, false, true, false, false);
+        assertThat(new Sampler(0, 0).sample()).isFalse();
+        assertThat(new Sampler(0, 0).never()).isTrue();
+    }
+
+    @Test
+    public void testSamplerLimitsTheRate() {
+        AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        Sampler sampler = new Sampler(1.0, 10, now::get, () -> 0);
+
+        //a second's worth may go at once, then one every tenth of a second
+        for (int i = 0; i < 10; i++) {
+            assertThat(sampler.sample()).isTrue();
+        }
+        assertThat(sampler.sample()).isFalse();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(sampler.sample()).isTrue();
+        assertThat(sampler.sample()).isFalse();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            sampled += sampler.sample() ? 1 : 0;
+        }
+        assertThat(sampled).isEqualTo(10);
+    }
+
+    @Test
+    public void testUnsampledRequestsNeverReachTheTracer() {
+        CountingTracer tracer = new CountingTracer();
+        Tracing tracing = new Tracing(tracer, new Sampler(0, 0), Arrays.asList("HWKAPMID", "HWKAPMTRACEID"));
+
+        Span request = tracing.buildSpan("GET", new CaseInsensitiveHeaders().add("accept", "*/*")).start();
+        Span db = tracing.buildSpan("MantrasFromDB", request).withTag("rows", 1).start();
+        DeliveryOptions options = new DeliveryOptions();
+        tracing.inject(db, options);
+        Span repository = tracing.continueSpan("select", options.getHeaders() == null
+                ? new CaseInsensitiveHeaders() : options.getHeaders()).start();
+
+        assertThat(Tracing.isSampled(request)).isFalse();
+        assertThat(request).isSameAs(NoopSpan.INSTANCE).isSameAs(db).isSameAs(repository);
+        assertThat(options.getHeaders()).isNull();
+        assertThat(tracer.calls.get()).isZero();
+    }
+
+    @Test
+    public void testUpstreamDecisionIsHonoured() {
+        CountingTracer tracer = new CountingTracer();
+        Tracing tracing = new Tracing(tracer, new Sampler(0, 0), Arrays.asList("HWKAPMID", "HWKAPMTRACEID"));
+
+        MultiMap traced = new CaseInsensitiveHeaders().add("hwkapmtraceid", "t1").add("HWKAPMID", "s1");
+        tracing.buildSpan("GET", traced).start();
+        assertThat(tracer.extracted).containsEntry("HWKAPMTRACEID", "t1").containsEntry("HWKAPMID", "s1");
+        assertThat(tracer.calls.get()).isEqualTo(2);
+
+        tracing.buildSpan("GET", traced.add("HWKAPMLEVEL", "None")).start();
+        tracing.continueSpan("select", new CaseInsensitiveHeaders()).start();
+        assertThat(tracer.calls.get()).isEqualTo(2);
+    }
+
+    private static class CountingTracer implements Tracer {
+
+        private final Tracer noop = NoopTracerFactory.create();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Map<String, String> extracted = new HashMap<>();
+
+        @Override
+        public SpanBuilder buildSpan(String operationName) {
+            calls.incrementAndGet();
+            return noop.buildSpan(operationName);
+        }
+
+        @Override
+        public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public <C> SpanContext extract(Format<C> format, C carrier) {
+            calls.incrementAndGet();
+            ((TextMap) carrier).forEach(entry -> extracted.put(entry.getKey().toUpperCase(), entry.getValue()));
+            return null;
+        }
+    }
+}